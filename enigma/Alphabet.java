@@ -1,25 +1,62 @@
 package enigma;
 
+import static enigma.EnigmaException.*;
 
 /** An alphabet of encodable characters.  Provides a mapping from characters
- *  to and from indices into the alphabet.
+ *  to and from indices into the alphabet.  Characters are Unicode code
+ *  points, so an alphabet may include characters outside the Basic
+ *  Multilingual Plane and may have many thousands of members.
  *  @author Thomas Nguyen
  */
 class Alphabet {
     /** Return the chars I have. */
     private String _chars;
 
+    /** My characters, by index. */
+    private final int[] _codePoints;
+
+    /** Maps code points to index + 1 (0 for absent): directly indexed by
+     *  code point if _hashBits is 0, and otherwise an open-addressing
+     *  hash table with 2**_hashBits slots. */
+    private final IndexTable _index;
+
+    /** Log2 of the number of slots of _index when it is a hash table, or 0
+     *  when it is indexed directly. */
+    private final int _hashBits;
+
     /** A new alphabet containing CHARS.  Character number #k has index
      *  K (numbering from 0). No character may be duplicated. */
     Alphabet(String chars) {
-        for (int i = 0; i < chars.length(); i++) {
-            for (int j = 0; j < chars.length(); j++) {
-                if (i != j && chars.charAt(i) == chars.charAt(j)) {
-                    throw new AssertionError("Duplicates Found");
-                }
+        this(chars.codePoints().toArray());
+    }
+
+    /** A new alphabet containing the code points CODEPOINTS, with
+     *  CODEPOINTS[k] having index K.  No code point may be duplicated. */
+    Alphabet(int[] codePoints) {
+        _codePoints = codePoints.clone();
+        _chars = new String(_codePoints, 0, _codePoints.length);
+        int max = 0;
+        for (int cp : _codePoints) {
+            max = Math.max(max, cp);
+        }
+        if (max < DIRECT_LIMIT) {
+            _hashBits = 0;
+            _index = IndexTable.create(max + 1, _codePoints.length);
+        } else {
+            int bits = 1;
+            while (1 << bits < 2 * _codePoints.length) {
+                bits += 1;
+            }
+            _hashBits = bits;
+            _index = IndexTable.create(1 << bits, _codePoints.length);
+        }
+        for (int k = 0; k < _codePoints.length; k++) {
+            int slot = slot(_codePoints[k]);
+            if (_index.get(slot) != 0) {
+                throw new AssertionError("Duplicates Found");
             }
+            _index.set(slot, k + 1);
         }
-        this._chars = chars;
     }
 
     /** A default alphabet of all upper-case characters. */
@@ -27,6 +64,19 @@ class Alphabet {
         this("ABCDEFGHIJKLMNOPQRSTUVWXYZ");
     }
 
+    /** Return an alphabet of all 256 byte values, in which character #k
+     *  is (char) k. */
+    static Alphabet bytes() {
+        char[] chars = new char[BYTE_VALUES];
+        for (int k = 0; k < chars.length; k++) {
+            chars[k] = (char) k;
+        }
+        return new Alphabet(new String(chars));
+    }
+
+    /** Number of distinct byte values. */
+    static final int BYTE_VALUES = 256;
+
     /** Return the number of rotor slots I have. */
     String chars() {
         return _chars;
@@ -34,40 +84,85 @@ class Alphabet {
 
     /** Returns the size of the alphabet. */
     int size() {
-        return this._chars.length();
+        return _codePoints.length;
     }
 
     /** Returns true if preprocess(CH) is in this alphabet. */
     boolean contains(char ch) {
-        for (int index = 0; index < _chars.length(); index++) {
-            if (ch == this._chars.charAt(index)) {
-                return true;
-            }
-        }
-        return false;
+        return indexOf(ch) >= 0;
+    }
+
+    /** Returns true iff the code point CP is in this alphabet. */
+    boolean contains(int cp) {
+        return indexOf(cp) >= 0;
     }
 
 
     /** Returns character number INDEX in the alphabet, where
-     *  0 <= INDEX < size(). */
+     *  0 <= INDEX < size().  That character must be in the Basic
+     *  Multilingual Plane; see toCodePoint. */
     char toChar(int index) {
         assert 0 <= index && index < size();
-        return this._chars.charAt(index);
+        int cp = _codePoints[index];
+        if (cp > Character.MAX_VALUE) {
+            throw error("character #%d is not a single char", index);
+        }
+        return (char) cp;
+    }
+
+    /** Returns the code point of character number INDEX in the alphabet,
+     *  where 0 <= INDEX < size(). */
+    int toCodePoint(int index) {
+        return _codePoints[index];
     }
 
 
     /** Returns the index of character preprocess(CH), which must be in
      *  the alphabet. This is the inverse of toChar(). */
     int toInt(char ch) {
-        int x = 0;
-        if (contains(ch)) {
-            for (int check = 0; check < size(); check++) {
-                if (ch == toChar(check)) {
-                    x = check;
-                }
+        return Math.max(0, indexOf(ch));
+    }
+
+    /** Returns the index of code point CP, or -1 if it is not in the
+     *  alphabet.  This is the inverse of toCodePoint(). */
+    int indexOf(int cp) {
+        if (_hashBits == 0) {
+            return cp >= 0 && cp < _index.length() ? _index.get(cp) - 1 : -1;
+        }
+        int mask = (1 << _hashBits) - 1;
+        for (int slot = hash(cp); ; slot = (slot + 1) & mask) {
+            int k = _index.get(slot);
+            if (k == 0) {
+                return -1;
+            } else if (_codePoints[k - 1] == cp) {
+                return k - 1;
             }
         }
-        return x;
     }
 
+    /** Return the slot of _index for CP: its own slot if CP is present,
+     *  or the empty slot where it would go otherwise. */
+    private int slot(int cp) {
+        if (_hashBits == 0) {
+            return cp;
+        }
+        int mask = (1 << _hashBits) - 1;
+        int slot = hash(cp);
+        while (_index.get(slot) != 0
+               && _codePoints[_index.get(slot) - 1] != cp) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /** Return the home slot of CP in a hashed _index. */
+    private int hash(int cp) {
+        return (cp * HASH_MULTIPLIER) >>> (Integer.SIZE - _hashBits);
+    }
+
+    /** Code points below this are indexed directly. */
+    private static final int DIRECT_LIMIT = 1 << 16;
+    /** Multiplier for Fibonacci hashing of code points. */
+    private static final int HASH_MULTIPLIER = 0x9e3779b9;
+
 }
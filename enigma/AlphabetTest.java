@@ -0,0 +1,74 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+
+/** The suite of all JUnit tests for the Alphabet class.
+ *  @author Thomas Nguyen
+ */
+public class AlphabetTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkSupplementary() {
+        String chars = "A\uD83D\uDE00B\uD835\uDD38";
+        Alphabet alpha = new Alphabet(chars);
+        assertEquals(4, alpha.size());
+        assertEquals(1, alpha.indexOf(0x1F600));
+        assertEquals(0x1D538, alpha.toCodePoint(3));
+        assertTrue(alpha.contains('B'));
+        assertFalse(alpha.contains('C'));
+        assertEquals(chars, alpha.chars());
+
+        Permutation perm =
+            new Permutation("(A\uD83D\uDE00) (B\uD835\uDD38)", alpha);
+        assertEquals(1, perm.permute(0));
+        assertEquals(2, perm.invert(3));
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("R", perm));
+        rotors.add(new MovingRotor("M",
+                       new Permutation("(AB\uD835\uDD38)", alpha), "B"));
+        Machine m = new Machine(alpha, 2, 1, rotors);
+        m.insertRotors(new String[] {"R", "M"});
+        m.setRotors("A");
+        String msg = "AA\uD83D\uDE00B\uD835\uDD38";
+        String code = m.convert(msg);
+        assertEquals(5, code.codePointCount(0, code.length()));
+        m.setRotors("A");
+        assertEquals(msg, m.convert(code));
+    }
+
+    @Test
+    public void checkLargeAlphabet() {
+        int n = 70000;
+        int[] codePoints = new int[n];
+        int[] shift = new int[n];
+        for (int k = 0; k < n; k++) {
+            codePoints[k] = 0x10000 + 3 * k;
+            shift[k] = (k + 1) % n;
+        }
+        Alphabet alpha = new Alphabet(codePoints);
+        for (int k = 0; k < n; k++) {
+            assertEquals(k, alpha.indexOf(codePoints[k]));
+            assertEquals(-1, alpha.indexOf(codePoints[k] + 1));
+        }
+        Permutation perm = new Permutation(shift, alpha);
+        assertEquals(0, perm.permute(n - 1));
+        assertEquals(n - 1, perm.invert(0));
+    }
+
+    @Test(expected = AssertionError.class)
+    public void checkDuplicates() {
+        new Alphabet("ABCA");
+    }
+
+}
@@ -0,0 +1,189 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** Processing of many input files in one run.  Usage:
+ *
+ *      java enigma.Main --batch [-j THREADS] CONFIG PATH...
+ *
+ *  Each PATH is an input file, a directory, whose files named *.inp are
+ *  all taken in order of name, or @LIST, where LIST is a file naming one
+ *  PATH per line.  CONFIG is read once.  Each input file F.inp is then
+ *  processed as Main would process it, writing F.out next to it (an input
+ *  file not named *.inp gets .out appended to its name).  Up to THREADS
+ *  files (by default, one per processor) are processed at once, each with
+ *  its own copy of the configured machine.  The status of each file is
+ *  reported in the order the files were given, as testing/test-correct
+ *  reports it: "DIR/F.inp: OK" or "DIR/F.inp: ERROR (...)".  Exits with
+ *  code 1 if any file failed.
+ *  @author Thomas Nguyen
+ */
+final class Batch {
+
+    /** Not instantiable. */
+    private Batch() {
+    }
+
+    /** Run with ARGS, as described above. */
+    static void run(String... args) {
+        int threads = Runtime.getRuntime().availableProcessors(), first = 0;
+        if (args.length > 0 && args[0].equals("-j")) {
+            try {
+                threads = Integer.parseInt(args[1]);
+            } catch (NumberFormatException
+                     | ArrayIndexOutOfBoundsException excp) {
+                threads = 0;
+            }
+            if (threads <= 0) {
+                throw error("bad thread count");
+            }
+            first = 2;
+        }
+        if (args.length < first + 2) {
+            throw error("Usage: --batch [-j THREADS] CONFIG PATH...");
+        }
+        Machine config = Main.readConfig(args[first]);
+        List<Path> inputs = new ArrayList<>();
+        for (int k = first + 1; k < args.length; k++) {
+            addInputs(args[k], inputs);
+        }
+        int failed = process(config, inputs, threads, System.out);
+        if (failed > 0) {
+            throw error("%d of %d files failed", failed, inputs.size());
+        }
+    }
+
+    /** Add the input files denoted by PATH, as described above, to
+     *  INPUTS. */
+    static void addInputs(String path, List<Path> inputs) {
+        try {
+            if (path.startsWith("@")) {
+                for (String line
+                         : Files.readAllLines(Paths.get(path.substring(1)),
+                                              Charset.defaultCharset())) {
+                    if (!line.trim().isEmpty()) {
+                        addInputs(line.trim(), inputs);
+                    }
+                }
+                return;
+            }
+            Path file = Paths.get(path);
+            if (Files.isDirectory(file)) {
+                List<Path> found = new ArrayList<>();
+                try (DirectoryStream<Path> dir =
+                     Files.newDirectoryStream(file, "*" + INPUT_SUFFIX)) {
+                    for (Path f : dir) {
+                        found.add(f);
+                    }
+                }
+                Collections.sort(found);
+                inputs.addAll(found);
+            } else if (Files.exists(file)) {
+                inputs.add(file);
+            } else {
+                throw error("no such file: %s", path);
+            }
+        } catch (IOException excp) {
+            throw error("could not read %s: %s", path, excp.getMessage());
+        }
+    }
+
+    /** Process each of INPUTS with a copy of CONFIG, using up to THREADS
+     *  threads, and print their statuses in order on REPORT.  Return the
+     *  number of files that failed. */
+    static int process(Machine config, List<Path> inputs, int threads,
+                       PrintStream report) {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<String>> statuses = new ArrayList<>();
+            for (Path input : inputs) {
+                statuses.add(pool.submit(() -> convert(config, input)));
+            }
+            int failed = 0;
+            for (int k = 0; k < inputs.size(); k++) {
+                String status;
+                try {
+                    status = statuses.get(k).get();
+                } catch (ExecutionException excp) {
+                    status = "ERROR (" + excp.getCause() + ")";
+                } catch (InterruptedException excp) {
+                    Thread.currentThread().interrupt();
+                    throw error("interrupted");
+                }
+                if (!status.equals(OK)) {
+                    failed += 1;
+                }
+                report.printf("%s: %s%n", label(inputs.get(k)), status);
+            }
+            return failed;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Process INPUT with a copy of CONFIG, writing its output file, and
+     *  return its status. */
+    static String convert(Machine config, Path input) {
+        Machine m = config.copy();
+        try (Scanner in = new Scanner(input.toFile());
+             PrintStream out =
+                 new PrintStream(new BufferedOutputStream(
+                                     Files.newOutputStream(output(input)),
+                                     BUFFER_SIZE),
+                                 false, Charset.defaultCharset())) {
+            Main.process(m, in, out);
+            out.flush();
+            return out.checkError() ? "ERROR (error writing output)" : OK;
+        } catch (EnigmaException excp) {
+            return "ERROR (" + excp.getMessage() + ")";
+        } catch (IOException excp) {
+            return "ERROR (could not open files: " + excp.getMessage() + ")";
+        } catch (RuntimeException | AssertionError excp) {
+            return "ERROR (uncaught exception: " + excp + ")";
+        }
+    }
+
+    /** Return the output file for the input file INPUT. */
+    static Path output(Path input) {
+        String name = input.getFileName().toString();
+        if (name.endsWith(INPUT_SUFFIX)) {
+            name = name.substring(0, name.length() - INPUT_SUFFIX.length());
+        }
+        return input.resolveSibling(name + OUTPUT_SUFFIX);
+    }
+
+    /** Return the name under which the status of INPUT is reported: its
+     *  name, preceded by that of its directory, if any. */
+    private static String label(Path input) {
+        Path dir = input.toAbsolutePath().getParent();
+        String name = input.getFileName().toString();
+        return dir == null || dir.getFileName() == null ? name
+            : dir.getFileName() + "/" + name;
+    }
+
+    /** Suffix of the names of input files in directories. */
+    static final String INPUT_SUFFIX = ".inp";
+    /** Suffix of the names of output files. */
+    static final String OUTPUT_SUFFIX = ".out";
+    /** The status of a file processed without error. */
+    static final String OK = "OK";
+    /** Size of output buffers. */
+    private static final int BUFFER_SIZE = 1 << 16;
+}
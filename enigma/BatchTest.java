@@ -0,0 +1,86 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Batch class.
+ *  @author Thomas Nguyen
+ */
+public class BatchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkBatch() throws IOException {
+        Path dir = Files.createTempDirectory("batch");
+        List<String> texts = new ArrayList<>();
+        for (int k = 0; k < 12; k++) {
+            String text = k == 5 ? "HELLO\n"
+                : input(100 + k, k, 20, 60, false);
+            texts.add(text);
+            Files.writeString(dir.resolve(String.format("f%02d.inp", k)),
+                              text, Charset.defaultCharset());
+        }
+        Files.writeString(dir.resolve("ignored.txt"), "X",
+                          Charset.defaultCharset());
+        List<Path> inputs = new ArrayList<>();
+        Batch.addInputs(dir.toString(), inputs);
+        assertEquals(12, inputs.size());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream report = new PrintStream(bytes, true,
+                                             Charset.defaultCharset());
+        assertEquals(1, Batch.process(navalMachine(), inputs, 4, report));
+        String[] statuses =
+            new String(bytes.toByteArray(), Charset.defaultCharset())
+            .split("\r?\n");
+        assertEquals(12, statuses.length);
+        String prefix = dir.getFileName() + "/";
+        for (int k = 0; k < 12; k++) {
+            String name = String.format("f%02d", k);
+            if (k == 5) {
+                assertTrue(statuses[k].startsWith(prefix + name
+                                                  + ".inp: ERROR ("));
+                continue;
+            }
+            assertEquals(prefix + name + ".inp: OK", statuses[k]);
+            assertEquals(expected(texts.get(k)),
+                         Files.readString(dir.resolve(name + ".out"),
+                                          Charset.defaultCharset()));
+        }
+    }
+
+    @Test
+    public void checkInputs() throws IOException {
+        Path dir = Files.createTempDirectory("batch");
+        Path a = dir.resolve("a.in"), b = dir.resolve("b.inp"),
+            list = dir.resolve("list");
+        Files.writeString(a, "", Charset.defaultCharset());
+        Files.writeString(b, "", Charset.defaultCharset());
+        Files.writeString(list, b + "\n\n" + a + "\n",
+                          Charset.defaultCharset());
+        List<Path> inputs = new ArrayList<>();
+        Batch.addInputs("@" + list, inputs);
+        assertEquals(List.of(b, a), inputs);
+        assertEquals(dir.resolve("a.in.out"), Batch.output(a));
+        assertEquals(dir.resolve("b.out"), Batch.output(b));
+    }
+
+}
@@ -0,0 +1,354 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+
+import static enigma.EnigmaException.*;
+
+/** Enigma encryption of binary data, in which the alphabet is the 256
+ *  byte values.  Usage:
+ *
+ *      java enigma.Main --binary CONFIG SETTINGS [INPUT [OUTPUT]]
+ *
+ *  CONFIG has the layout of an ordinary configuration file, except that
+ *  its alphabet is the word BYTES and every symbol (in cycles and notches)
+ *  is written as two hexadecimal digits, so that "(00ff1a)" is the cycle
+ *  0 -> 255 -> 26 -> 0 and "M0a" is a moving rotor with its notch at 10.
+ *  SETTINGS is a settings line in the same notation, e.g.
+ *  "* B Beta I II III 00112233 (0a0b)", with optional rings after the
+ *  positions.  Every byte of INPUT (default the standard input) is
+ *  converted; there are no settings lines, grouping or line structure,
+ *  and the result goes to OUTPUT (default the standard output).
+ *  Conversion runs over a single reusable ByteBuffer, with no per-byte
+ *  allocation and no character encoding, a block at a time (see
+ *  Blocks): between key presses that move only the rightmost rotor, the
+ *  rest of the machine is one fixed permutation, kept as a table, so
+ *  that most bytes take five array lookups.
+ *  @author Thomas Nguyen
+ */
+final class BinaryMode {
+
+    /** Not instantiable. */
+    private BinaryMode() {
+    }
+
+    /** Run binary mode with ARGS, as described above. */
+    static void run(String... args) {
+        if (args.length < 2 || args.length > 4) {
+            throw error("Only 2, 3, or 4 arguments allowed after --binary");
+        }
+        Machine m;
+        try (Scanner config = new Scanner(new File(args[0]))) {
+            m = readConfig(config);
+        } catch (IOException excp) {
+            throw error("could not open %s", args[0]);
+        }
+        setUp(m, args[1]);
+        try (ReadableByteChannel in = args.length > 2
+                 ? FileChannel.open(Paths.get(args[2]))
+                 : Channels.newChannel(System.in);
+             FileChannel file = args.length > 3
+                 ? FileChannel.open(Paths.get(args[3]),
+                                    StandardOpenOption.CREATE,
+                                    StandardOpenOption.WRITE,
+                                    StandardOpenOption.TRUNCATE_EXISTING)
+                 : null) {
+            WritableByteChannel out = file != null ? file
+                : Channels.newChannel(System.out);
+            convert(m, in, out);
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        }
+        System.out.flush();
+    }
+
+    /** Convert every byte read from IN with M, writing the results to OUT,
+     *  and return the number of bytes converted. */
+    static long convert(Machine m, ReadableByteChannel in,
+                        WritableByteChannel out) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        byte[] data = buffer.array();
+        Blocks blocks = new Blocks(m);
+        long total = 0;
+        while (in.read(buffer) >= 0) {
+            buffer.flip();
+            int end = buffer.limit();
+            blocks.convert(data, end);
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            total += end;
+            buffer.clear();
+        }
+        return total;
+    }
+
+    /** A converter of blocks of bytes with a machine over the byte
+     *  alphabet, with the same results and effect on the machine's rotors
+     *  as converting each byte with Machine.convert.  A key press that
+     *  moves only the rightmost rotor leaves the other rotors and the
+     *  reflector in place, and they then act together as one permutation,
+     *  which I keep as a table.  It is composed slot by slot, from the
+     *  reflector rightward, so that when a press moves a slower rotor
+     *  only the tables from its slot rightward are rebuilt, which for the
+     *  rotor next to the rightmost happens about once per revolution of
+     *  the rightmost.  A byte converted between such presses takes five
+     *  array lookups: the plugboard, the rightmost rotor, the table, the
+     *  rightmost rotor back, and the plugboard again. */
+    private static final class Blocks {
+        /** A converter for M, whose rotors must be inserted and whose
+         *  alphabet must be the byte values. */
+        Blocks(Machine m) {
+            _machine = m;
+            _rotors = m.rotors();
+            int slots = _rotors.length;
+            _forward = new int[slots][];
+            _inverse = new int[slots][];
+            for (int x = 0; x < slots; x++) {
+                _forward[x] = _rotors[x].permutation().toArray();
+                _inverse[x] = _rotors[x].permutation().inverse().toArray();
+            }
+            _plugboard = m.plugboard() == null
+                ? Permutations.identity(new int[Alphabet.BYTE_VALUES])
+                : m.plugboard().toArray();
+            _inner = new int[slots - 1][Alphabet.BYTE_VALUES];
+            _offsets = new int[slots - 1];
+            Arrays.fill(_offsets, -1);
+        }
+
+        /** Convert DATA[0 .. LEN-1] in place. */
+        void convert(byte[] data, int len) {
+            int last = _rotors.length - 1;
+            Rotor fast = _rotors[last], next = _rotors[last - 1];
+            if (!fast.rotates()) {
+                for (int k = 0; k < len; k++) {
+                    data[k] = (byte) _machine.convert(data[k] & BYTE_MASK);
+                }
+                return;
+            }
+            int presses = 0;
+            for (int k = 0; k < len; ) {
+                int run = 1;
+                if (fast.atNotch() || next.atNotch()) {
+                    _machine.step();
+                } else {
+                    run = Math.min(len - k, fast.distanceToNotch());
+                    fast.set((fast.setting() + run) & BYTE_MASK);
+                    presses += run;
+                }
+                press(data, k, run, (fast.setting() - fast.ring() - run)
+                      & BYTE_MASK, refresh());
+                k += run;
+            }
+            Metrics.CHARACTERS.add(len);
+            Metrics.PRESSES.add(presses);
+            Metrics.ROTOR_STEPS.add(presses);
+        }
+
+        /** Convert DATA[K .. K+RUN-1] in place by key presses that move
+         *  only the rightmost rotor, from the offset OFFSET, through the
+         *  table INNER of the other rotors. */
+        private void press(byte[] data, int k, int run, int offset,
+                           int[] inner) {
+            int[] plug = _plugboard, forward = _forward[_forward.length - 1],
+                inverse = _inverse[_inverse.length - 1];
+            for (int end = k + run; k < end; k++) {
+                offset = (offset + 1) & BYTE_MASK;
+                int c = plug[data[k] & BYTE_MASK];
+                c = (forward[(c + offset) & BYTE_MASK] - offset) & BYTE_MASK;
+                c = inner[c];
+                c = (inverse[(c + offset) & BYTE_MASK] - offset) & BYTE_MASK;
+                data[k] = (byte) plug[c];
+            }
+        }
+
+        /** Bring my tables up to date with the settings of all but the
+         *  rightmost rotor, and return the table of them all. */
+        private int[] refresh() {
+            int x = 0;
+            while (x < _offsets.length && _offsets[x] == offset(x)) {
+                x += 1;
+            }
+            for (; x < _offsets.length; x++) {
+                int offset = _offsets[x] = offset(x);
+                int[] forward = _forward[x], inverse = _inverse[x],
+                    inner = _inner[x], outer = x == 0 ? null : _inner[x - 1];
+                for (int c = 0; c < inner.length; c++) {
+                    int d = (forward[(c + offset) & BYTE_MASK] - offset)
+                        & BYTE_MASK;
+                    if (outer != null) {
+                        d = outer[d];
+                        d = (inverse[(d + offset) & BYTE_MASK] - offset)
+                            & BYTE_MASK;
+                    }
+                    inner[c] = d;
+                }
+            }
+            return _inner[_inner.length - 1];
+        }
+
+        /** Return the offset (setting less ring) of the rotor in slot X. */
+        private int offset(int x) {
+            return (_rotors[x].setting() - _rotors[x].ring()) & BYTE_MASK;
+        }
+
+        /** The machine converting. */
+        private final Machine _machine;
+        /** The rotors of _machine, by slot. */
+        private final Rotor[] _rotors;
+        /** The permutations of _rotors and their inverses, by slot. */
+        private final int[][] _forward, _inverse;
+        /** The plugboard of _machine. */
+        private final int[] _plugboard;
+        /** Entry x is the permutation of the reflector and the rotors in
+         *  slots 1 .. x together, with their offsets in _offsets. */
+        private final int[][] _inner;
+        /** The offsets of the rotors for which _inner was computed, by
+         *  slot, or -1 where it has not been. */
+        private final int[] _offsets;
+    }
+
+    /** Return a machine over the byte alphabet configured from CONFIG. */
+    static Machine readConfig(Scanner config) {
+        try {
+            if (!config.next().equals("BYTES")) {
+                throw error("binary configuration must use the BYTES "
+                            + "alphabet");
+            }
+            Alphabet alpha = Alphabet.bytes();
+            int numRotors = config.nextInt();
+            int pawls = config.nextInt();
+            List<Rotor> allRotors = new ArrayList<>();
+            while (config.hasNext()) {
+                allRotors.add(readRotor(config, alpha));
+            }
+            return new Machine(alpha, numRotors, pawls, allRotors);
+        } catch (NoSuchElementException excp) {
+            throw error("configuration file truncated");
+        }
+    }
+
+    /** Return a rotor over ALPHA, reading its description from CONFIG. */
+    private static Rotor readRotor(Scanner config, Alphabet alpha) {
+        try {
+            String name = config.next();
+            String type = config.next();
+            List<String> cycles = new ArrayList<>();
+            while (config.hasNext("\\(.*\\)")) {
+                cycles.add(config.next());
+            }
+            Permutation perm = new Permutation(mapping(cycles), alpha);
+            switch (type.charAt(0)) {
+            case 'M':
+                StringBuilder notches = new StringBuilder();
+                for (int b : hex(type.substring(1))) {
+                    notches.append(alpha.toChar(b));
+                }
+                return new MovingRotor(name, perm, notches.toString());
+            case 'N':
+                return new FixedRotor(name, perm);
+            case 'R':
+                return new Reflector(name, perm);
+            default:
+                throw error("wrong rotor type %s", type);
+            }
+        } catch (NoSuchElementException excp) {
+            throw error("bad rotor description");
+        }
+    }
+
+    /** Set M according to SETTINGS, a settings line in hexadecimal
+     *  notation, as described above. */
+    static void setUp(Machine m, String settings) {
+        String[] tokens = settings.trim().split("\\s+");
+        int k = tokens.length > 0 && tokens[0].equals("*") ? 1 : 0;
+        if (tokens.length < k + m.numRotors() + 1) {
+            throw error("settings line too short");
+        }
+        String[] rotors = new String[m.numRotors()];
+        System.arraycopy(tokens, k, rotors, 0, rotors.length);
+        KeySpace.checkOrder(m, rotors);
+        k += rotors.length;
+        m.insertRotors(rotors);
+        int[] positions = hex(tokens[k]);
+        k += 1;
+        int[] rings = new int[positions.length];
+        if (k < tokens.length && !tokens[k].startsWith("(")) {
+            rings = hex(tokens[k]);
+            k += 1;
+        }
+        if (positions.length != m.numRotors() - 1
+            || rings.length != positions.length) {
+            throw error("Number of settings is not equal to number of "
+                        + "rotors");
+        }
+        for (int x = 1; x < m.numRotors(); x++) {
+            m.rotors()[x].set(positions[x - 1]);
+            m.rotors()[x].setRing(rings[x - 1]);
+        }
+        List<String> cycles = new ArrayList<>();
+        for (; k < tokens.length; k++) {
+            cycles.add(tokens[k]);
+        }
+        m.setPlugboard(new Permutation(mapping(cycles), m.alphabet()));
+    }
+
+    /** Return the mapping of byte values given by CYCLES, each of the
+     *  form "(hhhh...)". */
+    static int[] mapping(List<String> cycles) {
+        int[] result = Permutations.identity(new int[Alphabet.BYTE_VALUES]);
+        boolean[] used = new boolean[result.length];
+        for (String cycle : cycles) {
+            if (!cycle.startsWith("(") || !cycle.endsWith(")")) {
+                throw error("bad cycle %s", cycle);
+            }
+            int[] values = hex(cycle.substring(1, cycle.length() - 1));
+            for (int k = 0; k < values.length; k++) {
+                if (used[values[k]]) {
+                    throw error("byte %02x appears twice in cycles",
+                                values[k]);
+                }
+                used[values[k]] = true;
+                result[values[k]] = values[(k + 1) % values.length];
+            }
+        }
+        return result;
+    }
+
+    /** Return the byte values written in hexadecimal, two digits each,
+     *  in DIGITS. */
+    static int[] hex(String digits) {
+        if (digits.length() % 2 != 0) {
+            throw error("odd number of hexadecimal digits in %s", digits);
+        }
+        int[] result = new int[digits.length() / 2];
+        for (int k = 0; k < result.length; k++) {
+            int hi = Character.digit(digits.charAt(2 * k), HEX),
+                lo = Character.digit(digits.charAt(2 * k + 1), HEX);
+            if (hi < 0 || lo < 0) {
+                throw error("bad hexadecimal byte in %s", digits);
+            }
+            result[k] = hi * HEX + lo;
+        }
+        return result;
+    }
+
+    /** Size of the conversion buffer in bytes. */
+    private static final int BUFFER_SIZE = 1 << 16;
+    /** Mask for the unsigned value of a byte. */
+    private static final int BYTE_MASK = 0xff;
+    /** Radix of settings and cycles. */
+    private static final int HEX = 16;
+}
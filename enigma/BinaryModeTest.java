@@ -0,0 +1,168 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+
+/** The suite of all JUnit tests for the BinaryMode class.
+ *  @author Thomas Nguyen
+ */
+public class BinaryModeTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the byte values in a random order, using RANDOM. */
+    private List<Integer> shuffled(Random random) {
+        List<Integer> result = new ArrayList<>();
+        for (int b = 0; b < Alphabet.BYTE_VALUES; b += 1) {
+            result.add(b);
+        }
+        Collections.shuffle(result, random);
+        return result;
+    }
+
+    /** Return VALUES as two hexadecimal digits each. */
+    private String hex(List<Integer> values) {
+        StringBuilder result = new StringBuilder();
+        for (int b : values) {
+            result.append(String.format("%02x", b));
+        }
+        return result.toString();
+    }
+
+    /** Return a binary configuration with a reflector B and moving rotors
+     *  R1, R2, and R3 of random wiring and two random notches each, using
+     *  RANDOM. */
+    private String config(Random random) {
+        StringBuilder result = new StringBuilder("BYTES 4 3\n B R ");
+        List<Integer> pairs = shuffled(random);
+        for (int k = 0; k < pairs.size(); k += 2) {
+            result.append('(').append(hex(pairs.subList(k, k + 2)))
+                .append(") ");
+        }
+        for (int r = 1; r <= 3; r += 1) {
+            result.append(String.format("%n R%d M%02x%02x (%s)", r,
+                                        random.nextInt(256),
+                                        random.nextInt(256),
+                                        hex(shuffled(random))));
+        }
+        return result.append('\n').toString();
+    }
+
+    /** Return the conversion of DATA by M. */
+    private byte[] convert(Machine m, byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(data.length,
+                     BinaryMode.convert(m, Channels.newChannel(
+                                            new ByteArrayInputStream(data)),
+                                        Channels.newChannel(out)));
+        return out.toByteArray();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkHex() {
+        assertArrayEquals(new int[] { 0, 255, 26 }, BinaryMode.hex("00ff1a"));
+        assertArrayEquals(new int[] { 10, 171 }, BinaryMode.hex("0AaB"));
+        assertArrayEquals(new int[0], BinaryMode.hex(""));
+        for (String bad : new String[] { "0", "0g", "-1", "abc" }) {
+            try {
+                BinaryMode.hex(bad);
+                fail("bad hexadecimal " + bad + " accepted");
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        }
+    }
+
+    @Test
+    public void checkMapping() {
+        int[] mapping = BinaryMode.mapping(List.of("(00ff1a)", "(8081)"));
+        assertEquals(Alphabet.BYTE_VALUES, mapping.length);
+        assertEquals(255, mapping[0]);
+        assertEquals(26, mapping[255]);
+        assertEquals(0, mapping[26]);
+        assertEquals(0x81, mapping[0x80]);
+        assertEquals(0x80, mapping[0x81]);
+        assertEquals(0x7f, mapping[0x7f]);
+        for (String bad : new String[] { "(0001) (0100)", "0001", "(0001" }) {
+            try {
+                BinaryMode.mapping(List.of(bad.split(" ")));
+                fail("bad cycles " + bad + " accepted");
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        }
+    }
+
+    @Test
+    public void checkRoundTrip() throws IOException {
+        Random random = new Random(29);
+        String config = config(random);
+        String settings = "* B R1 R2 R3 0a80ff 017f02 (00ff) (4142)";
+        byte[] data = new byte[100_000];
+        random.nextBytes(data);
+        Machine m = BinaryMode.readConfig(new Scanner(config));
+        assertEquals(Alphabet.BYTE_VALUES, m.alphabet().size());
+        BinaryMode.setUp(m, settings);
+        byte[] encrypted = convert(m, data);
+        for (int k = 0; k < data.length; k += 1) {
+            assertTrue(data[k] != encrypted[k]);
+        }
+        Machine n = BinaryMode.readConfig(new Scanner(config));
+        BinaryMode.setUp(n, settings);
+        assertArrayEquals(data, convert(n, encrypted));
+    }
+
+    @Test
+    public void checkBadConfig() {
+        try {
+            BinaryMode.readConfig(new Scanner("ABCD 4 3\n"));
+            fail("non-binary alphabet accepted");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void checkBlocksMatchMachine() throws IOException {
+        Random random = new Random(290);
+        String config = config(random);
+        byte[] data = new byte[300_000];
+        random.nextBytes(data);
+        for (String settings : new String[] { "* B R1 R2 R3 000000",
+                                              "* B R3 R1 R2 fe01ff 0102ff "
+                                              + "(00ff) (4142)" }) {
+            Machine m = BinaryMode.readConfig(new Scanner(config));
+            BinaryMode.setUp(m, settings);
+            Machine n = BinaryMode.readConfig(new Scanner(config));
+            BinaryMode.setUp(n, settings);
+            byte[] expected = new byte[data.length];
+            for (int k = 0; k < data.length; k += 1) {
+                expected[k] = (byte) n.convert(data[k] & 0xff);
+            }
+            assertArrayEquals(expected, convert(m, data));
+            for (int x = 1; x < 4; x += 1) {
+                assertEquals(n.rotors()[x].setting(),
+                             m.rotors()[x].setting());
+            }
+        }
+    }
+
+}
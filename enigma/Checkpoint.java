@@ -0,0 +1,392 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import static enigma.EnigmaException.*;
+
+/** Checkpointed processing of an input file, which can be resumed after
+ *  a crash with the same result as an uninterrupted run.  Usage:
+ *
+ *      java enigma.Main --checkpoint LINES CONFIG INPUT OUTPUT
+ *      java enigma.Main --resume LINES CONFIG INPUT OUTPUT
+ *
+ *  Both process INPUT as Main does, writing to OUTPUT, and every LINES
+ *  lines record a checkpoint in the sidecar file OUTPUT.checkpoint: the
+ *  number of bytes of INPUT consumed and of OUTPUT written, and the
+ *  state of the machine (rotor order, positions, rings, and plugboard).
+ *  The sidecar is replaced atomically, after OUTPUT has been forced to
+ *  disk, so that it always describes a consistent state.  --checkpoint
+ *  starts from the beginning; --resume truncates OUTPUT to the recorded
+ *  length, seeks INPUT to the recorded offset, restores the machine, and
+ *  continues.  The sidecar is deleted when the input is finished.
+ *  Lines of INPUT end as they do for the Scanner that Main reads with:
+ *  in "\r\n", "\n", "\r", or (if the charset can encode them) one of
+ *  the Unicode line and paragraph separators U+0085, U+2028 and U+2029,
+ *  so that a checkpointed run produces the same output as Main.
+ *  @author Thomas Nguyen
+ */
+final class Checkpoint {
+
+    /** Run as described above with ARGS, resuming iff RESUME. */
+    static void run(boolean resume, String... args) {
+        if (args.length != 4) {
+            throw error("Usage: --checkpoint|--resume LINES CONFIG INPUT "
+                        + "OUTPUT");
+        }
+        int interval;
+        try {
+            interval = Integer.parseInt(args[0]);
+        } catch (NumberFormatException excp) {
+            interval = 0;
+        }
+        if (interval <= 0) {
+            throw error("bad checkpoint interval: %s", args[0]);
+        }
+        Checkpoint job = new Checkpoint(Main.readConfig(args[1]),
+                                        Paths.get(args[2]),
+                                        Paths.get(args[3]), interval,
+                                        resume);
+        while (job.step()) {
+            continue;
+        }
+        job.finish();
+    }
+
+    /** Process INPUT with M, writing to OUTPUT and checkpointing every
+     *  INTERVAL lines, resuming from OUTPUT's sidecar iff RESUME.  M is
+     *  freshly configured, with no rotors inserted. */
+    Checkpoint(Machine m, Path input, Path output, int interval,
+               boolean resume) {
+        _machine = m;
+        _interval = interval;
+        _sidecar = Paths.get(output + SUFFIX);
+        long inputOffset = 0, outputOffset = 0;
+        if (resume) {
+            Properties state = load(_sidecar);
+            try {
+                inputOffset = Long.parseLong(field(state, "input"));
+                outputOffset = Long.parseLong(field(state, "output"));
+            } catch (NumberFormatException excp) {
+                throw error("corrupt checkpoint %s", _sidecar);
+            }
+            restore(state);
+        }
+        try {
+            FileInputStream in = new FileInputStream(input.toFile());
+            if (inputOffset > in.getChannel().size()) {
+                throw error("%s is shorter than its checkpoint", input);
+            }
+            in.getChannel().position(inputOffset);
+            _input = new LineInput(in, inputOffset);
+            FileOutputStream out = new FileOutputStream(output.toFile(),
+                                                        resume);
+            _outputChannel = out.getChannel();
+            if (outputOffset > _outputChannel.size()) {
+                throw error("%s is shorter than its checkpoint", output);
+            }
+            _outputChannel.truncate(outputOffset);
+            _output = new PrintStream(new BufferedOutputStream(out), false,
+                                      CHARSET);
+        } catch (IOException excp) {
+            throw error("could not open files: %s", excp.getMessage());
+        }
+    }
+
+    /** Process the next line of input, checkpointing if it is time.
+     *  Return false if there are no more lines. */
+    boolean step() {
+        String line = _input.readLine();
+        if (line == null) {
+            return false;
+        }
+        Main.processLine(_machine, line, _lines == 0 && !_resumed,
+                         _output);
+        _lines += 1;
+        if (_lines % _interval == 0) {
+            checkpoint();
+        }
+        return true;
+    }
+
+    /** Finish after the last line: close my files and delete the
+     *  sidecar. */
+    void finish() {
+        close();
+        try {
+            Files.deleteIfExists(_sidecar);
+        } catch (IOException excp) {
+            throw error("could not delete %s", _sidecar);
+        }
+    }
+
+    /** Close my files, leaving the sidecar as it is. */
+    void close() {
+        _output.close();
+        _input.close();
+        if (_output.checkError()) {
+            throw error("error writing output");
+        }
+    }
+
+    /** Record a checkpoint of my current state in the sidecar. */
+    private void checkpoint() {
+        _output.flush();
+        if (_output.checkError()) {
+            throw error("error writing output");
+        }
+        Properties state = new Properties();
+        Rotor[] rotors = _machine.rotors();
+        String[] names = new String[rotors.length];
+        int[] positions = new int[rotors.length],
+            rings = new int[rotors.length];
+        for (int x = 0; x < rotors.length; x++) {
+            names[x] = rotors[x].name();
+            positions[x] = rotors[x].setting();
+            rings[x] = rotors[x].ring();
+        }
+        state.setProperty("rotors", String.join(" ", names));
+        state.setProperty("positions", ints(positions));
+        state.setProperty("rings", ints(rings));
+        if (_machine.plugboard() != null) {
+            state.setProperty("plugboard",
+                              Permutations.toCycles(
+                                  _machine.plugboard().toArray(),
+                                  _machine.alphabet()));
+        }
+        Path temp = Paths.get(_sidecar + ".tmp");
+        try {
+            state.setProperty("input", Long.toString(_input.offset()));
+            state.setProperty("output",
+                              Long.toString(_outputChannel.position()));
+            _outputChannel.force(false);
+            try (FileOutputStream out = new FileOutputStream(temp.toFile())) {
+                state.store(out, "enigma checkpoint");
+                out.getFD().sync();
+            }
+            Files.move(temp, _sidecar, StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw error("could not write checkpoint: %s",
+                        excp.getMessage());
+        }
+    }
+
+    /** Set my machine to the state recorded in STATE. */
+    private void restore(Properties state) {
+        String[] names = field(state, "rotors").split(" ");
+        int[] positions = ints(field(state, "positions")),
+            rings = ints(field(state, "rings"));
+        if (names.length != _machine.numRotors()
+            || positions.length != names.length
+            || rings.length != names.length) {
+            throw error("checkpoint does not match configuration");
+        }
+        KeySpace.checkOrder(_machine, names);
+        _machine.insertRotors(names);
+        for (int x = 0; x < names.length; x++) {
+            _machine.rotors()[x].set(positions[x]);
+            _machine.rotors()[x].setRing(rings[x]);
+        }
+        String plugboard = state.getProperty("plugboard");
+        _machine.setPlugboard(plugboard == null ? null
+                              : new Permutation(plugboard,
+                                                _machine.alphabet()));
+        _resumed = true;
+    }
+
+    /** Return the checkpoint read from the file FILE. */
+    private static Properties load(Path file) {
+        Properties result = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            result.load(in);
+        } catch (IOException excp) {
+            throw error("could not read checkpoint %s", file);
+        }
+        return result;
+    }
+
+    /** Return the field NAME of STATE, which must be present. */
+    private static String field(Properties state, String name) {
+        String result = state.getProperty(name);
+        if (result == null) {
+            throw error("checkpoint has no %s", name);
+        }
+        return result;
+    }
+
+    /** Return VALUES separated by blanks. */
+    private static String ints(int[] values) {
+        StringBuilder result = new StringBuilder();
+        for (int v : values) {
+            if (result.length() > 0) {
+                result.append(' ');
+            }
+            result.append(v);
+        }
+        return result.toString();
+    }
+
+    /** Return the integers separated by blanks in S. */
+    private static int[] ints(String s) {
+        try {
+            return Arrays.stream(s.trim().split(" "))
+                .mapToInt(Integer::parseInt).toArray();
+        } catch (NumberFormatException excp) {
+            throw error("corrupt checkpoint");
+        }
+    }
+
+    /** The lines of a byte stream, decoded with CHARSET, with a count of
+     *  the bytes consumed.  Bytes are read a buffer at a time, and line
+     *  ends are found by matching the encodings of SEPARATORS. */
+    private static class LineInput {
+        /** Lines from IN, whose first byte is at OFFSET in its file. */
+        LineInput(InputStream in, long offset) {
+            _in = in;
+            _offset = offset;
+        }
+
+        /** Return the next line, without its terminator, or null at the
+         *  end of the input. */
+        String readLine() {
+            if (!fill(1)) {
+                return null;
+            }
+            int len = 0;
+            while (fill(LONGEST_SEPARATOR) || _pos < _limit) {
+                int end = separator();
+                if (end > 0) {
+                    _offset += end;
+                    _pos += end;
+                    break;
+                }
+                if (len == _line.length) {
+                    _line = Arrays.copyOf(_line, 2 * len);
+                }
+                _line[len++] = _buffer[_pos++];
+                _offset += 1;
+            }
+            return new String(_line, 0, len, CHARSET);
+        }
+
+        /** Return the length of the line separator starting at the next
+         *  byte of my buffer, or 0 if there is none. */
+        private int separator() {
+            for (byte[] sep : SEPARATORS) {
+                if (_limit - _pos >= sep.length
+                    && Arrays.equals(_buffer, _pos, _pos + sep.length,
+                                     sep, 0, sep.length)) {
+                    return sep.length;
+                }
+            }
+            return 0;
+        }
+
+        /** Read into my buffer until it holds at least N unread bytes, or
+         *  the input ends.  Return true iff it holds N. */
+        private boolean fill(int n) {
+            if (_limit - _pos >= n) {
+                return true;
+            }
+            System.arraycopy(_buffer, _pos, _buffer, 0, _limit - _pos);
+            _limit -= _pos;
+            _pos = 0;
+            try {
+                while (_limit < n) {
+                    int k = _in.read(_buffer, _limit,
+                                     _buffer.length - _limit);
+                    if (k < 0) {
+                        return false;
+                    }
+                    _limit += k;
+                }
+            } catch (IOException excp) {
+                throw error("error reading input: %s", excp.getMessage());
+            }
+            return true;
+        }
+
+        /** Return the offset in its file of the next byte I will read. */
+        long offset() {
+            return _offset;
+        }
+
+        /** Close my stream. */
+        void close() {
+            try {
+                _in.close();
+            } catch (IOException excp) {
+                return;
+            }
+        }
+
+        /** My source. */
+        private final InputStream _in;
+        /** Bytes read from _in; those from _pos to _limit are unread. */
+        private final byte[] _buffer = new byte[BUFFER_SIZE];
+        /** Bounds of the unread bytes of _buffer. */
+        private int _pos, _limit;
+        /** Offset of the next unread byte in its file. */
+        private long _offset;
+        /** Bytes of the current line. */
+        private byte[] _line = new byte[BUFFER_SIZE];
+    }
+
+    /** Return the line separators of Scanner.nextLine that CHARSET can
+     *  encode, as bytes, longest first (so that "\r\n" is preferred to
+     *  "\r"). */
+    private static byte[][] separators() {
+        List<byte[]> result = new ArrayList<>();
+        for (String sep : new String[] { "\r\n", "\n", "\r", "\u0085",
+                                         "\u2028", "\u2029" }) {
+            if (CHARSET.newEncoder().canEncode(sep)) {
+                result.add(sep.getBytes(CHARSET));
+            }
+        }
+        result.sort((a, b) -> b.length - a.length);
+        return result.toArray(new byte[0][]);
+    }
+
+    /** Suffix of the sidecar file's name. */
+    static final String SUFFIX = ".checkpoint";
+    /** Charset of input and output, as used by Main. */
+    private static final Charset CHARSET = Charset.defaultCharset();
+    /** Size of the input buffer. */
+    private static final int BUFFER_SIZE = 1 << 16;
+    /** The encodings of the line separators, longest first. */
+    private static final byte[][] SEPARATORS = separators();
+    /** Length of the longest of SEPARATORS. */
+    private static final int LONGEST_SEPARATOR = SEPARATORS[0].length;
+
+    /** The machine. */
+    private final Machine _machine;
+    /** Lines per checkpoint. */
+    private final int _interval;
+    /** The checkpoint file. */
+    private final Path _sidecar;
+    /** Source of input lines. */
+    private final LineInput _input;
+    /** Destination of output. */
+    private final PrintStream _output;
+    /** The channel of the file under _output. */
+    private final FileChannel _outputChannel;
+    /** Number of lines processed in this run. */
+    private long _lines;
+    /** True iff this run resumed from a checkpoint. */
+    private boolean _resumed;
+}
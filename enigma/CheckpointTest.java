@@ -0,0 +1,87 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Checkpoint class.
+ *  @author Thomas Nguyen
+ */
+public class CheckpointTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkResume() throws IOException {
+        Path dir = Files.createTempDirectory("checkpoint");
+        Path in = dir.resolve("in"), out = dir.resolve("out"),
+            sidecar = dir.resolve("out" + Checkpoint.SUFFIX);
+        String text = input(400, 34, 50, 60, true);
+        Files.writeString(in, text, Charset.defaultCharset());
+
+        Checkpoint job = new Checkpoint(navalMachine(), in, out, 37, false);
+        for (int k = 0; k < 100; k++) {
+            assertTrue(job.step());
+        }
+        job.close();
+        assertTrue(Files.exists(sidecar));
+        Files.writeString(out, "GARBAGE", StandardOpenOption.APPEND);
+
+        job = new Checkpoint(navalMachine(), in, out, 37, true);
+        while (job.step()) {
+            continue;
+        }
+        job.finish();
+        assertFalse(Files.exists(sidecar));
+        assertEquals(expected(text),
+                     Files.readString(out, Charset.defaultCharset()));
+        Files.delete(in);
+        Files.delete(out);
+        Files.delete(dir);
+    }
+
+    @Test
+    public void checkLineEnds() throws IOException {
+        Path dir = Files.createTempDirectory("checkpoint");
+        Path in = dir.resolve("in"), out = dir.resolve("out");
+        Random random = new Random(340);
+        StringBuilder text = new StringBuilder();
+        for (String line : input(300, 35, 40, 60, false).split("\n")) {
+            String[] ends = { "\n", "\r", "\r\n" };
+            text.append(line).append(ends[random.nextInt(ends.length)]);
+        }
+        text.setLength(text.length() - 1);
+        Files.writeString(in, text, Charset.defaultCharset());
+
+        Checkpoint job = new Checkpoint(navalMachine(), in, out, 7, false);
+        for (int k = 0; k < 150; k++) {
+            assertTrue(job.step());
+        }
+        job.close();
+        job = new Checkpoint(navalMachine(), in, out, 7, true);
+        while (job.step()) {
+            continue;
+        }
+        job.finish();
+        assertEquals(expected(text.toString()),
+                     Files.readString(out, Charset.defaultCharset()));
+        Files.delete(in);
+        Files.delete(out);
+        Files.delete(dir);
+    }
+
+}
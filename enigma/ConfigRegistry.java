@@ -0,0 +1,341 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static enigma.EnigmaException.*;
+
+/** A set of machine configurations, each known by an id, shared by many
+ *  users in one process.  Each configuration is held as a template
+ *  machine, and machine(ID) hands out a copy of it, which its user may
+ *  set up and convert with as it likes.
+ *
+ *  Configurations read from files may be reloaded, by reload or, once
+ *  watch has been called, whenever their files change.  A configuration
+ *  is read and built in full before the registry's map of configurations
+ *  is replaced, in a single volatile write, by one holding the new
+ *  version; machine never waits for a reload, and machines already handed
+ *  out carry on with the version they were copied from.  A file that no
+ *  longer reads as a configuration leaves the old version in place, with
+ *  the error recorded.
+ *
+ *  Alphabets and rotor permutations read by a registry are interned:
+ *  configurations with the same alphabet, or rotors with the same wiring,
+ *  share one object, and so share its tables, including the shifted
+ *  tables that a Permutation builds on first use.
+ *  @author Thomas Nguyen
+ */
+final class ConfigRegistry implements AutoCloseable {
+
+    /** Add the configuration read from FILE under ID, replacing any
+     *  configuration with that id. */
+    synchronized void register(String id, Path file) {
+        Path absolute = file.toAbsolutePath().normalize();
+        Machine m = read(absolute);
+        install(new Entry(absolute, m, version(id) + 1, null), id);
+        if (_watcher != null) {
+            watchDirectory(absolute.getParent());
+        }
+    }
+
+    /** Add the configured machine M under ID, replacing any configuration
+     *  with that id.  M is not read from a file, and is never reloaded. */
+    synchronized void register(String id, Machine m) {
+        install(new Entry(null, m.copy(), version(id) + 1, null), id);
+    }
+
+    /** Return a new machine of the configuration ID, in the state of its
+     *  template. */
+    Machine machine(String id) {
+        Entry entry = _entries.get(id);
+        if (entry == null) {
+            throw error("no configuration named %s", id);
+        }
+        return entry.machine.copy();
+    }
+
+    /** Return the ids of my configurations, in the order first
+     *  registered. */
+    List<String> ids() {
+        return new ArrayList<>(_entries.keySet());
+    }
+
+    /** Return the number of times configuration ID has been loaded, or 0
+     *  if there is no such configuration. */
+    int version(String id) {
+        Entry entry = _entries.get(id);
+        return entry == null ? 0 : entry.version;
+    }
+
+    /** Return the message of the error from the last failed reload of
+     *  configuration ID since it was last loaded, or null if none. */
+    String failure(String id) {
+        Entry entry = _entries.get(id);
+        return entry == null ? null : entry.error;
+    }
+
+    /** Read configuration ID from its file again, and install the new
+     *  version.  Returns false, leaving the old version in place, if the
+     *  file cannot be read as a configuration. */
+    synchronized boolean reload(String id) {
+        Entry entry = _entries.get(id);
+        if (entry == null || entry.file == null) {
+            throw error("configuration %s is not read from a file", id);
+        }
+        try {
+            Machine m = read(entry.file);
+            install(new Entry(entry.file, m, entry.version + 1, null), id);
+            return true;
+        } catch (EnigmaException | AssertionError excp) {
+            install(new Entry(entry.file, entry.machine, entry.version,
+                              String.valueOf(excp.getMessage())), id);
+            return false;
+        }
+    }
+
+    /** Start reloading configurations whenever their files change, on a
+     *  daemon thread, until closed. */
+    synchronized void watch() {
+        if (_watcher != null) {
+            return;
+        }
+        try {
+            _watcher = FileSystems.getDefault().newWatchService();
+        } catch (IOException excp) {
+            throw error("could not watch configurations: %s",
+                        excp.getMessage());
+        }
+        for (Entry entry : _entries.values()) {
+            if (entry.file != null) {
+                watchDirectory(entry.file.getParent());
+            }
+        }
+        WatchService watcher = _watcher;
+        Thread thread = new Thread(() -> watchLoop(watcher),
+                                   "enigma-config-watch");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Stop watching files. */
+    @Override
+    public synchronized void close() {
+        if (_watcher != null) {
+            try {
+                _watcher.close();
+            } catch (IOException excp) {
+                /* Ignore IOException */
+            }
+            _watcher = null;
+            _watched.clear();
+        }
+    }
+
+    /** Return the interned alphabet with the same characters as ALPHA. */
+    synchronized Alphabet intern(Alphabet alpha) {
+        return _alphabets.computeIfAbsent(alpha.chars(), chars -> alpha);
+    }
+
+    /** Return the interned permutation with the same alphabet and mapping
+     *  as PERM, whose alphabet must be interned. */
+    synchronized Permutation intern(Permutation perm) {
+        return _permutations.computeIfAbsent(new Wiring(perm), w -> perm);
+    }
+
+    /** Return the number of distinct permutations interned. */
+    synchronized int internedPermutations() {
+        return _permutations.size();
+    }
+
+    /** Return the machine configured by FILE, with interned alphabet and
+     *  permutations. */
+    private Machine read(Path file) {
+        return Main.readConfig(file.toString(), this);
+    }
+
+    /** Make ENTRY the current version of configuration ID, and drop the
+     *  interned objects that are no longer used. */
+    private void install(Entry entry, String id) {
+        Map<String, Entry> entries = new LinkedHashMap<>(_entries);
+        entries.put(id, entry);
+        _entries = Collections.unmodifiableMap(entries);
+        Set<Alphabet> alphabets = new HashSet<>();
+        Set<Permutation> permutations = new HashSet<>();
+        for (Entry e : entries.values()) {
+            alphabets.add(e.machine.alphabet());
+            for (Rotor r : e.machine.allRotors()) {
+                permutations.add(r.permutation());
+            }
+        }
+        _alphabets.values().retainAll(alphabets);
+        _permutations.values().retainAll(permutations);
+    }
+
+    /** Watch DIR, unless it is watched already. */
+    private void watchDirectory(Path dir) {
+        if (_watched.contains(dir)) {
+            return;
+        }
+        try {
+            dir.register(_watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                         StandardWatchEventKinds.ENTRY_MODIFY);
+            _watched.add(dir);
+        } catch (IOException excp) {
+            throw error("could not watch %s: %s", dir, excp.getMessage());
+        }
+    }
+
+    /** Reload configurations as WATCHER reports changes to their files,
+     *  until it is closed.  A change is acted on only once its files have
+     *  settled, so that a file still being written is not read part-way. */
+    private void watchLoop(WatchService watcher) {
+        try {
+            while (true) {
+                Set<Path> changed = new HashSet<>();
+                changes(watcher.take(), changed);
+                settle(watcher, changed);
+                for (Map.Entry<String, Entry> e : _entries.entrySet()) {
+                    if (changed.contains(e.getValue().file)) {
+                        reload(e.getKey());
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException excp) {
+            return;
+        }
+    }
+
+    /** Add the files changed according to KEY to CHANGED, and reset
+     *  KEY. */
+    private void changes(WatchKey key, Set<Path> changed) {
+        Path dir = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.context() instanceof Path) {
+                changed.add(dir.resolve((Path) event.context()));
+            }
+        }
+        key.reset();
+    }
+
+    /** Wait, adding any further changes reported by WATCHER to CHANGED,
+     *  until WATCHER has reported nothing for SETTLE_MILLIS and the sizes
+     *  and modification times of the files in CHANGED have stayed the
+     *  same over that time, or until SETTLE_LIMIT has passed. */
+    private void settle(WatchService watcher, Set<Path> changed)
+        throws InterruptedException {
+        long deadline = System.currentTimeMillis() + SETTLE_LIMIT;
+        List<Object> stamps = stamps(changed);
+        while (System.currentTimeMillis() < deadline) {
+            WatchKey key = watcher.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+            if (key != null) {
+                changes(key, changed);
+            } else {
+                List<Object> now = stamps(changed);
+                if (now.equals(stamps)) {
+                    return;
+                }
+                stamps = now;
+            }
+        }
+    }
+
+    /** Return the sizes and modification times of FILES, with null for
+     *  those that cannot be read. */
+    private static List<Object> stamps(Set<Path> files) {
+        List<Object> result = new ArrayList<>();
+        for (Path file : files) {
+            try {
+                result.add(Files.size(file));
+                result.add(Files.getLastModifiedTime(file));
+            } catch (IOException excp) {
+                result.add(null);
+            }
+        }
+        return result;
+    }
+
+    /** One version of a configuration. */
+    private static final class Entry {
+        /** Version VERSION of the configuration read from FILE (null if
+         *  not from a file) as template M, with ERROR from the last
+         *  failed reload, or null. */
+        Entry(Path file, Machine m, int version, String error) {
+            this.file = file;
+            this.machine = m;
+            this.version = version;
+            this.error = error;
+        }
+
+        /** Absolute path of my file, or null. */
+        final Path file;
+        /** My template machine, which is only ever copied. */
+        final Machine machine;
+        /** My version number. */
+        final int version;
+        /** Error from the last failed reload, or null. */
+        final String error;
+    }
+
+    /** The identity of a permutation for interning: its (interned)
+     *  alphabet and its mapping. */
+    private static final class Wiring {
+        /** The wiring of PERM. */
+        Wiring(Permutation perm) {
+            _alphabet = perm.alphabet();
+            _mapping = perm.toArray();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Wiring
+                && ((Wiring) obj)._alphabet == _alphabet
+                && Arrays.equals(((Wiring) obj)._mapping, _mapping);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(_mapping);
+        }
+
+        /** The alphabet. */
+        private final Alphabet _alphabet;
+        /** The mapping. */
+        private final int[] _mapping;
+    }
+
+    /** Time, in milliseconds, for which a changed file must stay the same
+     *  before it is reloaded. */
+    private static final long SETTLE_MILLIS = 100;
+    /** Longest time, in milliseconds, to wait for changed files to
+     *  settle. */
+    private static final long SETTLE_LIMIT = 5_000;
+
+    /** Current versions of configurations by id: an unmodifiable map,
+     *  replaced whole on every change. */
+    private volatile Map<String, Entry> _entries = Collections.emptyMap();
+    /** Interned alphabets, by their characters. */
+    private final Map<String, Alphabet> _alphabets = new HashMap<>();
+    /** Interned permutations, by wiring. */
+    private final Map<Wiring, Permutation> _permutations = new HashMap<>();
+    /** Watches the directories of my files, or null if not watching. */
+    private WatchService _watcher;
+    /** The directories watched. */
+    private final Set<Path> _watched = new HashSet<>();
+}
@@ -0,0 +1,176 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the ConfigRegistry class.
+ *  @author Thomas Nguyen
+ */
+public class ConfigRegistryTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /** Longest wait, in milliseconds, for a watcher to notice a change:
+     *  well within the time limit, so that a watcher too slow to notice
+     *  fails the test rather than timing out. */
+    private static final long WATCH_WAIT = 10_000;
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A configuration with rotor I of the naval machine in two slots. */
+    private static final String SMALL =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ\n 3 1\n"
+        + " I MQ (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+        + " Z N (AZ)\n"
+        + " B R (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)\n"
+        + "     (RX) (SZ) (TV)\n";
+
+    /** A message using every letter. */
+    private static final String MSG = "THEQUICKBROWNFOXJUMPSOVERTHELAZYDOG";
+
+    /** Write TEXT to FILE atomically, so that a watcher never sees part
+     *  of it. */
+    private void write(Path file, String text) throws IOException {
+        Path temp = Files.createTempFile(file.getParent(), "new", ".tmp");
+        Files.writeString(temp, text, Charset.defaultCharset());
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE,
+                   StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /** Return the rotor of M named NAME. */
+    private Rotor rotor(Machine m, String name) {
+        for (Rotor r : m.allRotors()) {
+            if (r.name().equals(name)) {
+                return r;
+            }
+        }
+        throw new AssertionError("no rotor " + name);
+    }
+
+    /** Return the conversion of MSG by M set up with SETTINGS. */
+    private String convert(Machine m, String settings, String msg) {
+        Main.setUp(m, settings);
+        return m.convert(msg);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkInterning() throws IOException {
+        Path dir = Files.createTempDirectory("registry");
+        Path naval = dir.resolve("naval.conf"), small = dir.resolve("small");
+        navalConfig(naval);
+        write(small, SMALL);
+        try (ConfigRegistry registry = new ConfigRegistry()) {
+            registry.register("naval", naval);
+            registry.register("small", small);
+            assertEquals(List.of("naval", "small"), registry.ids());
+            Machine m1 = registry.machine("naval"),
+                m2 = registry.machine("small");
+            assertSame(m1.alphabet(), m2.alphabet());
+            assertSame(rotor(m1, "I").permutation(),
+                       rotor(m2, "I").permutation());
+            assertSame(rotor(m1, "B").permutation(),
+                       rotor(m2, "B").permutation());
+            assertEquals(13, registry.internedPermutations());
+            assertEquals(convert(Main.readConfig(naval.toString()),
+                                 "* B Beta I II III AXLE", "HELLOWORLD"),
+                         convert(m1, "* B Beta I II III AXLE",
+                                 "HELLOWORLD"));
+        }
+    }
+
+    @Test
+    public void checkReload() throws IOException {
+        Path dir = Files.createTempDirectory("registry");
+        Path file = dir.resolve("small.conf");
+        write(file, SMALL);
+        try (ConfigRegistry registry = new ConfigRegistry()) {
+            registry.register("small", file);
+            assertEquals(1, registry.version("small"));
+            Machine old = registry.machine("small");
+            String before = convert(old, "* B Z I AA", MSG);
+
+            write(file, SMALL.replace("(AZ)", "(AZY)"));
+            assertTrue(registry.reload("small"));
+            assertEquals(2, registry.version("small"));
+            assertNull(registry.failure("small"));
+            assertEquals(before, convert(old, "* B Z I AA", MSG));
+            String after = convert(registry.machine("small"), "* B Z I AA",
+                                   MSG);
+            assertFalse(before.equals(after));
+            assertEquals(3, registry.internedPermutations());
+
+            write(file, "ABC\n 3 1\n I MQ (AE\n");
+            assertFalse(registry.reload("small"));
+            assertEquals(2, registry.version("small"));
+            assertNotNull(registry.failure("small"));
+            assertEquals(after, convert(registry.machine("small"),
+                                        "* B Z I AA", MSG));
+        }
+    }
+
+    @Test
+    public void checkWatch() throws Exception {
+        Path dir = Files.createTempDirectory("registry");
+        Path file = dir.resolve("small.conf");
+        write(file, SMALL);
+        try (ConfigRegistry registry = new ConfigRegistry()) {
+            registry.register("small", file);
+            registry.watch();
+            write(file, SMALL.replace("(AZ)", "(AZY)"));
+            long deadline = System.currentTimeMillis() + WATCH_WAIT;
+            while (registry.version("small") < 2
+                   && System.currentTimeMillis() < deadline) {
+                Thread.sleep(100);
+            }
+            assertEquals("change not noticed", 2, registry.version("small"));
+            assertEquals('Y', rotor(registry.machine("small"), "Z")
+                         .permutation().permute('Z'));
+        }
+    }
+
+    @Test
+    public void checkWatchPartialWrite() throws Exception {
+        Path dir = Files.createTempDirectory("registry");
+        Path file = dir.resolve("small.conf");
+        write(file, SMALL);
+        String changed = SMALL.replace("(AZ)", "(AZY)");
+        int cut = changed.indexOf(" B R");
+        try (ConfigRegistry registry = new ConfigRegistry()) {
+            registry.register("small", file);
+            registry.watch();
+            try (OutputStream out = Files.newOutputStream(file)) {
+                out.write(changed.substring(0, cut).getBytes());
+                out.flush();
+                Thread.sleep(40);
+                out.write(changed.substring(cut).getBytes());
+            }
+            long deadline = System.currentTimeMillis() + WATCH_WAIT;
+            while (registry.version("small") < 2
+                   && System.currentTimeMillis() < deadline) {
+                Thread.sleep(100);
+            }
+            Thread.sleep(500);
+            assertEquals("partial file loaded", 2, registry.version("small"));
+            assertEquals(MSG.length(),
+                         convert(registry.machine("small"), "* B Z I AA",
+                                 MSG).length());
+        }
+    }
+
+}
@@ -0,0 +1,566 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.IntStream;
+
+import static enigma.EnigmaException.*;
+
+/** A catalog of the Rejewski characteristics of an Enigma configuration.
+ *  For every rotor order and start position, the machine's permutations at
+ *  the first six key presses, P1 ... P6, give the composite permutations
+ *  P1P4, P2P5 and P3P6.  The cycle lengths of these three composites do not
+ *  depend on the plugboard, so a characteristic observed in a day's
+ *  indicators picks out the few rotor orders and start positions that
+ *  could have produced it.
+ *
+ *  The catalog is stored as a header followed by fixed-size records sorted
+ *  by a 64-bit hash of the characteristic, so that a lookup is a binary
+ *  search over a memory-mapped file.  A catalog of every rotor order of
+ *  the naval machine has some 614 million records (about 10 GB), more
+ *  than either the heap or one mapped buffer will hold, so build sorts
+ *  runs of records in memory and merges them from temporary files beside
+ *  the index, and the index is mapped in segments of at most 1 GB.
+ *  Usage:
+ *
+ *      java enigma.CycleCatalog build CONFIG INDEX [ORDER ...]
+ *      java enigma.CycleCatalog query INDEX INDICATORS
+ *
+ *  where each ORDER is a comma-separated list of rotor names starting with
+ *  a reflector (all legal orders are used if none is given) and INDICATORS
+ *  is a file of doubly-enciphered indicators, one per line.
+ *  @author Thomas Nguyen
+ */
+final class CycleCatalog implements AutoCloseable {
+
+    /** Run the catalog tool on ARGS, as described above. */
+    public static void main(String... args) {
+        try {
+            if (args.length >= 3 && args[0].equals("build")) {
+                Machine m = Main.readConfig(args[1]);
+                List<String[]> orders = new ArrayList<>();
+                for (int k = 3; k < args.length; k++) {
+                    orders.add(args[k].split(","));
+                }
+                if (orders.isEmpty()) {
+                    orders = KeySpace.allOrders(m);
+                }
+                build(m, orders, Paths.get(args[2]));
+            } else if (args.length == 3 && args[0].equals("query")) {
+                try (CycleCatalog catalog =
+                         new CycleCatalog(Paths.get(args[1]))) {
+                    List<String> lines =
+                        Files.readAllLines(Paths.get(args[2]));
+                    for (String key : catalog.lookup(lines)) {
+                        System.out.println(key);
+                    }
+                }
+            } else {
+                throw error("usage: java enigma.CycleCatalog build CONFIG "
+                            + "INDEX [ORDER ...] | query INDEX INDICATORS");
+            }
+            return;
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Write to INDEX the catalog of characteristics of M for each rotor
+     *  order in ORDERS and every start position (rings at their 0
+     *  setting, no plugboard). */
+    static void build(Machine m, List<String[]> orders, Path index)
+        throws IOException {
+        build(m, orders, index, RUN_RECORDS);
+    }
+
+    /** Write to INDEX the catalog of characteristics of M for each rotor
+     *  order in ORDERS and every start position, as for
+     *  build(M, ORDERS, INDEX), sorting runs of at most RUN records in
+     *  memory, each computed in parallel. */
+    static void build(Machine m, List<String[]> orders, Path index, int run)
+        throws IOException {
+        Alphabet alpha = m.alphabet();
+        int n = alpha.size(), digits = m.numRotors() - 1;
+        for (String[] order : orders) {
+            KeySpace.checkOrder(m, order);
+        }
+        double size = Math.pow(n, digits) * orders.size();
+        if (Math.pow(n, digits) > Integer.MAX_VALUE || size > MAX_RECORDS) {
+            throw error("catalog of %.0f entries is too large", size);
+        }
+        int positions = (int) Math.pow(n, digits);
+        long total = (long) positions * orders.size();
+
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(headerBytes);
+        writeString(header, alpha.chars());
+        header.writeInt(digits);
+        header.writeInt(orders.size());
+        for (String[] order : orders) {
+            writeString(header, String.join(" ", order));
+        }
+        int start = 8 + headerBytes.size();
+        start += (RECORD_SIZE - start % RECORD_SIZE) % RECORD_SIZE;
+
+        Path dir = index.toAbsolutePath().getParent();
+        List<Path> runs = new ArrayList<>();
+        try (OutputStream file = Files.newOutputStream(index);
+             DataOutputStream out =
+                 new DataOutputStream(new BufferedOutputStream(file))) {
+            out.writeInt(MAGIC);
+            out.writeInt(start);
+            headerBytes.writeTo(out);
+            for (int k = 8 + headerBytes.size(); k < start; k++) {
+                out.writeByte(0);
+            }
+            Run records = new Run(m, orders, positions,
+                                  (int) Math.min(run, total));
+            for (long first = 0; first < total; first += run) {
+                records.fill(first, Math.min(first + run, total));
+                if (first == 0 && run >= total) {
+                    records.writeTo(out);
+                } else {
+                    Path temp = Files.createTempFile(dir, "catalog", ".run");
+                    runs.add(temp);
+                    try (DataOutputStream runOut = new DataOutputStream(
+                             new BufferedOutputStream(
+                                 Files.newOutputStream(temp)))) {
+                        records.writeTo(runOut);
+                    }
+                }
+            }
+            merge(runs, out);
+        } finally {
+            for (Path temp : runs) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    /** A buffer of sorted catalog records, computed a run at a time. */
+    private static class Run {
+        /** A buffer for up to SIZE records of the catalog of M with rotor
+         *  orders ORDERS, each with POSITIONS start positions. */
+        Run(Machine m, List<String[]> orders, int positions, int size) {
+            _template = m;
+            _orders = orders;
+            _positions = positions;
+            _keys = new long[size];
+            _values = new long[size];
+            _machines = ThreadLocal.withInitial(m::copy);
+        }
+
+        /** Compute and sort the records numbered FIRST up to LIMIT (as
+         *  order * positions + position). */
+        void fill(long first, long limit) {
+            _size = (int) (limit - first);
+            Alphabet alpha = _template.alphabet();
+            int n = alpha.size(), digits = _template.numRotors() - 1;
+            int pieces = (_size + PIECE - 1) / PIECE;
+            IntStream.range(0, pieces).parallel().forEach(piece -> {
+                Machine mach = _machines.get();
+                int[][] perms = new int[PRESSES][n];
+                int[] product = new int[n];
+                int order = -1;
+                int end = Math.min(_size, (piece + 1) * PIECE);
+                for (int r = piece * PIECE; r < end; r++) {
+                    long record = first + r;
+                    int k = (int) (record / _positions),
+                        p = (int) (record % _positions);
+                    if (k != order) {
+                        order = k;
+                        mach.insertRotors(_orders.get(k));
+                        mach.setPlugboard(null);
+                        for (int x = 1; x < mach.numRotors(); x++) {
+                            mach.rotors()[x].setRing(0);
+                        }
+                    }
+                    mach.setRotors(position(alpha, digits, p));
+                    for (int t = 0; t < PRESSES; t++) {
+                        mach.step();
+                        for (int c = 0; c < n; c++) {
+                            perms[t][c] = mach.translate(c);
+                        }
+                    }
+                    _keys[r] = characteristic(perms, product);
+                    _values[r] = ((long) k << 32) | p;
+                }
+            });
+            sort(_keys, _values, 0, _size - 1);
+        }
+
+        /** Write my records, in order, to OUT. */
+        void writeTo(DataOutputStream out) throws IOException {
+            for (int r = 0; r < _size; r++) {
+                out.writeLong(_keys[r]);
+                out.writeLong(_values[r]);
+            }
+        }
+
+        /** The cataloged machine. */
+        private final Machine _template;
+        /** The cataloged rotor orders. */
+        private final List<String[]> _orders;
+        /** Number of start positions per rotor order. */
+        private final int _positions;
+        /** The keys and values of my records. */
+        private final long[] _keys, _values;
+        /** Number of records held. */
+        private int _size;
+        /** Each thread's copy of _template. */
+        private final ThreadLocal<Machine> _machines;
+    }
+
+    /** Merge the sorted runs in the files RUNS onto OUT. */
+    private static void merge(List<Path> runs, DataOutputStream out)
+        throws IOException {
+        PriorityQueue<RunReader> queue = new PriorityQueue<>();
+        try {
+            for (Path run : runs) {
+                RunReader reader = new RunReader(run);
+                if (reader.advance()) {
+                    queue.add(reader);
+                } else {
+                    reader.close();
+                }
+            }
+            while (!queue.isEmpty()) {
+                RunReader reader = queue.poll();
+                out.writeLong(reader._key);
+                out.writeLong(reader._value);
+                if (reader.advance()) {
+                    queue.add(reader);
+                } else {
+                    reader.close();
+                }
+            }
+        } finally {
+            for (RunReader reader : queue) {
+                reader.close();
+            }
+        }
+    }
+
+    /** The records of a run file, read in order. */
+    private static class RunReader implements Comparable<RunReader> {
+        /** A reader of the run in FILE. */
+        RunReader(Path file) throws IOException {
+            _remaining = Files.size(file) / RECORD_SIZE;
+            _in = new DataInputStream(new BufferedInputStream(
+                                          Files.newInputStream(file),
+                                          READ_BUFFER));
+        }
+
+        /** Read my next record into _key and _value, returning false if
+         *  there is none. */
+        boolean advance() throws IOException {
+            if (_remaining == 0) {
+                return false;
+            }
+            _remaining -= 1;
+            _key = _in.readLong();
+            _value = _in.readLong();
+            return true;
+        }
+
+        /** Release my file. */
+        void close() throws IOException {
+            _in.close();
+        }
+
+        @Override
+        public int compareTo(RunReader other) {
+            return compare(_key, _value, other._key, other._value);
+        }
+
+        /** My file. */
+        private final DataInputStream _in;
+        /** Number of records not yet read from _in. */
+        private long _remaining;
+        /** The key and value of my current record. */
+        private long _key, _value;
+    }
+
+    /** Write S to OUT as its length in bytes of UTF-8 and then those
+     *  bytes.  Unlike writeUTF, this has no limit of 64K bytes, which a
+     *  large alphabet could exceed. */
+    private static void writeString(DataOutputStream out, String s)
+        throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Return a string written by writeString, read from IN. */
+    private static String readString(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if (len < 0 || len > in.available()) {
+            throw error("corrupt cycle catalog header");
+        }
+        byte[] bytes = new byte[len];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Return the setting string in ALPHA for the start position numbered
+     *  P among those of DIGITS rotors, leftmost rotor most significant. */
+    private static String position(Alphabet alpha, int digits, int p) {
+        int[] setting = new int[digits];
+        for (int k = digits - 1; k >= 0; k--) {
+            setting[k] = alpha.toCodePoint(p % alpha.size());
+            p /= alpha.size();
+        }
+        return new String(setting, 0, digits);
+    }
+
+    /** Return the hash of the characteristic of the six permutations
+     *  PERMS, using PRODUCT as scratch space. */
+    static long characteristic(int[][] perms, int[] product) {
+        long h = 0xcbf29ce484222325L;
+        for (int j = 0; j < PRESSES / 2; j++) {
+            int[] first = perms[j], second = perms[j + PRESSES / 2];
+            Permutations.compose(first, second, product);
+            for (int len : Permutations.cycleType(product)) {
+                h = (h ^ len) * 0x100000001b3L;
+            }
+            h = (h ^ -1) * 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /** Sort the pairs (KEYS[k], VALUES[k]) for k in LO .. HI into
+     *  ascending order, by key and then by value, so that a catalog's
+     *  records do not depend on how they were divided into runs. */
+    private static void sort(long[] keys, long[] values, int lo, int hi) {
+        while (hi - lo > INSERTION_LIMIT) {
+            int mid = (lo + hi) >>> 1;
+            long pivot = keys[mid], pivotValue = values[mid];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (compare(keys[i], values[i], pivot, pivotValue) < 0) {
+                    i++;
+                }
+                while (compare(keys[j], values[j], pivot, pivotValue) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(keys, values, i++, j--);
+                }
+            }
+            if (j - lo < hi - i) {
+                sort(keys, values, lo, j);
+                lo = i;
+            } else {
+                sort(keys, values, i, hi);
+                hi = j;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i++) {
+            for (int j = i; j > lo && compare(keys[j - 1], values[j - 1],
+                                              keys[j], values[j]) > 0;
+                 j--) {
+                swap(keys, values, j - 1, j);
+            }
+        }
+    }
+
+    /** Return the comparison of the pair (KEY1, VALUE1) with (KEY2,
+     *  VALUE2), by key and then by value. */
+    private static int compare(long key1, long value1,
+                               long key2, long value2) {
+        int c = Long.compare(key1, key2);
+        return c != 0 ? c : Long.compare(value1, value2);
+    }
+
+    /** Exchange entries I and J of both KEYS and VALUES. */
+    private static void swap(long[] keys, long[] values, int i, int j) {
+        long t = keys[i];
+        keys[i] = keys[j];
+        keys[j] = t;
+        t = values[i];
+        values[i] = values[j];
+        values[j] = t;
+    }
+
+    /** A catalog read from the file INDEX written by build. */
+    CycleCatalog(Path index) throws IOException {
+        this(index, SEGMENT_RECORDS);
+    }
+
+    /** A catalog read from the file INDEX written by build, mapped in
+     *  segments of SEGMENT records. */
+    CycleCatalog(Path index, int segment) throws IOException {
+        _channel = FileChannel.open(index, StandardOpenOption.READ);
+        try {
+            ByteBuffer prefix = ByteBuffer.allocate(8);
+            if (_channel.read(prefix, 0) < 8 || prefix.getInt(0) != MAGIC
+                || prefix.getInt(4) < 8
+                || prefix.getInt(4) > _channel.size()) {
+                throw error("%s is not a cycle catalog", index);
+            }
+            int start = prefix.getInt(4);
+            ByteBuffer header = ByteBuffer.allocate(start - 8);
+            _channel.read(header, 8);
+            DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(header.array(), 0,
+                                         header.position()));
+            _alphabet = new Alphabet(readString(in));
+            _digits = in.readInt();
+            _orders = new String[in.readInt()];
+            for (int k = 0; k < _orders.length; k++) {
+                _orders[k] = readString(in);
+            }
+            _count = (_channel.size() - start) / RECORD_SIZE;
+            _segment = segment;
+            _segments = new ByteBuffer[(int) ((_count + segment - 1)
+                                              / segment)];
+            for (int k = 0; k < _segments.length; k++) {
+                long first = (long) k * segment;
+                _segments[k] = _channel.map(
+                    FileChannel.MapMode.READ_ONLY,
+                    start + first * RECORD_SIZE,
+                    Math.min(segment, _count - first) * RECORD_SIZE);
+            }
+        } catch (IOException | RuntimeException excp) {
+            _channel.close();
+            throw excp;
+        }
+    }
+
+    /** Return the rotor orders and start positions (as in a settings line,
+     *  e.g. "B Beta I II III AXLE") whose characteristic matches that of
+     *  INDICATORS, a list of doubly-enciphered indicators of six
+     *  characters each (whitespace is ignored). */
+    List<String> lookup(List<String> indicators) {
+        int n = _alphabet.size();
+        int[][] perms = new int[PRESSES][n];
+        for (int[] perm : perms) {
+            Arrays.fill(perm, -1);
+        }
+        for (String line : indicators) {
+            String ind = line.replaceAll("\\s", "");
+            int[] chars = ind.codePoints().map(_alphabet::indexOf).toArray();
+            if (chars.length == 0) {
+                continue;
+            }
+            if (chars.length != PRESSES) {
+                throw error("indicator %s is not %d characters long", ind,
+                            PRESSES);
+            }
+            for (int j = 0; j < PRESSES / 2; j++) {
+                int a = chars[j], b = chars[j + PRESSES / 2];
+                if (a < 0 || b < 0) {
+                    throw error("indicator %s is not in the alphabet", ind);
+                }
+                perms[j][a] = a;
+                perms[j + PRESSES / 2][a] = b;
+            }
+        }
+        for (int[] perm : perms) {
+            for (int c = 0; c < n; c++) {
+                if (perm[c] < 0) {
+                    throw error("indicators do not determine the "
+                                + "characteristic; more are needed");
+                }
+            }
+        }
+        return lookup(characteristic(perms, new int[n]));
+    }
+
+    /** Return the rotor orders and start positions whose characteristic
+     *  hashes to KEY. */
+    List<String> lookup(long key) {
+        long lo = 0, hi = _count;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (key(mid) < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        List<String> result = new ArrayList<>();
+        for (long k = lo; k < _count && key(k) == key; k++) {
+            long value = value(k);
+            result.add(_orders[(int) (value >>> 32)] + " "
+                       + position(_alphabet, _digits, (int) value));
+        }
+        return result;
+    }
+
+    /** Return the key of record K. */
+    private long key(long k) {
+        return _segments[(int) (k / _segment)]
+            .getLong((int) (k % _segment) * RECORD_SIZE);
+    }
+
+    /** Return the value (rotor order and start position) of record K. */
+    private long value(long k) {
+        return _segments[(int) (k / _segment)]
+            .getLong((int) (k % _segment) * RECORD_SIZE + 8);
+    }
+
+    /** Release the file underlying this catalog. */
+    @Override
+    public void close() throws IOException {
+        _channel.close();
+    }
+
+    /** Identifies a catalog file (with length-prefixed strings in its
+     *  header). */
+    private static final int MAGIC = 0x454e4332;
+    /** Size in bytes of one record: key, rotor order, start position. */
+    private static final int RECORD_SIZE = 16;
+    /** Largest number of records in a catalog (a file of 64 GB). */
+    private static final long MAX_RECORDS = 1L << 32;
+    /** Number of records sorted in memory at a time by build. */
+    private static final int RUN_RECORDS = 1 << 22;
+    /** Number of records computed by one parallel task in build. */
+    private static final int PIECE = 1 << 12;
+    /** Size of the buffer for reading each run in build. */
+    private static final int READ_BUFFER = 1 << 16;
+    /** Number of records in one mapped segment of a catalog (1 GB). */
+    private static final int SEGMENT_RECORDS = (1 << 30) / RECORD_SIZE;
+    /** Number of key presses enciphering an indicator. */
+    private static final int PRESSES = 6;
+    /** Size below which sort uses insertion sort. */
+    private static final int INSERTION_LIMIT = 16;
+
+    /** The file holding my records. */
+    private final FileChannel _channel;
+    /** My sorted records, mapped in segments of _segment records. */
+    private final ByteBuffer[] _segments;
+    /** Number of records in each of _segments but the last. */
+    private final int _segment;
+    /** Number of records in _segments. */
+    private final long _count;
+    /** The alphabet of the cataloged machine. */
+    private final Alphabet _alphabet;
+    /** Number of rotors with settings. */
+    private final int _digits;
+    /** The cataloged rotor orders, as space-separated names. */
+    private final String[] _orders;
+}
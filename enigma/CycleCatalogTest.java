@@ -0,0 +1,138 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CycleCatalog class.
+ *  @author Thomas Nguyen
+ */
+public class CycleCatalogTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the doubly-enciphered indicators of every message key,
+     *  enciphered by M with rotors ORDER at POSITIONS and plugboard
+     *  PLUGBOARD. */
+    private List<String> indicators(Machine m, String[] order,
+                                    String positions, String plugboard) {
+        m.insertRotors(order);
+        m.setPlugboard(new Permutation(plugboard, ABCD));
+        List<String> result = new ArrayList<>();
+        for (int k = 0; k < 64; k += 1) {
+            String key = "" + ABCD.toChar(k / 16) + ABCD.toChar(k / 4 % 4)
+                + ABCD.toChar(k % 4);
+            m.setRotors(positions);
+            result.add(m.convert(key + key));
+        }
+        return result;
+    }
+
+    /** Return a new catalog of abcdMachine() with rotor orders ORDERS. */
+    private Path build(List<String[]> orders) throws IOException {
+        Path index = Files.createTempFile("catalog", ".idx");
+        index.toFile().deleteOnExit();
+        CycleCatalog.build(abcdMachine(), orders, index);
+        return index;
+    }
+
+    /** Return every rotor order of abcdMachine(). */
+    private List<String[]> allOrders() {
+        List<String[]> result = new ArrayList<>();
+        for (String order : new String[] { "XYZ", "XZY", "YXZ", "YZX",
+                                           "ZXY", "ZYX" }) {
+            result.add(new String[] { "R", order.substring(0, 1),
+                                      order.substring(1, 2),
+                                      order.substring(2) });
+        }
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkLookup() throws IOException {
+        String[] first = { "R", "X", "Y", "Z" }, second = { "R", "Z", "Y",
+                                                           "X" };
+        Path index = build(List.of(first, second));
+        try (CycleCatalog catalog = new CycleCatalog(index)) {
+            assertTrue(catalog.lookup(indicators(abcdMachine(), first, "CAB",
+                                                 ""))
+                       .contains("R X Y Z CAB"));
+            assertTrue(catalog.lookup(indicators(abcdMachine(), second, "DDA",
+                                                 "(AC)"))
+                       .contains("R Z Y X DDA"));
+        }
+    }
+
+    @Test
+    public void checkUndetermined() throws IOException {
+        String[] order = { "R", "X", "Y", "Z" };
+        Path index = build(List.<String[]>of(order));
+        try (CycleCatalog catalog = new CycleCatalog(index)) {
+            List<String> few =
+                indicators(abcdMachine(), order, "AAA", "").subList(0, 1);
+            catalog.lookup(few);
+            fail("characteristic found from one indicator");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("do not determine"));
+        }
+    }
+
+    @Test
+    public void checkNotACatalog() throws IOException {
+        Path file = Files.createTempFile("catalog", ".idx");
+        file.toFile().deleteOnExit();
+        Files.write(file, new byte[64]);
+        try {
+            new CycleCatalog(file).close();
+            fail("read a file that is not a catalog");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("not a cycle catalog"));
+        }
+    }
+
+    @Test
+    public void checkRunsAndSegments() throws IOException {
+        List<String[]> orders = allOrders();
+        Path whole = build(orders);
+        Path dir = Files.createTempDirectory("catalog");
+        Path merged = dir.resolve("merged.idx");
+        CycleCatalog.build(abcdMachine(), orders, merged, 50);
+        assertArrayEquals(Files.readAllBytes(whole),
+                          Files.readAllBytes(merged));
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(1, files.count());
+        }
+        try (CycleCatalog catalog = new CycleCatalog(merged, 7)) {
+            for (String[] order : orders) {
+                for (int p = 0; p < 64; p += 1) {
+                    String positions = "" + ABCD.toChar(p / 16)
+                        + ABCD.toChar(p / 4 % 4) + ABCD.toChar(p % 4);
+                    assertTrue(catalog.lookup(indicators(abcdMachine(),
+                                                         order, positions,
+                                                         ""))
+                               .contains(String.join(" ", order) + " "
+                                         + positions));
+                }
+            }
+        }
+        Files.delete(merged);
+        Files.delete(dir);
+    }
+
+}
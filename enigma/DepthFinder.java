@@ -0,0 +1,347 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static enigma.EnigmaException.*;
+
+/** A search of a pool of ciphertexts for pairs in depth: messages
+ *  converted with the same keystream, possibly starting a few key presses
+ *  apart.  Usage:
+ *
+ *      java enigma.Main --depth [-d MAXOFFSET] [-m MINOVERLAP] [-z Z]
+ *                               [-k TOP] CONFIG MESSAGEFILE
+ *
+ *  MESSAGEFILE holds one message per line (blanks ignored) over the
+ *  alphabet of the machine configured by CONFIG.  Where two messages are
+ *  in depth, the same plaintext symbol gives the same ciphertext symbol,
+ *  so their ciphertexts coincide about as often as two plaintexts in the
+ *  same language do, rather than at the rate of unrelated ciphertexts.
+ *  Every pair of messages is compared at every offset of up to MAXOFFSET
+ *  (default 0) presses, either way, where they overlap in at least
+ *  MINOVERLAP (default 50) symbols, and each pair's best offset is
+ *  scored by how many standard deviations its count of coincidences lies
+ *  above what unrelated ciphertexts would give.  Prints the TOP (default
+ *  20) pairs scoring at least Z (default 4), best first, as "LINE1 LINE2
+ *  OFFSET COINCIDENCES/OVERLAP SCORE", where symbol k of message LINE1
+ *  (by line number) lies over symbol k + OFFSET of LINE2.
+ *
+ *  Messages are held as symbol indices packed into longs, a few bits per
+ *  symbol, and compared a word at a time: the fields in which two words
+ *  differ are found with an exclusive or and a fold of each field into
+ *  its low bit, and counted with Long.bitCount.  Each comparison is first
+ *  made over a short prefix of the overlap, a sketch of the whole, and
+ *  finished only if the prefix scores high enough that the whole might
+ *  reach Z.  The pairs are shared out over all cores.
+ *  @author Thomas Nguyen
+ */
+final class DepthFinder {
+
+    /** A search of MESSAGES (arrays of indices in ALPHA) for pairs in
+     *  depth at offsets of up to MAXOFFSET, overlapping in at least
+     *  MINOVERLAP symbols. */
+    DepthFinder(Alphabet alpha, List<int[]> messages, int maxOffset,
+                int minOverlap) {
+        if (maxOffset < 0 || minOverlap <= 0) {
+            throw error("bad offset or overlap");
+        }
+        _width = Math.max(1, 32 - Integer.numberOfLeadingZeros(
+                              alpha.size() - 1));
+        _perWord = Long.SIZE / _width;
+        long low = 0;
+        for (int k = 0; k < _perWord; k += 1) {
+            low |= 1L << (k * _width);
+        }
+        _low = low;
+        _maxOffset = maxOffset;
+        _minOverlap = minOverlap;
+        _lengths = new int[messages.size()];
+        _packed = new long[messages.size()][][];
+        int phases = Math.min(_perWord, maxOffset + 1);
+        long[] counts = new long[alpha.size()];
+        long total = 0;
+        for (int m = 0; m < messages.size(); m += 1) {
+            int[] msg = messages.get(m);
+            _lengths[m] = msg.length;
+            _packed[m] = new long[phases][];
+            for (int p = 0; p < phases; p += 1) {
+                _packed[m][p] = pack(msg, p);
+            }
+            for (int c : msg) {
+                counts[c] += 1;
+            }
+            total += msg.length;
+        }
+        double rate = 0;
+        for (long f : counts) {
+            rate += total == 0 ? 0 : ((double) f / total) * f / total;
+        }
+        _rate = rate;
+    }
+
+    /** Run with ARGS, as described above. */
+    static void run(String... args) {
+        int maxOffset = 0, minOverlap = DEFAULT_OVERLAP, top = DEFAULT_TOP;
+        double z = DEFAULT_Z;
+        int k;
+        try {
+            for (k = 0; k + 1 < args.length && args[k].startsWith("-");
+                 k += 2) {
+                if (args[k].equals("-d")) {
+                    maxOffset = Integer.parseInt(args[k + 1]);
+                } else if (args[k].equals("-m")) {
+                    minOverlap = Integer.parseInt(args[k + 1]);
+                } else if (args[k].equals("-k")) {
+                    top = Integer.parseInt(args[k + 1]);
+                } else if (args[k].equals("-z")) {
+                    z = Double.parseDouble(args[k + 1]);
+                } else {
+                    break;
+                }
+            }
+        } catch (NumberFormatException excp) {
+            throw error("bad number: %s", excp.getMessage());
+        }
+        if (args.length != k + 2) {
+            throw error("Usage: --depth [-d MAXOFFSET] [-m MINOVERLAP] "
+                        + "[-z Z] [-k TOP] CONFIG MESSAGEFILE");
+        }
+        Alphabet alpha = Main.readConfig(args[k]).alphabet();
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(Paths.get(args[k + 1]),
+                                       Charset.defaultCharset());
+        } catch (IOException excp) {
+            throw error("could not read %s", args[k + 1]);
+        }
+        List<int[]> messages = new ArrayList<>();
+        List<Integer> numbers = new ArrayList<>();
+        for (int n = 0; n < lines.size(); n += 1) {
+            int[] msg = SearchWorker.indices(lines.get(n), alpha);
+            if (msg.length > 0) {
+                messages.add(msg);
+                numbers.add(n + 1);
+            }
+        }
+        DepthFinder finder =
+            new DepthFinder(alpha, messages, maxOffset, minOverlap);
+        for (Depth d : finder.find(z, top)) {
+            System.out.printf("%d %d %d %d/%d %.2f%n",
+                              numbers.get(d.first()),
+                              numbers.get(d.second()), d.offset(),
+                              d.coincidences(), d.overlap(), d.score());
+        }
+    }
+
+    /** Return the TOP pairs of messages whose best offsets score at least
+     *  Z, best first. */
+    List<Depth> find(double z, int top) {
+        int n = _lengths.length;
+        List<Depth> result = IntStream.range(0, n).parallel()
+            .mapToObj(first -> {
+                    List<Depth> found = new ArrayList<>();
+                    for (int second = first + 1; second < n;
+                         second += 1) {
+                        Depth best = best(first, second, z);
+                        if (best != null) {
+                            found.add(best);
+                        }
+                    }
+                    return found;
+                })
+            .flatMap(List::stream).collect(Collectors.toList());
+        result.sort(Comparator.comparingDouble(Depth::score).reversed()
+                    .thenComparingInt(Depth::first)
+                    .thenComparingInt(Depth::second));
+        return result.subList(0, Math.min(top, result.size()));
+    }
+
+    /** Return the best-scoring comparison of messages FIRST and SECOND,
+     *  over all offsets, if it scores at least Z, and otherwise null. */
+    Depth best(int first, int second, double z) {
+        Depth result = null;
+        for (int d = -_maxOffset; d <= _maxOffset; d += 1) {
+            Depth depth = d >= 0 ? compare(first, second, d, z)
+                : compare(second, first, -d, z);
+            if (depth != null
+                && (result == null || depth.score() > result.score())) {
+                result = depth.offset() == d ? depth
+                    : new Depth(first, second, d, depth.coincidences(),
+                                depth.overlap(), depth.score());
+            }
+        }
+        return result;
+    }
+
+    /** Return the comparison of symbols k of message A and k + OFFSET of
+     *  message B, for all k where both exist, if it scores at least Z,
+     *  and otherwise null.  The comparison is abandoned after its sketch
+     *  if that scores more than SKETCH_MARGIN below what a comparison
+     *  just reaching Z would be expected to score there. */
+    Depth compare(int a, int b, int offset, double z) {
+        int overlap = Math.min(_lengths[a], _lengths[b] - offset);
+        if (overlap < _minOverlap) {
+            return null;
+        }
+        long[] x = _packed[a][0], y = _packed[b][offset % _perWord];
+        int start = offset / _perWord;
+        int sketch = Math.min(overlap, SKETCH_WORDS * _perWord);
+        int count = coincidences(x, 0, y, start, sketch);
+        if (sketch < overlap) {
+            if (score(count, sketch)
+                < z * Math.sqrt((double) sketch / overlap) - SKETCH_MARGIN) {
+                return null;
+            }
+            count += coincidences(x, SKETCH_WORDS, y, start + SKETCH_WORDS,
+                                  overlap - sketch);
+        }
+        double score = score(count, overlap);
+        return score < z ? null
+            : new Depth(a, b, offset, count, overlap, score);
+    }
+
+    /** Return the number of places, among the first COUNT symbols packed
+     *  in X from word XSTART and in Y from word YSTART, in which X and Y
+     *  hold the same symbol. */
+    private int coincidences(long[] x, int xStart, long[] y, int yStart,
+                             int count) {
+        int result = 0;
+        int j = 0;
+        for (; count >= _perWord; count -= _perWord, j += 1) {
+            result += _perWord
+                - Long.bitCount(differing(x[xStart + j] ^ y[yStart + j]));
+        }
+        if (count > 0) {
+            long mask = _low & ((1L << (count * _width)) - 1);
+            result += count
+                - Long.bitCount(differing(x[xStart + j] ^ y[yStart + j])
+                                & mask);
+        }
+        return result;
+    }
+
+    /** Return the low bits of the fields of BITS that are not 0. */
+    private long differing(long bits) {
+        long result = bits;
+        for (int s = 1; s < _width; s += 1) {
+            result |= bits >>> s;
+        }
+        return result & _low;
+    }
+
+    /** Return the symbols of MSG from PHASE on, packed _perWord to a
+     *  long, first symbol lowest. */
+    private long[] pack(int[] msg, int phase) {
+        int len = Math.max(0, msg.length - phase);
+        long[] result = new long[(len + _perWord - 1) / _perWord];
+        for (int k = 0; k < len; k += 1) {
+            result[k / _perWord] |=
+                (long) msg[phase + k] << (k % _perWord * _width);
+        }
+        return result;
+    }
+
+    /** Return the number of standard deviations by which COUNT
+     *  coincidences in N places exceed the number expected of unrelated
+     *  ciphertexts. */
+    private double score(int count, int n) {
+        double sd = Math.sqrt(n * _rate * (1 - _rate));
+        return sd == 0 ? 0 : (count - n * _rate) / sd;
+    }
+
+    /** A pair of messages compared at one offset. */
+    static final class Depth {
+        /** A comparison in which symbol k of message FIRST lies over
+         *  symbol k + OFFSET of message SECOND, giving COINCIDENCES in
+         *  OVERLAP places and scoring SCORE. */
+        Depth(int first, int second, int offset, int coincidences,
+              int overlap, double score) {
+            _first = first;
+            _second = second;
+            _offset = offset;
+            _coincidences = coincidences;
+            _overlap = overlap;
+            _score = score;
+        }
+
+        /** Return the index of my first message. */
+        int first() {
+            return _first;
+        }
+
+        /** Return the index of my second message. */
+        int second() {
+            return _second;
+        }
+
+        /** Return my offset. */
+        int offset() {
+            return _offset;
+        }
+
+        /** Return my number of coincidences. */
+        int coincidences() {
+            return _coincidences;
+        }
+
+        /** Return my number of overlapping places. */
+        int overlap() {
+            return _overlap;
+        }
+
+        /** Return my score. */
+        double score() {
+            return _score;
+        }
+
+        /** Index of my first message. */
+        private final int _first;
+        /** Index of my second message. */
+        private final int _second;
+        /** Offset of the second message. */
+        private final int _offset;
+        /** Number of coincidences. */
+        private final int _coincidences;
+        /** Number of places compared. */
+        private final int _overlap;
+        /** My score. */
+        private final double _score;
+    }
+
+    /** Default number of pairs printed. */
+    static final int DEFAULT_TOP = 20;
+    /** Default least score printed. */
+    static final double DEFAULT_Z = 4;
+    /** Default least overlap compared. */
+    static final int DEFAULT_OVERLAP = 50;
+    /** Number of words in the sketch of a comparison. */
+    static final int SKETCH_WORDS = 4;
+    /** Number of standard deviations by which a sketch may fall short of
+     *  its expected score and still be finished. */
+    static final double SKETCH_MARGIN = 2;
+
+    /** Number of bits per packed symbol. */
+    private final int _width;
+    /** Number of symbols packed per long. */
+    private final int _perWord;
+    /** The low bit of each field of a long. */
+    private final long _low;
+    /** Largest offset compared. */
+    private final int _maxOffset;
+    /** Least overlap compared. */
+    private final int _minOverlap;
+    /** Length of each message. */
+    private final int[] _lengths;
+    /** Entry [m][p] holds the symbols of message m from p on, packed. */
+    private final long[][][] _packed;
+    /** Probability that symbols of two unrelated ciphertexts coincide,
+     *  estimated from the symbol frequencies of all the messages. */
+    private final double _rate;
+}
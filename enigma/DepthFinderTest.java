@@ -0,0 +1,135 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the DepthFinder class.
+ *  @author Thomas Nguyen
+ */
+public class DepthFinderTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Letters drawn from to make plaintext: the commonest in English,
+     *  the first more often, so that texts coincide rather more often than
+     *  English does. */
+    private static final String LETTERS = "EEEETTTAAOINSHRDLU";
+
+    /** Return a random plaintext of LEN letters, using RANDOM. */
+    private String plaintext(int len, Random random) {
+        StringBuilder result = new StringBuilder();
+        for (int k = 0; k < len; k++) {
+            result.append(LETTERS.charAt(random.nextInt(LETTERS.length())));
+        }
+        return result.toString();
+    }
+
+    /** Return a random settings line for a naval machine, using
+     *  RANDOM. */
+    private String settings(Random random) {
+        StringBuilder result = new StringBuilder("* B Beta I II III ");
+        for (int k = 0; k < 4; k++) {
+            result.append(UPPER.toChar(random.nextInt(26)));
+        }
+        return result.toString();
+    }
+
+    /** Return the encryption of a random plaintext of LEN letters under
+     *  SETTINGS, after skipping SKIP key presses, as indices, using
+     *  RANDOM. */
+    private int[] message(String settings, long skip, int len,
+                          Random random) {
+        Machine m = navalMachine();
+        Main.setUp(m, settings);
+        m.skip(skip);
+        return SearchWorker.indices(m.convert(plaintext(len, random)),
+                                    UPPER);
+    }
+
+    /** Return the number of places where symbol k of A equals symbol
+     *  k + OFFSET of B. */
+    private int coincidences(int[] a, int[] b, int offset) {
+        int result = 0;
+        for (int k = 0; k < a.length; k++) {
+            if (k + offset >= 0 && k + offset < b.length
+                && a[k] == b[k + offset]) {
+                result += 1;
+            }
+        }
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkCoincidences() {
+        Random random = new Random(46);
+        List<int[]> messages = new ArrayList<>();
+        for (int k = 0; k < 10; k++) {
+            messages.add(message(settings(random), 0,
+                                 1 + random.nextInt(300), random));
+        }
+        DepthFinder finder = new DepthFinder(UPPER, messages, 30, 1);
+        for (int a = 0; a < 10; a++) {
+            for (int b = 0; b < 10; b++) {
+                for (int d = 0; d <= 30; d++) {
+                    DepthFinder.Depth depth =
+                        finder.compare(a, b, d, Double.NEGATIVE_INFINITY);
+                    int overlap = Math.min(messages.get(a).length,
+                                           messages.get(b).length - d);
+                    if (overlap < 1) {
+                        assertNull(depth);
+                    } else {
+                        assertEquals(overlap, depth.overlap());
+                        assertEquals(coincidences(messages.get(a),
+                                                  messages.get(b), d),
+                                     depth.coincidences());
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void checkFind() {
+        Random random = new Random(47);
+        List<int[]> messages = new ArrayList<>();
+        for (int k = 0; k < 60; k++) {
+            messages.add(message(settings(random), 0, 1000, random));
+        }
+        String settings = settings(random);
+        messages.set(17, message(settings, 0, 1000, random));
+        messages.set(50, message(settings, 0, 1200, random));
+        messages.set(42, message(settings, 7, 1000, random));
+        DepthFinder finder = new DepthFinder(UPPER, messages, 10, 50);
+        List<DepthFinder.Depth> found = finder.find(6, 10);
+        assertEquals(3, found.size());
+        boolean[] seen = new boolean[3];
+        for (DepthFinder.Depth d : found) {
+            if (d.first() == 17 && d.second() == 50) {
+                assertEquals(0, d.offset());
+                seen[0] = true;
+            } else if (d.first() == 17 && d.second() == 42) {
+                assertEquals(-7, d.offset());
+                seen[1] = true;
+            } else if (d.first() == 42 && d.second() == 50) {
+                assertEquals(7, d.offset());
+                seen[2] = true;
+            }
+        }
+        assertTrue(seen[0] && seen[1] && seen[2]);
+    }
+
+}
@@ -0,0 +1,212 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+
+/** Byte-channel adapters for Enigma conversion of encoded text.  The
+ *  channels returned here decode bytes in a given charset, convert the
+ *  resulting text with an Enigma machine as EnigmaReader and EnigmaWriter
+ *  do, and encode the result in the same charset, working a buffer at a
+ *  time with no allocation per character.  For binary data, where every
+ *  byte is a symbol, see BinaryMode instead.
+ *  @author Thomas Nguyen
+ */
+final class EnigmaChannels {
+
+    /** Not instantiable. */
+    private EnigmaChannels() {
+    }
+
+    /** Return a channel whose bytes are the conversion by M of the text
+     *  read from IN, both encoded in CHARSET.  Output is grouped iff
+     *  GROUP, and characters outside M's alphabet are copied iff
+     *  PASSTHROUGH.  Closing the result closes IN. */
+    static ReadableByteChannel readable(ReadableByteChannel in,
+                                        Charset charset, Machine m,
+                                        boolean group, boolean passThrough) {
+        Reader text = Channels.newReader(in, charset.newDecoder(), -1);
+        return new ConvertingReadable(new EnigmaReader(text, m, group,
+                                                       passThrough),
+                                      charset.newEncoder());
+    }
+
+    /** Return a channel that writes to OUT the conversion by M of the text
+     *  written to it, both encoded in CHARSET.  Output is grouped iff
+     *  GROUP, and characters outside M's alphabet are copied iff
+     *  PASSTHROUGH.  Closing the result writes any buffered output and
+     *  closes OUT. */
+    static WritableByteChannel writable(WritableByteChannel out,
+                                        Charset charset, Machine m,
+                                        boolean group, boolean passThrough) {
+        Writer text = Channels.newWriter(out, charset.newEncoder(), -1);
+        return new ConvertingWritable(new EnigmaWriter(text, m, group,
+                                                       passThrough),
+                                      charset.newDecoder());
+    }
+
+    /** Number of chars or bytes in each buffer. */
+    private static final int BUFFER_SIZE = 8192;
+
+    /** A channel that encodes the text of an EnigmaReader. */
+    private static class ConvertingReadable implements ReadableByteChannel {
+
+        /** A channel of the text of READER encoded by ENCODER. */
+        ConvertingReadable(EnigmaReader reader, CharsetEncoder encoder) {
+            _reader = reader;
+            _encoder = encoder;
+            _chars = CharBuffer.allocate(BUFFER_SIZE);
+            _chars.flip();
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (!_open) {
+                throw new ClosedChannelException();
+            }
+            int start = dst.position();
+            while (dst.hasRemaining() && !_done) {
+                if (_underflow && !_eof) {
+                    _chars.compact();
+                    _eof = _reader.read(_chars) < 0;
+                    _chars.flip();
+                }
+                CoderResult result = _encoder.encode(_chars, dst, _eof);
+                if (result.isError()) {
+                    result.throwException();
+                }
+                _underflow = result.isUnderflow();
+                if (_eof && _underflow) {
+                    if (_encoder.flush(dst).isOverflow()) {
+                        break;
+                    }
+                    _done = true;
+                } else if (result.isOverflow()) {
+                    break;
+                }
+            }
+            int n = dst.position() - start;
+            return n == 0 && _done ? -1 : n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return _open;
+        }
+
+        @Override
+        public void close() throws IOException {
+            _open = false;
+            _reader.close();
+        }
+
+        /** Source of converted text. */
+        private final EnigmaReader _reader;
+        /** Encodes converted text. */
+        private final CharsetEncoder _encoder;
+        /** Converted text not yet encoded. */
+        private final CharBuffer _chars;
+        /** True iff _encoder needs more of _chars to make progress. */
+        private boolean _underflow = true;
+        /** True iff _reader is exhausted. */
+        private boolean _eof;
+        /** True iff all output has been returned. */
+        private boolean _done;
+        /** True until I am closed. */
+        private boolean _open = true;
+    }
+
+    /** A channel that decodes bytes into an EnigmaWriter. */
+    private static class ConvertingWritable implements WritableByteChannel {
+
+        /** A channel that decodes with DECODER into WRITER. */
+        ConvertingWritable(EnigmaWriter writer, CharsetDecoder decoder) {
+            _writer = writer;
+            _decoder = decoder;
+            _bytes = ByteBuffer.allocate(BUFFER_SIZE);
+            _chars = CharBuffer.allocate(BUFFER_SIZE);
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            if (!_open) {
+                throw new ClosedChannelException();
+            }
+            int total = src.remaining();
+            int limit = src.limit();
+            while (src.hasRemaining()) {
+                src.limit(src.position()
+                          + Math.min(src.remaining(), _bytes.remaining()));
+                _bytes.put(src);
+                src.limit(limit);
+                _bytes.flip();
+                decode(false);
+                _bytes.compact();
+            }
+            return total;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return _open;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!_open) {
+                return;
+            }
+            _open = false;
+            try {
+                _bytes.flip();
+                decode(true);
+                while (_decoder.flush(_chars).isOverflow()) {
+                    drain();
+                }
+                drain();
+            } finally {
+                _writer.close();
+            }
+        }
+
+        /** Decode _bytes into _writer, leaving in _bytes only an incomplete
+         *  character, which must not be there if ENDOFINPUT. */
+        private void decode(boolean endOfInput) throws IOException {
+            CoderResult result;
+            do {
+                result = _decoder.decode(_bytes, _chars, endOfInput);
+                if (result.isError()) {
+                    result.throwException();
+                }
+                drain();
+            } while (result.isOverflow());
+        }
+
+        /** Write the contents of _chars to _writer and empty it. */
+        private void drain() throws IOException {
+            _writer.write(_chars.array(), 0, _chars.position());
+            _chars.clear();
+        }
+
+        /** Destination of decoded text. */
+        private final EnigmaWriter _writer;
+        /** Decodes written bytes. */
+        private final CharsetDecoder _decoder;
+        /** Bytes written but not yet decoded. */
+        private final ByteBuffer _bytes;
+        /** Decoded text not yet written to _writer. */
+        private final CharBuffer _chars;
+        /** True until I am closed. */
+        private boolean _open = true;
+    }
+}
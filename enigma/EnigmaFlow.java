@@ -0,0 +1,296 @@
+package enigma;
+
+import java.nio.CharBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Reactive streams (java.util.concurrent.Flow) of Enigma conversions.
+ *  Each processor made here is one stream of text with its own copy of
+ *  a configured machine, set up by its own settings line: it converts
+ *  the strings published to it, as EnigmaReader does, and publishes the
+ *  conversions, in order, to a single subscriber.  All the processors of
+ *  one EnigmaFlow convert on a shared executor.  A processor requests
+ *  at most BUFFER strings from its publisher beyond those it has
+ *  converted, so that a slow subscriber holds up only its own stream,
+ *  with bounded data buffered, and converts at most BATCH strings before
+ *  yielding its thread to other streams, so that a busy stream cannot
+ *  starve the rest.
+ *  @author Thomas Nguyen
+ */
+final class EnigmaFlow {
+
+    /** Processors for the machine CONFIG, converting on EXECUTOR, which
+     *  should run tasks in the order submitted. */
+    EnigmaFlow(Machine config, Executor executor) {
+        _config = config;
+        _executor = executor;
+    }
+
+    /** Processors for the machine CONFIG, converting on a pool of daemon
+     *  threads, one per available CPU. */
+    EnigmaFlow(Machine config) {
+        this(config, defaultExecutor());
+    }
+
+    /** Return a new processor for a stream converted by a copy of my
+     *  machine set up by the settings line SETTINGS, passing through
+     *  characters that are not in its alphabet, without grouping. */
+    Flow.Processor<String, String> processor(String settings) {
+        return processor(settings, false, true);
+    }
+
+    /** Return a new processor for a stream converted by a copy of my
+     *  machine set up by the settings line SETTINGS.  Output is grouped
+     *  iff GROUP, and characters outside the machine's alphabet are
+     *  copied iff PASSTHROUGH (and are otherwise an error). */
+    Flow.Processor<String, String> processor(String settings, boolean group,
+                                             boolean passThrough) {
+        Machine m = _config.copy();
+        Main.setUp(m, settings);
+        return new StreamProcessor(new StreamConverter(m, group,
+                                                       passThrough));
+    }
+
+    /** Return a pool of daemon threads, one per available CPU. */
+    private static ExecutorService defaultExecutor() {
+        return Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), r -> {
+                Thread result = new Thread(r, "enigma-flow");
+                result.setDaemon(true);
+                return result;
+            });
+    }
+
+    /** One stream.  All signals to the subscriber come from drain, which
+     *  runs on my executor, at most one call at a time. */
+    private class StreamProcessor
+        implements Flow.Processor<String, String>, Flow.Subscription {
+
+        /** A stream converting with CONVERTER. */
+        StreamProcessor(StreamConverter converter) {
+            _converter = converter;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            if (_upstream != null) {
+                subscription.cancel();
+                return;
+            }
+            _upstream = subscription;
+            subscription.request(BUFFER);
+        }
+
+        @Override
+        public void onNext(String item) {
+            _inbox.offer(item);
+            schedule();
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            _error = error;
+            schedule();
+        }
+
+        @Override
+        public void onComplete() {
+            _completed = true;
+            schedule();
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super String> subscriber) {
+            if (_subscribed.getAndSet(true)) {
+                subscriber.onSubscribe(new Flow.Subscription() {
+                        @Override
+                        public void request(long n) {
+                        }
+
+                        @Override
+                        public void cancel() {
+                        }
+                    });
+                subscriber.onError(new IllegalStateException(
+                                       "stream already has a subscriber"));
+                return;
+            }
+            subscriber.onSubscribe(this);
+            _downstream = subscriber;
+            schedule();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                _error = new IllegalArgumentException(
+                    "non-positive request: " + n);
+            } else {
+                _demand.getAndAccumulate(n, (d, k) -> d + k < 0
+                                         ? Long.MAX_VALUE : d + k);
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            _cancelled = true;
+            schedule();
+        }
+
+        /** Arrange for drain to run, unless it is running already, in
+         *  which case it will look again. */
+        private void schedule() {
+            if (_work.getAndIncrement() == 0) {
+                _executor.execute(this::drain);
+            }
+        }
+
+        /** Deliver as many conversions as are available and demanded,
+         *  up to BATCH, then yield the thread, resubmitting myself if
+         *  there may be more to do. */
+        private void drain() {
+            int missed = _work.get();
+            int emitted = 0;
+            while (true) {
+                Flow.Subscriber<? super String> down = _downstream;
+                if (_done) {
+                    _inbox.clear();
+                } else if (_cancelled) {
+                    terminate();
+                } else if (down != null) {
+                    while (emitted < BATCH && _demand.get() > 0
+                           && !_inbox.isEmpty() && _error == null
+                           && !_cancelled) {
+                        emit(down, _inbox.poll());
+                        emitted += 1;
+                    }
+                    if (_cancelled) {
+                        terminate();
+                    } else if (_error != null) {
+                        terminate();
+                        down.onError(_error);
+                    } else if (_completed && _inbox.isEmpty() && !_done) {
+                        finish(down);
+                    } else if (emitted == BATCH) {
+                        _executor.execute(this::drain);
+                        return;
+                    }
+                }
+                missed = _work.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        /** Send the conversion of ITEM to DOWN, and request more from my
+         *  publisher as my buffer empties. */
+        private void emit(Flow.Subscriber<? super String> down,
+                          String item) {
+            CharBuffer src = CharBuffer.wrap(item);
+            int size = (item.length() + 1) * StreamConverter.MAX_EXPANSION;
+            if (_output.capacity() < size) {
+                _output = CharBuffer.allocate(
+                    Math.max(size, 2 * _output.capacity()));
+            }
+            _output.clear();
+            try {
+                _converter.convert(src, _output);
+            } catch (EnigmaException excp) {
+                _error = excp;
+                return;
+            }
+            _output.flip();
+            _demand.decrementAndGet();
+            try {
+                down.onNext(_output.toString());
+            } catch (RuntimeException excp) {
+                _cancelled = true;
+            }
+            _consumed += 1;
+            if (_consumed == BUFFER / 2) {
+                _upstream.request(_consumed);
+                _consumed = 0;
+            }
+        }
+
+        /** Send anything held back by my converter, once there is demand
+         *  for it, and then the completion of my stream, to DOWN. */
+        private void finish(Flow.Subscriber<? super String> down) {
+            if (_tail == null) {
+                _output.clear();
+                _converter.finish(_output);
+                _output.flip();
+                _tail = _output.toString();
+            }
+            if (_tail.isEmpty() || _demand.get() > 0) {
+                _done = true;
+                if (!_tail.isEmpty()) {
+                    down.onNext(_tail);
+                }
+                down.onComplete();
+            }
+        }
+
+        /** Stop: cancel my subscription and drop anything buffered. */
+        private void terminate() {
+            if (!_done) {
+                _done = true;
+                if (_upstream != null) {
+                    _upstream.cancel();
+                }
+            }
+            _inbox.clear();
+        }
+
+        /** Converts my text. */
+        private final StreamConverter _converter;
+        /** Strings received and not yet converted. */
+        private final Queue<String> _inbox = new ConcurrentLinkedQueue<>();
+        /** Number of conversions requested by my subscriber and not yet
+         *  delivered. */
+        private final AtomicLong _demand = new AtomicLong();
+        /** Number of calls of schedule not yet seen by drain. */
+        private final AtomicInteger _work = new AtomicInteger();
+        /** True once I have had a subscriber. */
+        private final AtomicBoolean _subscribed = new AtomicBoolean();
+        /** My subscription to my publisher. */
+        private volatile Flow.Subscription _upstream;
+        /** My subscriber, once its onSubscribe has returned. */
+        private volatile Flow.Subscriber<? super String> _downstream;
+        /** The error that ends my stream, or null. */
+        private volatile Throwable _error;
+        /** True once my publisher has completed. */
+        private volatile boolean _completed;
+        /** True once my subscriber has cancelled. */
+        private volatile boolean _cancelled;
+        /** True once my stream has ended. Used only by drain. */
+        private boolean _done;
+        /** Strings converted since my last request to my publisher. Used
+         *  only by drain. */
+        private int _consumed;
+        /** The output held back by my converter at the end of my input,
+         *  once my publisher has completed.  Used only by drain. */
+        private String _tail;
+        /** Buffer for conversions. Used only by drain. */
+        private CharBuffer _output = CharBuffer.allocate(1 << 10);
+    }
+
+    /** Number of strings a processor may buffer. */
+    static final int BUFFER = 64;
+    /** Number of strings a processor converts before yielding. */
+    static final int BATCH = 16;
+
+    /** The configured machine, copied for each processor. */
+    private final Machine _config;
+    /** Runs the conversions of all processors. */
+    private final Executor _executor;
+}
@@ -0,0 +1,268 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the EnigmaFlow class.
+ *  @author Thomas Nguyen
+ */
+public class EnigmaFlowTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A publisher of a list of strings to one subscriber, which counts
+     *  the strings requested. */
+    private static class ListPublisher implements Flow.Publisher<String> {
+        /** A publisher of ITEMS. */
+        ListPublisher(List<String> items) {
+            _items = items;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super String> subscriber) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                    @Override
+                    public synchronized void request(long n) {
+                        _requested += n;
+                        while (_requested > _sent && _sent < _items.size()) {
+                            subscriber.onNext(_items.get(_sent++));
+                        }
+                        if (_sent == _items.size() && !_completed) {
+                            _completed = true;
+                            subscriber.onComplete();
+                        }
+                    }
+
+                    @Override
+                    public void cancel() {
+                        _cancelled = true;
+                    }
+                });
+        }
+
+        /** The items to publish. */
+        private final List<String> _items;
+        /** Total requested. */
+        private volatile long _requested;
+        /** Number of items sent. */
+        private int _sent;
+        /** True once completed. */
+        private boolean _completed;
+        /** True once cancelled. */
+        private volatile boolean _cancelled;
+    }
+
+    /** A subscriber that collects strings, requesting BATCH at a time. */
+    private static class Collector implements Flow.Subscriber<String> {
+        /** A collector requesting BATCH at a time. */
+        Collector(int batch) {
+            _batch = batch;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            _subscription = subscription;
+            if (_batch > 0) {
+                subscription.request(_batch);
+            }
+        }
+
+        @Override
+        public void onNext(String item) {
+            _result.append(item);
+            _items += 1;
+            if (_batch > 0 && _items % _batch == 0) {
+                _subscription.request(_batch);
+            }
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            _error = error;
+            _done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            _done.countDown();
+        }
+
+        /** Wait for the end of the stream, and return what was
+         *  received. */
+        String await() throws InterruptedException {
+            assertTrue(_done.await(5, TimeUnit.SECONDS));
+            return _result.toString();
+        }
+
+        /** Number of strings to request at a time. */
+        private final int _batch;
+        /** Counted down at the end of the stream. */
+        private final CountDownLatch _done = new CountDownLatch(1);
+        /** Strings received. */
+        private final StringBuilder _result = new StringBuilder();
+        /** Number of strings received. */
+        private int _items;
+        /** My subscription. */
+        private volatile Flow.Subscription _subscription;
+        /** The error that ended the stream, or null. */
+        private volatile Throwable _error;
+    }
+
+    /** Return TEXT, split at random into pieces, using RANDOM. */
+    private List<String> pieces(String text, Random random) {
+        List<String> result = new ArrayList<>();
+        for (int k = 0; k < text.length(); ) {
+            int end = Math.min(text.length(), k + 1 + random.nextInt(40));
+            result.add(text.substring(k, end));
+            k = end;
+        }
+        return result;
+    }
+
+    /** Return the conversion of TEXT by an EnigmaReader for a naval
+     *  machine set up by SETTINGS. */
+    private String expected(String text, String settings)
+        throws IOException {
+        Machine m = navalMachine();
+        Main.setUp(m, settings);
+        StringBuilder result = new StringBuilder();
+        try (Reader in = new EnigmaReader(new StringReader(text), m, false,
+                                          true)) {
+            for (int c = in.read(); c >= 0; c = in.read()) {
+                result.append((char) c);
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return a random message of LEN characters, using RANDOM. */
+    private String message(int len, Random random) {
+        StringBuilder result = new StringBuilder();
+        for (int k = 0; k < len; k++) {
+            result.append(k % 11 == 10 ? ' '
+                          : UPPER.toChar(random.nextInt(26)));
+        }
+        return result.append("!\n").toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkManyStreams() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            EnigmaFlow flow = new EnigmaFlow(navalMachine(), pool);
+            Random random = new Random(40);
+            List<Collector> collectors = new ArrayList<>();
+            List<String> expected = new ArrayList<>();
+            for (int k = 0; k < 20; k++) {
+                String settings = "* B Beta I II III " + (char) ('A' + k)
+                    + "BCD" + (k % 2 == 0 ? " (AQ) (EP)" : "");
+                String text = message(500 + 100 * k, random);
+                Flow.Processor<String, String> stream =
+                    flow.processor(settings);
+                Collector out = new Collector(1 + k % 5);
+                stream.subscribe(out);
+                new ListPublisher(pieces(text, random)).subscribe(stream);
+                collectors.add(out);
+                expected.add(expected(text, settings));
+            }
+            for (int k = 0; k < 20; k++) {
+                assertEquals(expected.get(k), collectors.get(k).await());
+                assertNull(collectors.get(k)._error);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void checkBackPressure() throws Exception {
+        EnigmaFlow flow = new EnigmaFlow(navalMachine());
+        Random random = new Random(41);
+        String settings = "* B Beta I II III AAAA";
+        String text = message(5000, random);
+        ListPublisher in = new ListPublisher(pieces(text, random));
+        Flow.Processor<String, String> stream = flow.processor(settings);
+        Collector out = new Collector(0);
+        stream.subscribe(out);
+        in.subscribe(stream);
+        Thread.sleep(100);
+        assertEquals(EnigmaFlow.BUFFER, in._requested);
+        assertEquals(0, out._items);
+        out._subscription.request(Long.MAX_VALUE);
+        assertEquals(expected(text, settings), out.await());
+    }
+
+    @Test
+    public void checkErrors() throws Exception {
+        EnigmaFlow flow = new EnigmaFlow(navalMachine());
+        ListPublisher in = new ListPublisher(List.of("HELLO", "WORLD!"));
+        Flow.Processor<String, String> stream =
+            flow.processor("* B Beta I II III AAAA", false, false);
+        Collector out = new Collector(1);
+        stream.subscribe(out);
+        in.subscribe(stream);
+        assertEquals("ILBDA", out.await());
+        assertTrue(out._error instanceof EnigmaException);
+        assertTrue(in._cancelled);
+
+        Collector second = new Collector(1);
+        stream.subscribe(second);
+        second.await();
+        assertTrue(second._error instanceof IllegalStateException);
+    }
+
+    @Test
+    public void checkThrowingSubscriber() throws Exception {
+        EnigmaFlow flow = new EnigmaFlow(navalMachine());
+        List<String> items = new ArrayList<>();
+        for (int k = 0; k < 40; k++) {
+            items.add("HELLO");
+        }
+        ListPublisher in = new ListPublisher(items);
+        Flow.Processor<String, String> stream =
+            flow.processor("* B Beta I II III AAAA");
+        Collector out = new Collector(Integer.MAX_VALUE) {
+                @Override
+                public void onNext(String item) {
+                    super.onNext(item);
+                    _calls += 1;
+                    if (_calls == 3) {
+                        throw new IllegalStateException("subscriber failed");
+                    }
+                }
+
+                /** Number of calls of onNext. */
+                private int _calls;
+            };
+        stream.subscribe(out);
+        in.subscribe(stream);
+        Thread.sleep(100);
+        assertEquals(3, out._items);
+        assertTrue(in._cancelled);
+        assertEquals(1, out._done.getCount());
+        assertNull(out._error);
+    }
+
+}
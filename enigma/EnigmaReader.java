@@ -0,0 +1,96 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+
+/** A Reader that converts the text of another Reader with an Enigma
+ *  machine as it is read.  Conversion follows StreamConverter: text is
+ *  optionally grouped in fives, and characters outside the machine's
+ *  alphabet are optionally passed through.  Reads go through two
+ *  internal buffers, with no allocation per character.  An EnigmaReader
+ *  advances its machine, which should not be used elsewhere while it is
+ *  being read.
+ *  @author Thomas Nguyen
+ */
+class EnigmaReader extends Reader {
+
+    /** A Reader of the conversion by M of the text of IN, grouped iff
+     *  GROUP and with characters outside M's alphabet copied iff
+     *  PASSTHROUGH. */
+    EnigmaReader(Reader in, Machine m, boolean group, boolean passThrough) {
+        _in = in;
+        _converter = new StreamConverter(m, group, passThrough);
+        _source = CharBuffer.allocate(BUFFER_SIZE);
+        _source.flip();
+        _converted = CharBuffer.allocate(BUFFER_SIZE);
+        _converted.flip();
+    }
+
+    /** A Reader of the grouped conversion by M of the text of IN, as
+     *  Main writes it. */
+    EnigmaReader(Reader in, Machine m) {
+        this(in, m, true, false);
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int n = Math.min(len, _converted.remaining());
+        _converted.get(cbuf, off, n);
+        return n;
+    }
+
+    @Override
+    public boolean ready() throws IOException {
+        return _converted.hasRemaining() || _in.ready();
+    }
+
+    @Override
+    public void close() throws IOException {
+        _in.close();
+    }
+
+    /** Make sure that _converted holds at least one char, reading and
+     *  converting more input as needed.  Return false iff there is no
+     *  more output. */
+    private boolean fill() throws IOException {
+        while (!_converted.hasRemaining()) {
+            if (_eof) {
+                return false;
+            }
+            if (!_source.hasRemaining()) {
+                _source.clear();
+                int n = _in.read(_source.array(), 0, _source.capacity());
+                _source.limit(Math.max(n, 0));
+                _eof = n < 0;
+            }
+            _converted.clear();
+            _converter.convert(_source, _converted);
+            if (_eof) {
+                _converter.finish(_converted);
+            }
+            _converted.flip();
+        }
+        return true;
+    }
+
+    /** Number of chars in each of my buffers. */
+    private static final int BUFFER_SIZE = 8192;
+
+    /** The source of unconverted text. */
+    private final Reader _in;
+    /** Does the conversion. */
+    private final StreamConverter _converter;
+    /** Text read from _in and not yet converted. */
+    private final CharBuffer _source;
+    /** Converted text not yet returned by read. */
+    private final CharBuffer _converted;
+    /** True iff _in is exhausted. */
+    private boolean _eof;
+}
@@ -0,0 +1,241 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static enigma.EnigmaException.*;
+
+/** A long-running Enigma server, which reads its configurations once and
+ *  then converts messages for any number of clients.  Usage:
+ *
+ *      java enigma.Main --server ADDRESS CONFIG...
+ *
+ *  ADDRESS is either a port number, to listen on that TCP port of the
+ *  loopback interface, or the path of a Unix-domain socket to create.
+ *  Each CONFIG is a configuration file, as for Main.
+ *
+ *  A client sends lines exactly as in an input file for Main, and for
+ *  each message line receives its conversion, grouped as Main prints it.
+ *  Settings lines receive no reply.  In addition, a line "@ NAME" selects
+ *  the configuration read from the file whose name (without directories)
+ *  is NAME, after which the next line must be a settings line; a session
+ *  starts with the first CONFIG.  Requests may be pipelined: a client
+ *  may send any number of lines before reading the replies, which come
+ *  back in order.  On an error, the server replies "Error: " followed by
+ *  a description and ends the session.
+ *
+ *  Each session runs on its own thread (a virtual thread where the Java
+ *  runtime has them) with its own copy of its machine, so sessions never
+ *  share rotor state.  The configurations are held in a ConfigRegistry
+ *  that watches their files: a changed CONFIG is reloaded, and sessions
+ *  that select it afterwards get the new version, while sessions already
+ *  using it carry on undisturbed.
+ *  @author Thomas Nguyen
+ */
+final class EnigmaServer implements AutoCloseable {
+
+    /** A server listening on ADDRESS that offers the machines in CONFIGS,
+     *  indexed by name, the first being the default. */
+    EnigmaServer(SocketAddress address, Map<String, Machine> configs)
+        throws IOException {
+        this(address, registry(configs));
+    }
+
+    /** A server listening on ADDRESS that offers the configurations in
+     *  CONFIGS, the first registered being the default. */
+    EnigmaServer(SocketAddress address, ConfigRegistry configs)
+        throws IOException {
+        if (configs.ids().isEmpty()) {
+            throw error("no configurations");
+        }
+        _configs = configs;
+        _default = configs.ids().get(0);
+        if (address instanceof UnixDomainSocketAddress) {
+            _socketFile = ((UnixDomainSocketAddress) address).getPath();
+            Files.deleteIfExists(_socketFile);
+            _server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        } else {
+            _socketFile = null;
+            _server = ServerSocketChannel.open();
+        }
+        _server.bind(address);
+        _sessions = sessionExecutor();
+    }
+
+    /** Run the server with ARGS, as described above. */
+    static void run(String... args) {
+        if (args.length < 2) {
+            throw error("Usage: --server ADDRESS CONFIG...");
+        }
+        ConfigRegistry configs = new ConfigRegistry();
+        for (int k = 1; k < args.length; k++) {
+            configs.register(Paths.get(args[k]).getFileName().toString(),
+                             Paths.get(args[k]));
+        }
+        configs.watch();
+        try (configs;
+             EnigmaServer server = new EnigmaServer(address(args[0]),
+                                                    configs)) {
+            Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+            System.out.printf("Listening on %s%n", server.localAddress());
+            System.out.flush();
+            server.serve();
+        } catch (IOException excp) {
+            throw error("server failed: %s", excp.getMessage());
+        }
+    }
+
+    /** Return the socket address denoted by SPEC: a port on the loopback
+     *  interface if SPEC is a number, and otherwise the Unix-domain socket
+     *  whose path is SPEC. */
+    static SocketAddress address(String spec) {
+        if (spec.matches("\\d+")) {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                         Integer.parseInt(spec));
+        }
+        return UnixDomainSocketAddress.of(spec);
+    }
+
+    /** Return the address on which I listen. */
+    SocketAddress localAddress() throws IOException {
+        return _server.getLocalAddress();
+    }
+
+    /** Accept connections, serving each in its own session, until I am
+     *  closed. */
+    void serve() throws IOException {
+        while (true) {
+            SocketChannel client;
+            try {
+                client = _server.accept();
+            } catch (AsynchronousCloseException excp) {
+                return;
+            }
+            if (_socketFile == null) {
+                client.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            }
+            _sessions.execute(() -> session(client));
+        }
+    }
+
+    /** Serve the client at the other end of CLIENT until it disconnects
+     *  or sends an erroneous line.  Malformed settings that Main would
+     *  die on are reported to the client like any other error, so that
+     *  they end only their own session. */
+    private void session(SocketChannel client) {
+        try (client) {
+            BufferedReader in =
+                new BufferedReader(new InputStreamReader(
+                                       Channels.newInputStream(client),
+                                       StandardCharsets.UTF_8));
+            PrintStream out =
+                new PrintStream(new BufferedOutputStream(
+                                    Channels.newOutputStream(client)),
+                                false, StandardCharsets.UTF_8);
+            try {
+                Machine m = _configs.machine(_default);
+                boolean initial = true;
+                for (String line = in.readLine(); line != null;
+                     line = in.readLine()) {
+                    if (line.startsWith("@")) {
+                        m = config(line.substring(1).trim());
+                        initial = true;
+                    } else {
+                        Main.processLine(m, line, initial, out);
+                        initial = false;
+                    }
+                    if (!in.ready()) {
+                        out.flush();
+                        if (out.checkError()) {
+                            return;
+                        }
+                    }
+                }
+            } catch (RuntimeException | AssertionError excp) {
+                out.printf("Error: %s%n", excp.getMessage());
+            }
+            out.flush();
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** Return a new copy of the machine whose configuration is named
+     *  NAME. */
+    private Machine config(String name) {
+        return _configs.machine(name);
+    }
+
+    /** Return a registry of the machines in CONFIGS, by name, in order. */
+    private static ConfigRegistry registry(Map<String, Machine> configs) {
+        ConfigRegistry result = new ConfigRegistry();
+        for (Map.Entry<String, Machine> config : configs.entrySet()) {
+            result.register(config.getKey(), config.getValue());
+        }
+        return result;
+    }
+
+    /** Stop accepting connections.  Sessions in progress continue. */
+    @Override
+    public void close() {
+        try {
+            _server.close();
+            if (_socketFile != null) {
+                Files.deleteIfExists(_socketFile);
+            }
+        } catch (IOException excp) {
+            return;
+        } finally {
+            _sessions.shutdown();
+        }
+    }
+
+    /** Return an executor that runs each task on a new virtual thread, if
+     *  this runtime has them, and otherwise on a pooled daemon thread. */
+    private static ExecutorService sessionExecutor() {
+        try {
+            Method virtual =
+                Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) virtual.invoke(null);
+        } catch (ReflectiveOperationException excp) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "enigma-session");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /** Configured machines, by name.  These are templates, copied for
+     *  each session, and are never used directly. */
+    private final ConfigRegistry _configs;
+    /** The name of the configuration that sessions start with. */
+    private final String _default;
+    /** Accepts connections. */
+    private final ServerSocketChannel _server;
+    /** The file of my Unix-domain socket, or null if I use TCP. */
+    private final Path _socketFile;
+    /** Runs sessions. */
+    private final ExecutorService _sessions;
+}
@@ -0,0 +1,112 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the EnigmaServer class.
+ *  @author Thomas Nguyen
+ */
+public class EnigmaServerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a server on an unused loopback port offering navalMachine()
+     *  under the name "naval", and serving in a background thread. */
+    private EnigmaServer start() throws IOException {
+        Map<String, Machine> configs = new LinkedHashMap<>();
+        configs.put("naval", navalMachine());
+        EnigmaServer server =
+            new EnigmaServer(new InetSocketAddress(
+                                 InetAddress.getLoopbackAddress(), 0),
+                             configs);
+        Thread thread = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException excp) {
+                return;
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return server;
+    }
+
+    /** Send all of REQUEST at once to SERVER and return all the reply. */
+    private String exchange(EnigmaServer server, String request)
+        throws IOException {
+        try (SocketChannel channel =
+                 SocketChannel.open(server.localAddress())) {
+            PrintStream out =
+                new PrintStream(Channels.newOutputStream(channel), false,
+                                StandardCharsets.UTF_8);
+            out.print(request);
+            out.flush();
+            channel.shutdownOutput();
+            BufferedReader in =
+                new BufferedReader(new InputStreamReader(
+                                       Channels.newInputStream(channel),
+                                       StandardCharsets.UTF_8));
+            StringBuilder result = new StringBuilder();
+            for (String line = in.readLine(); line != null;
+                 line = in.readLine()) {
+                result.append(line).append('\n');
+            }
+            return result.toString();
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkPipelined() throws IOException {
+        try (EnigmaServer server = start()) {
+            String reply =
+                exchange(server, "* B Beta I II III AAAA\n"
+                         + "HELLO WORLD\n"
+                         + "@ naval\n"
+                         + "* B Beta I II III AAAA (AQ) (EP)\n"
+                         + "HELLO WORLD\n");
+            assertEquals("ILBDA AMTAZ\nIHBDQ QMTQZ\n", reply);
+        }
+    }
+
+    @Test
+    public void checkSessionsIndependent() throws IOException {
+        try (EnigmaServer server = start()) {
+            String request = "* B Beta I II III AAAA\nHELLO WORLD\n";
+            assertEquals(exchange(server, request),
+                         exchange(server, request));
+        }
+    }
+
+    @Test
+    public void checkErrors() throws IOException {
+        try (EnigmaServer server = start()) {
+            assertEquals("Error: wrong config\n",
+                         exchange(server, "HELLO\n* B Beta I II III AAAA\n"));
+            assertEquals("Error: no configuration named army\n",
+                         exchange(server, "@ army\n"));
+        }
+    }
+
+}
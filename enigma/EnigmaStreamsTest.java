@@ -0,0 +1,122 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for EnigmaReader, EnigmaWriter, and
+ *  EnigmaChannels.
+ *  @author Thomas Nguyen
+ */
+public class EnigmaStreamsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return all the text of IN, read LEN chars at a time. */
+    private String readAll(Reader in, int len) throws IOException {
+        StringBuilder result = new StringBuilder();
+        char[] buf = new char[len];
+        for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+            result.append(buf, 0, n);
+        }
+        return result.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkWriterGroups() throws IOException {
+        StringWriter result = new StringWriter();
+        try (Writer out = new EnigmaWriter(result, navalMachine())) {
+            for (char c : "HELLO WORLD\n".toCharArray()) {
+                out.write(c);
+            }
+        }
+        assertEquals("ILBDA AMTAZ\n", result.toString());
+    }
+
+    @Test
+    public void checkReaderPassThrough() throws IOException {
+        Reader in = new EnigmaReader(new StringReader("HELLO, world WORLD!"),
+                                     navalMachine(), false, true);
+        assertEquals("ILBDA, world AMTAZ!", readAll(in, 3));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkReaderRejects() throws IOException {
+        readAll(new EnigmaReader(new StringReader("HELLO, WORLD"),
+                                 navalMachine()), 100);
+    }
+
+    @Test
+    public void checkRoundTrip() throws IOException {
+        Random random = new Random(61);
+        StringBuilder text = new StringBuilder();
+        for (int k = 0; k < 50000; k++) {
+            text.append(k % 71 == 70 ? '\n'
+                        : (char) ('A' + random.nextInt(26)));
+        }
+        Reader in = new EnigmaReader(new StringReader(text.toString()),
+                                     navalMachine(), false, false);
+        String code = readAll(in, 1000);
+        StringWriter result = new StringWriter();
+        try (Writer out = new EnigmaWriter(result, navalMachine(), false,
+                                           false)) {
+            out.write(code);
+        }
+        assertEquals(text.toString(), result.toString());
+    }
+
+    @Test
+    public void checkChannels() throws IOException {
+        byte[] plain = "HELLO WORLD\n".getBytes(StandardCharsets.UTF_8);
+        ReadableByteChannel in =
+            EnigmaChannels.readable(Channels.newChannel(
+                                        new ByteArrayInputStream(plain)),
+                                    StandardCharsets.UTF_8, navalMachine(),
+                                    true, false);
+        ByteBuffer buf = ByteBuffer.allocate(4);
+        ByteArrayOutputStream code = new ByteArrayOutputStream();
+        while (in.read(buf) >= 0) {
+            code.write(buf.array(), 0, buf.position());
+            buf.clear();
+        }
+        assertEquals("ILBDA AMTAZ\n",
+                     new String(code.toByteArray(), StandardCharsets.UTF_8));
+
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (WritableByteChannel out =
+                 EnigmaChannels.writable(Channels.newChannel(result),
+                                         StandardCharsets.UTF_8,
+                                         navalMachine(), true, false)) {
+            for (byte b : code.toByteArray()) {
+                out.write(ByteBuffer.wrap(new byte[] {b}));
+            }
+        }
+        assertEquals("HELLO WORLD\n",
+                     new String(result.toByteArray(),
+                                StandardCharsets.UTF_8));
+    }
+
+}
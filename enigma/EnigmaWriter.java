@@ -0,0 +1,101 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+
+/** A Writer that converts text with an Enigma machine and writes the
+ *  result to another Writer.  Conversion follows StreamConverter: text
+ *  is optionally grouped in fives, and characters outside the machine's
+ *  alphabet are optionally passed through.  Converted text is buffered
+ *  internally, with no allocation per character, until the buffer fills
+ *  or the EnigmaWriter is flushed or closed.  An EnigmaWriter advances
+ *  its machine, which should not be used elsewhere while it is being
+ *  written.
+ *  @author Thomas Nguyen
+ */
+class EnigmaWriter extends Writer {
+
+    /** A Writer that sends the conversion by M of its text to OUT,
+     *  grouped iff GROUP and with characters outside M's alphabet copied
+     *  iff PASSTHROUGH. */
+    EnigmaWriter(Writer out, Machine m, boolean group, boolean passThrough) {
+        _out = out;
+        _converter = new StreamConverter(m, group, passThrough);
+        _converted = CharBuffer.allocate(BUFFER_SIZE);
+    }
+
+    /** A Writer that sends the grouped conversion by M of its text to OUT,
+     *  as Main writes it. */
+    EnigmaWriter(Writer out, Machine m) {
+        this(out, m, true, false);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        checkOpen();
+        write(CharBuffer.wrap(cbuf, off, len));
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        checkOpen();
+        write(CharBuffer.wrap(str, off, off + len));
+    }
+
+    @Override
+    public void flush() throws IOException {
+        checkOpen();
+        drain();
+        _out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (_closed) {
+            return;
+        }
+        try {
+            _converter.finish(_converted);
+            drain();
+        } finally {
+            _closed = true;
+            _out.close();
+        }
+    }
+
+    /** Convert all of SRC, writing to _out whenever _converted fills. */
+    private void write(CharBuffer src) throws IOException {
+        while (src.hasRemaining()) {
+            _converter.convert(src, _converted);
+            if (src.hasRemaining()) {
+                drain();
+            }
+        }
+    }
+
+    /** Write the contents of _converted to _out and empty it. */
+    private void drain() throws IOException {
+        _out.write(_converted.array(), 0, _converted.position());
+        _converted.clear();
+    }
+
+    /** Throw an IOException if I am closed. */
+    private void checkOpen() throws IOException {
+        if (_closed) {
+            throw new IOException("writer closed");
+        }
+    }
+
+    /** Number of chars in my buffer. */
+    private static final int BUFFER_SIZE = 8192;
+
+    /** The destination of converted text. */
+    private final Writer _out;
+    /** Does the conversion. */
+    private final StreamConverter _converter;
+    /** Converted text not yet written to _out. */
+    private final CharBuffer _converted;
+    /** True iff I have been closed. */
+    private boolean _closed;
+}
@@ -0,0 +1,133 @@
+package enigma;
+
+/** A fixed-length table of non-negative integers no larger than a bound
+ *  given at creation, stored in the narrowest primitive array that can
+ *  hold them: bytes for bounds below 256, chars for bounds below 65536,
+ *  and ints otherwise.  Alphabets and permutations keep their lookup
+ *  tables in this form so that large alphabets stay compact and small
+ *  ones stay in cache.
+ *  @author Thomas Nguyen
+ */
+abstract class IndexTable {
+
+    /** Return a new table of LENGTH zeros able to hold values in
+     *  0 .. MAXVALUE. */
+    static IndexTable create(int length, int maxValue) {
+        if (maxValue <= BYTE_MAX) {
+            return new Bytes(length);
+        } else if (maxValue <= Character.MAX_VALUE) {
+            return new Chars(length);
+        } else {
+            return new Ints(length);
+        }
+    }
+
+    /** Return a new table holding a copy of VALUES, all of which are in
+     *  0 .. MAXVALUE. */
+    static IndexTable of(int[] values, int maxValue) {
+        IndexTable result = create(values.length, maxValue);
+        for (int k = 0; k < values.length; k++) {
+            result.set(k, values[k]);
+        }
+        return result;
+    }
+
+    /** Return entry K. */
+    abstract int get(int k);
+
+    /** Set entry K to V. */
+    abstract void set(int k, int v);
+
+    /** Return my number of entries. */
+    abstract int length();
+
+    /** Return my entries as a new int array. */
+    int[] toArray() {
+        int[] result = new int[length()];
+        for (int k = 0; k < result.length; k++) {
+            result[k] = get(k);
+        }
+        return result;
+    }
+
+    /** Largest value held in a byte table. */
+    private static final int BYTE_MAX = 0xff;
+
+    /** A table of unsigned bytes. */
+    private static final class Bytes extends IndexTable {
+        /** A table of LENGTH zeros. */
+        Bytes(int length) {
+            _data = new byte[length];
+        }
+
+        @Override
+        int get(int k) {
+            return _data[k] & BYTE_MAX;
+        }
+
+        @Override
+        void set(int k, int v) {
+            _data[k] = (byte) v;
+        }
+
+        @Override
+        int length() {
+            return _data.length;
+        }
+
+        /** My entries. */
+        private final byte[] _data;
+    }
+
+    /** A table of unsigned 16-bit values. */
+    private static final class Chars extends IndexTable {
+        /** A table of LENGTH zeros. */
+        Chars(int length) {
+            _data = new char[length];
+        }
+
+        @Override
+        int get(int k) {
+            return _data[k];
+        }
+
+        @Override
+        void set(int k, int v) {
+            _data[k] = (char) v;
+        }
+
+        @Override
+        int length() {
+            return _data.length;
+        }
+
+        /** My entries. */
+        private final char[] _data;
+    }
+
+    /** A table of ints. */
+    private static final class Ints extends IndexTable {
+        /** A table of LENGTH zeros. */
+        Ints(int length) {
+            _data = new int[length];
+        }
+
+        @Override
+        int get(int k) {
+            return _data[k];
+        }
+
+        @Override
+        void set(int k, int v) {
+            _data[k] = v;
+        }
+
+        @Override
+        int length() {
+            return _data.length;
+        }
+
+        /** My entries. */
+        private final int[] _data;
+    }
+}
@@ -0,0 +1,237 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import static enigma.EnigmaException.*;
+
+/** The classes of equivalent keys (rotor positions and ring settings) of
+ *  one rotor order, for messages of a given length.  The wiring of a
+ *  rotor acts at its offset, its position less its ring setting, while
+ *  stepping depends on positions alone.  Two keys therefore give the same
+ *  conversion of every message of that length if their rotors have the
+ *  same offsets and step on the same key presses: a fixed rotor's ring is
+ *  irrelevant, and so is a moving rotor's, beyond its offset, if it steps
+ *  alike from the positions of both keys over the message (as when it
+ *  never steps at all).  The stepping is taken from a SteppingTable, so
+ *  double steps and all are those of the machine's own rule.
+ *
+ *  The key space for the order is thus divided into classes, each with a
+ *  canonical key: the one whose rotating rotors' positions are least
+ *  (read as a stepping state) and whose fixed rotors have ring setting
+ *  0.  A search need try only the canonical keys, which iterator()
+ *  supplies; the redundancy factor, keys() / classes(), is what it saves.
+ *  @author Thomas Nguyen
+ */
+final class KeyEquivalence implements Iterable<KeyEquivalence.Key> {
+
+    /** The key classes of rotor order ORDER of M (which is not changed)
+     *  for messages of LENGTH characters. */
+    KeyEquivalence(Machine m, String[] order, int length) {
+        if (length < 0) {
+            throw error("bad message length: %d", length);
+        }
+        KeySpace.checkOrder(m, order);
+        Machine probe = m.copy();
+        probe.insertRotors(order);
+        _size = m.alphabet().size();
+        _slots = order.length - 1;
+        _table = new SteppingTable(probe);
+        _rotating = new boolean[order.length];
+        for (int x : _table.slots()) {
+            _rotating[x] = true;
+        }
+        int states = _table.states();
+        _classOf = new int[states];
+        _stepClasses = partition(length);
+        _representative = new int[_stepClasses];
+        Arrays.fill(_representative, -1);
+        for (int s = 0; s < states; s++) {
+            if (_representative[_classOf[s]] < 0) {
+                _representative[_classOf[s]] = s;
+            }
+        }
+        long offsets = 1;
+        for (int x = 0; x < _slots; x++) {
+            offsets *= _size;
+        }
+        _offsets = offsets;
+    }
+
+    /** Set _classOf[s], for each stepping state s, to the class of the
+     *  sequence of moves made from s in LENGTH key presses, numbering the
+     *  classes from 0, and return the number of classes.  Classes are
+     *  refined one press at a time, and the refinement stops early once
+     *  every state is in a class of its own. */
+    private int partition(int length) {
+        int states = _classOf.length, moves = 1 << _table.slots().length;
+        int[] state = new int[states];
+        for (int s = 0; s < states; s++) {
+            state[s] = s;
+        }
+        int classes = 1;
+        int[] ids = new int[states * moves];
+        for (int t = 0; t < length && classes < states; t++) {
+            Arrays.fill(ids, 0, classes * moves, -1);
+            int refined = 0;
+            for (int s = 0; s < states; s++) {
+                int k = _classOf[s] * moves + _table.moves(state[s]);
+                if (ids[k] < 0) {
+                    ids[k] = refined++;
+                }
+                _classOf[s] = ids[k];
+                state[s] = _table.next(state[s]);
+            }
+            classes = refined;
+        }
+        return classes;
+    }
+
+    /** Return the number of keys (positions and rings) of my order. */
+    long keys() {
+        return _offsets * _offsets;
+    }
+
+    /** Return the number of classes of equivalent keys. */
+    long classes() {
+        return _stepClasses * _offsets;
+    }
+
+    /** Return keys() / classes(). */
+    double redundancy() {
+        return (double) keys() / classes();
+    }
+
+    /** Return the canonical key of the class of the key with rotor
+     *  positions POSITIONS and rings RINGS (indexed by slot, with entry
+     *  0, for the reflector, ignored). */
+    Key canonical(int[] positions, int[] rings) {
+        int state = 0;
+        for (int x : _table.slots()) {
+            state = state * _size + positions[x];
+        }
+        int[] offsets = new int[_slots + 1];
+        for (int x = 1; x <= _slots; x++) {
+            offsets[x] = Math.floorMod(positions[x] - rings[x], _size);
+        }
+        return key(_representative[_classOf[state]], offsets);
+    }
+
+    /** Return the key with rotor offsets OFFSETS whose rotating rotors
+     *  are at the positions of stepping state STATE and whose fixed
+     *  rotors have ring setting 0. */
+    private Key key(int state, int[] offsets) {
+        int[] positions = new int[_slots + 1], rings = new int[_slots + 1];
+        int[] slots = _table.slots();
+        for (int j = slots.length - 1; j >= 0; j--) {
+            positions[slots[j]] = state % _size;
+            state /= _size;
+        }
+        for (int x = 1; x <= _slots; x++) {
+            if (!_rotating[x]) {
+                positions[x] = offsets[x];
+            }
+            rings[x] = Math.floorMod(positions[x] - offsets[x], _size);
+        }
+        return new Key(positions, rings);
+    }
+
+    /** Return an iterator over the canonical keys, one per class. */
+    @Override
+    public Iterator<Key> iterator() {
+        return new Iterator<Key>() {
+            @Override
+            public boolean hasNext() {
+                return _next < classes();
+            }
+
+            @Override
+            public Key next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                long offset = _next % _offsets;
+                int stepClass = (int) (_next / _offsets);
+                int[] offsets = new int[_slots + 1];
+                for (int x = _slots; x > 0; x--) {
+                    offsets[x] = (int) (offset % _size);
+                    offset /= _size;
+                }
+                _next += 1;
+                return key(_representative[stepClass], offsets);
+            }
+
+            /** Index of the next class. */
+            private long _next;
+        };
+    }
+
+    /** Rotor positions and ring settings, indexed by slot (entry 0, for
+     *  the reflector, unused). */
+    static final class Key {
+        /** The key with POSITIONS and RINGS. */
+        Key(int[] positions, int[] rings) {
+            _positions = positions;
+            _rings = rings;
+        }
+
+        /** Return the position of the rotor in SLOT. */
+        int position(int slot) {
+            return _positions[slot];
+        }
+
+        /** Return the ring setting of the rotor in SLOT. */
+        int ring(int slot) {
+            return _rings[slot];
+        }
+
+        /** Set the rotors of M, which must hold my rotor order, to me. */
+        void apply(Machine m) {
+            Rotor[] rotors = m.rotors();
+            for (int x = 1; x < rotors.length; x++) {
+                rotors[x].set(_positions[x]);
+                rotors[x].setRing(_rings[x]);
+            }
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key
+                && Arrays.equals(_positions, ((Key) obj)._positions)
+                && Arrays.equals(_rings, ((Key) obj)._rings);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(_positions) + Arrays.hashCode(_rings);
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.toString(_positions) + Arrays.toString(_rings);
+        }
+
+        /** Positions by slot. */
+        private final int[] _positions;
+        /** Ring settings by slot. */
+        private final int[] _rings;
+    }
+
+    /** Size of the alphabet. */
+    private final int _size;
+    /** Number of non-reflector slots. */
+    private final int _slots;
+    /** Stepping of my rotor order. */
+    private final SteppingTable _table;
+    /** Entry x is true iff the rotor in slot x rotates. */
+    private final boolean[] _rotating;
+    /** Entry s is the class of stepping state s. */
+    private final int[] _classOf;
+    /** Number of classes of stepping states. */
+    private final int _stepClasses;
+    /** Entry c is the least stepping state of class c. */
+    private final int[] _representative;
+    /** Number of combinations of rotor offsets. */
+    private final long _offsets;
+}
@@ -0,0 +1,115 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeyEquivalence class.
+ *  @author Thomas Nguyen
+ */
+public class KeyEquivalenceTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** The alphabet of machine(). */
+    private final Alphabet alpha = new Alphabet("ABCDE");
+
+    /** The rotor order of machine(). */
+    private static final String[] ORDER = { "R", "F", "M0", "M1" };
+
+    /** The wirings of the rotors of ORDER. */
+    private static final String[] WIRINGS = { "(AB) (CD) (E)", "(ACE) (BD)",
+                                              "(ABCD)", "(AEC) (BD)" };
+
+    /** Return a machine over alpha with the rotors of ORDER, a reflector,
+     *  a fixed rotor, and two moving rotors, inserted. */
+    private Machine machine() {
+        return TestUtils.machine(alpha, WIRINGS, "B", "DE");
+    }
+
+    /** Return the core permutations of M over the next LENGTH key
+     *  presses, as a list. */
+    private List<Integer> keystream(Machine m, int length) {
+        Keystream stream = new Keystream(m, length);
+        List<Integer> result = new ArrayList<>();
+        for (int k = 0; k < length; k++) {
+            for (int c = 0; c < alpha.size(); c++) {
+                result.add(stream.core(k, c));
+            }
+        }
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkClasses() {
+        for (int length : new int[] { 0, 1, 3, 12 }) {
+            Machine m = machine(), n = machine();
+            KeyEquivalence classes = new KeyEquivalence(m, ORDER, length);
+            assertEquals(15625, classes.keys());
+            KeySpace space = new KeySpace(alpha, List.<String[]>of(ORDER),
+                                          true);
+            n.insertRotors(ORDER);
+            HashMap<KeyEquivalence.Key, List<Integer>> canonical =
+                new HashMap<>();
+            KeySpace.Cursor cursor = space.cursor(0, space.size());
+            int[] positions = new int[4], rings = new int[4];
+            while (cursor.next()) {
+                for (int x = 1; x < 4; x++) {
+                    positions[x] = cursor.position(x);
+                    rings[x] = cursor.ring(x);
+                }
+                KeyEquivalence.Key key = classes.canonical(positions, rings);
+                cursor.apply(m);
+                List<Integer> stream = keystream(m, length);
+                List<Integer> old = canonical.putIfAbsent(key, stream);
+                assertTrue(old == null || old.equals(stream));
+                key.apply(n);
+                assertEquals(stream, keystream(n, length));
+            }
+            assertEquals(classes.classes(), canonical.size());
+        }
+    }
+
+    @Test
+    public void checkIterator() {
+        Machine m = machine();
+        KeyEquivalence classes = new KeyEquivalence(m, ORDER, 4);
+        HashSet<KeyEquivalence.Key> seen = new HashSet<>();
+        int[] positions = new int[4], rings = new int[4];
+        for (KeyEquivalence.Key key : classes) {
+            assertTrue(seen.add(key));
+            for (int x = 1; x < 4; x++) {
+                positions[x] = key.position(x);
+                rings[x] = key.ring(x);
+            }
+            assertEquals(key, classes.canonical(positions, rings));
+            assertEquals(0, key.ring(1));
+        }
+        assertEquals(classes.classes(), seen.size());
+    }
+
+    @Test
+    public void checkNaval() {
+        Machine m = navalMachine();
+        String[] order = { "B", "Beta", "I", "II", "III" };
+        KeyEquivalence shortMessage = new KeyEquivalence(m, order, 10),
+            longMessage = new KeyEquivalence(m, order, 1000);
+        assertTrue(longMessage.redundancy() >= UPPER.size());
+        assertTrue(shortMessage.redundancy() > longMessage.redundancy());
+    }
+
+}
@@ -0,0 +1,476 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static enigma.EnigmaException.*;
+
+/** The space of keys of a machine: every combination of a rotor order
+ *  from a given list with the positions and (optionally) ring settings of
+ *  its non-reflector rotors.
+ *
+ *  Within one rotor order, keys are visited in a modular Gray code order:
+ *  each key differs from the one before it in exactly one rotor position
+ *  or ring, advanced by one.  The position of the rightmost rotor changes
+ *  fastest, then the one to its left, and so on, then the rings in the
+ *  same order.  A search engine can therefore update a single rotor (and
+ *  any tables that depend on it) per key, using delta() to learn which.
+ *  The space also supports spliterator(), which divides it evenly by rank
+ *  so that stream(true) spreads it over all cores.
+ *  @author Thomas Nguyen
+ */
+final class KeySpace implements Iterable<KeySpace.Key> {
+
+    /** The keys over ALPHA of the rotor orders ORDERS (each a list of
+     *  rotor names starting with the reflector, all the same length),
+     *  including ring settings iff RINGS. */
+    KeySpace(Alphabet alpha, List<String[]> orders, boolean rings) {
+        if (orders.isEmpty()) {
+            throw error("no rotor orders to search");
+        }
+        _alphabet = alpha;
+        _orders = new ArrayList<>(orders);
+        _slots = orders.get(0).length - 1;
+        _digits = rings ? 2 * _slots : _slots;
+        long perOrder = 1;
+        for (int k = 0; k < _digits; k++) {
+            if (perOrder > Long.MAX_VALUE / alpha.size() / orders.size()) {
+                throw error("key space is too large");
+            }
+            perOrder *= alpha.size();
+        }
+        _perOrder = perOrder;
+        for (String[] order : orders) {
+            if (order.length != _slots + 1) {
+                throw error("rotor orders differ in length");
+            }
+        }
+    }
+
+    /** Return every legal rotor order for M: a reflector, then
+     *  non-moving rotors, then M.numPawls() moving rotors, with no rotor
+     *  used twice. */
+    static List<String[]> allOrders(Machine m) {
+        List<String> reflectors = new ArrayList<>(),
+            fixed = new ArrayList<>(), moving = new ArrayList<>();
+        for (Rotor r : m.allRotors()) {
+            if (r.reflecting()) {
+                reflectors.add(r.name());
+            } else if (r.rotates()) {
+                moving.add(r.name());
+            } else {
+                fixed.add(r.name());
+            }
+        }
+        reflectors.sort(null);
+        fixed.sort(null);
+        moving.sort(null);
+        List<String[]> result = new ArrayList<>();
+        String[] order = new String[m.numRotors()];
+        for (String reflector : reflectors) {
+            order[0] = reflector;
+            addOrders(order, 1, m.numRotors() - m.numPawls(), fixed, moving,
+                      result);
+        }
+        return result;
+    }
+
+    /** Add to RESULT every completion of ORDER from slot K onward, taking
+     *  rotors for slots before FIRSTMOVING from FIXED and the rest from
+     *  MOVING. */
+    private static void addOrders(String[] order, int k, int firstMoving,
+                                  List<String> fixed, List<String> moving,
+                                  List<String[]> result) {
+        if (k == order.length) {
+            result.add(order.clone());
+            return;
+        }
+        for (String name : k < firstMoving ? fixed : moving) {
+            if (!Arrays.asList(order).subList(1, k).contains(name)) {
+                order[k] = name;
+                addOrders(order, k + 1, firstMoving, fixed, moving, result);
+            }
+        }
+    }
+
+    /** Check that ORDER names M.numRotors() distinct rotors of M, starting
+     *  with a reflector. */
+    static void checkOrder(Machine m, String[] order) {
+        if (order.length != m.numRotors()) {
+            throw error("rotor order %s has the wrong number of rotors",
+                        String.join(",", order));
+        }
+        for (int k = 0; k < order.length; k++) {
+            Rotor found = null;
+            for (Rotor r : m.allRotors()) {
+                if (r.name().equals(order[k])) {
+                    found = r;
+                }
+            }
+            if (found == null || found.reflecting() != (k == 0)
+                || Arrays.asList(order).indexOf(order[k]) != k) {
+                throw error("bad rotor order %s", String.join(",", order));
+            }
+        }
+    }
+
+    /** Return the number of keys in me. */
+    long size() {
+        return _perOrder * _orders.size();
+    }
+
+    /** Return the number of keys in me for each rotor order. */
+    long sizePerOrder() {
+        return _perOrder;
+    }
+
+    /** Return my rotor orders. */
+    List<String[]> orders() {
+        return _orders;
+    }
+
+    /** Return true iff my keys include ring settings. */
+    boolean hasRings() {
+        return _digits > _slots;
+    }
+
+    /** Return a new cursor positioned before the key of rank FROM, which
+     *  will stop after the key before rank TO. */
+    Cursor cursor(long from, long to) {
+        return new Cursor(from, to);
+    }
+
+    /** Return the key of rank RANK. */
+    Key key(long rank) {
+        Cursor c = new Cursor(rank, rank + 1);
+        c.next();
+        return c.key();
+    }
+
+    @Override
+    public Iterator<Key> iterator() {
+        Cursor c = new Cursor(0, size());
+        return new Iterator<Key>() {
+            @Override
+            public boolean hasNext() {
+                return c.hasNext();
+            }
+
+            @Override
+            public Key next() {
+                if (!c.next()) {
+                    throw new NoSuchElementException();
+                }
+                return c.key();
+            }
+        };
+    }
+
+    @Override
+    public Spliterator<Key> spliterator() {
+        return new Splitter(0, size());
+    }
+
+    /** Return a stream of all my keys, parallel iff PARALLEL. */
+    Stream<Key> stream(boolean parallel) {
+        return StreamSupport.stream(spliterator(), parallel);
+    }
+
+    /** A key: a rotor order with positions and ring settings. */
+    final class Key {
+        /** The key of rank RANK, with rotor order ORDER, POSITIONS and RINGS
+         *  (indexed by slot), and DELTA as for delta(). */
+        private Key(long rank, int order, int[] positions, int[] rings,
+                    int delta) {
+            _rank = rank;
+            _order = order;
+            _positions = positions;
+            _rings = rings;
+            _delta = delta;
+        }
+
+        /** Return my rank in the key space. */
+        long rank() {
+            return _rank;
+        }
+
+        /** Return my rotor order, as rotor names. */
+        String[] order() {
+            return _orders.get(_order).clone();
+        }
+
+        /** Return my rotor positions as a setting string (leftmost
+         *  non-reflector rotor first). */
+        String positions() {
+            return digitString(_positions);
+        }
+
+        /** Return my ring settings, in the same form as positions(). */
+        String rings() {
+            return digitString(_rings);
+        }
+
+        /** Return the slot (1 .. number of rotors - 1) of the single rotor
+         *  whose position or ring differs from the key of the previous
+         *  rank, or -1 if the previous key has a different rotor order
+         *  or there is none. */
+        int delta() {
+            return _delta < 0 ? -1 : slot(_delta);
+        }
+
+        /** Return true iff delta() names a change of ring rather than of
+         *  position. */
+        boolean deltaIsRing() {
+            return _delta >= _slots;
+        }
+
+        /** Set M to me: insert my rotors, set their positions and rings. */
+        void apply(Machine m) {
+            m.insertRotors(order());
+            m.setRotors(positions());
+            m.setAlphabetRing(rings());
+        }
+
+        @Override
+        public String toString() {
+            return String.join(" ", _orders.get(_order)) + " "
+                + positions() + " " + rings();
+        }
+
+        /** My rank. */
+        private final long _rank;
+        /** Index of my rotor order. */
+        private final int _order;
+        /** Position by slot (entry 0 unused). */
+        private final int[] _positions;
+        /** Ring setting by slot (entry 0 unused). */
+        private final int[] _rings;
+        /** Gray digit changed from the previous key, or -1. */
+        private final int _delta;
+    }
+
+    /** A mutable position in the key space that steps through a range of
+     *  ranks without allocating, for search loops that update a machine
+     *  incrementally. */
+    final class Cursor {
+        /** A cursor over ranks FROM .. TO-1, positioned before FROM. */
+        private Cursor(long from, long to) {
+            _next = from;
+            _end = to;
+            _counter = new int[_digits];
+            _gray = new int[_digits];
+            _delta = -1;
+        }
+
+        /** Return true iff there is a key after the current one. */
+        boolean hasNext() {
+            return _next < _end;
+        }
+
+        /** Move to the next key, returning false if there is none. */
+        boolean next() {
+            if (_next >= _end) {
+                return false;
+            }
+            long local = _next % _perOrder;
+            if (_started && local != 0) {
+                int i = 0;
+                while (_counter[i] == _alphabet.size() - 1) {
+                    _counter[i] = 0;
+                    i += 1;
+                }
+                _counter[i] += 1;
+                _gray[i] = wrap(_gray[i] + 1);
+                _delta = i;
+            } else {
+                _order = (int) (_next / _perOrder);
+                for (int i = 0; i < _digits; i++) {
+                    _counter[i] = (int) (local % _alphabet.size());
+                    local /= _alphabet.size();
+                }
+                for (int i = 0; i < _digits; i++) {
+                    int higher = i + 1 < _digits ? _counter[i + 1] : 0;
+                    _gray[i] = wrap(_counter[i] - higher);
+                }
+                _delta = -1;
+                for (int i = _digits - 1; i >= 0 && _next % _perOrder != 0;
+                     i--) {
+                    if (_counter[i] != 0) {
+                        _delta = i;
+                    }
+                }
+            }
+            _first = !_started;
+            _started = true;
+            _rank = _next;
+            _next += 1;
+            return true;
+        }
+
+        /** Return the rank of the current key. */
+        long rank() {
+            return _rank;
+        }
+
+        /** Return the index in orders() of the current rotor order. */
+        int order() {
+            return _order;
+        }
+
+        /** Return the position of the rotor in SLOT. */
+        int position(int slot) {
+            return _gray[_slots - slot];
+        }
+
+        /** Return the ring setting of the rotor in SLOT (0 if my space
+         *  has no rings). */
+        int ring(int slot) {
+            return hasRings() ? _gray[2 * _slots - slot] : 0;
+        }
+
+        /** Return the slot of the rotor whose position or ring is the only
+         *  difference from the previous key, or -1 if the previous key
+         *  was in another rotor order or this cursor has just started. */
+        int delta() {
+            return _first || _delta < 0 ? -1 : slot(_delta);
+        }
+
+        /** Return true iff delta() names a change of ring. */
+        boolean deltaIsRing() {
+            return !_first && _delta >= _slots;
+        }
+
+        /** Set M to the current key, touching only the rotor named by
+         *  delta() when there is one. */
+        void apply(Machine m) {
+            if (delta() < 0) {
+                m.insertRotors(_orders.get(_order));
+                for (int slot = 1; slot <= _slots; slot++) {
+                    m.rotors()[slot].set(position(slot));
+                    m.rotors()[slot].setRing(ring(slot));
+                }
+            } else if (deltaIsRing()) {
+                m.rotors()[delta()].setRing(ring(delta()));
+            } else {
+                m.rotors()[delta()].set(position(delta()));
+            }
+        }
+
+        /** Return an immutable copy of the current key. */
+        Key key() {
+            int[] positions = new int[_slots + 1], rings = new int[_slots + 1];
+            for (int slot = 1; slot <= _slots; slot++) {
+                positions[slot] = position(slot);
+                rings[slot] = ring(slot);
+            }
+            return new Key(_rank, _order, positions, rings, _delta);
+        }
+
+        /** Next rank to visit. */
+        private long _next;
+        /** Rank of the current key. */
+        private long _rank;
+        /** Rank at which to stop. */
+        private final long _end;
+        /** True once next() has been called. */
+        private boolean _started;
+        /** True iff the current key is the first I have visited. */
+        private boolean _first;
+        /** Index of the current rotor order. */
+        private int _order;
+        /** Base-N digits of the rank within its order, least first. */
+        private final int[] _counter;
+        /** Gray code digits of the current key, least first. */
+        private final int[] _gray;
+        /** Gray digit changed by the last call to next(), or -1. */
+        private int _delta;
+    }
+
+    /** Spliterator over ranks of my keys. */
+    private final class Splitter implements Spliterator<Key> {
+        /** A spliterator over ranks FROM .. TO-1. */
+        Splitter(long from, long to) {
+            _from = from;
+            _to = to;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Key> action) {
+            if (_cursor == null) {
+                _cursor = new Cursor(_from, _to);
+            }
+            if (!_cursor.next()) {
+                return false;
+            }
+            action.accept(_cursor.key());
+            return true;
+        }
+
+        @Override
+        public Spliterator<Key> trySplit() {
+            if (_cursor != null || _to - _from < 2) {
+                return null;
+            }
+            long mid = _from + (_to - _from) / 2;
+            Splitter prefix = new Splitter(_from, mid);
+            _from = mid;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return _cursor == null ? _to - _from : _to - _cursor._next;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | DISTINCT | SIZED | SUBSIZED | NONNULL
+                | IMMUTABLE;
+        }
+
+        /** First rank not yet split off or visited. */
+        private long _from;
+        /** Rank after my last. */
+        private final long _to;
+        /** Cursor over my range, once iteration starts. */
+        private Cursor _cursor;
+    }
+
+    /** Return the slot whose position or ring is Gray digit DIGIT. */
+    private int slot(int digit) {
+        return _slots - digit % _slots;
+    }
+
+    /** Return the setting string for the digits DIGITS (by slot). */
+    private String digitString(int[] digits) {
+        StringBuilder result = new StringBuilder();
+        for (int slot = 1; slot <= _slots; slot++) {
+            result.appendCodePoint(_alphabet.toCodePoint(digits[slot]));
+        }
+        return result.toString();
+    }
+
+    /** Return P modulo the size of my alphabet. */
+    private int wrap(int p) {
+        int r = p % _alphabet.size();
+        return r < 0 ? r + _alphabet.size() : r;
+    }
+
+    /** Alphabet of positions and rings. */
+    private final Alphabet _alphabet;
+    /** Rotor orders, as lists of names. */
+    private final List<String[]> _orders;
+    /** Number of non-reflector rotors in each order. */
+    private final int _slots;
+    /** Number of Gray digits: one per position, and per ring if any. */
+    private final int _digits;
+    /** Number of keys per rotor order. */
+    private final long _perOrder;
+}
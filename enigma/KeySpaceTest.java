@@ -0,0 +1,141 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeySpace class.
+ *  @author Thomas Nguyen
+ */
+public class KeySpaceTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a key space over ABCD with rotor orders ORDERS, given as
+     *  comma-separated names, with rings iff RINGS. */
+    private KeySpace space(boolean rings, String... orders) {
+        List<String[]> result = new ArrayList<>();
+        for (String order : orders) {
+            result.add(order.split(","));
+        }
+        return new KeySpace(ABCD, result, rings);
+    }
+
+    /** Return the number of slots in which KEY1 and KEY2 differ in
+     *  position or ring, checking that any difference is an advance by
+     *  one. */
+    private int differences(KeySpace.Key key1, KeySpace.Key key2) {
+        String a = key1.positions() + key1.rings(),
+            b = key2.positions() + key2.rings();
+        int count = 0;
+        for (int k = 0; k < a.length(); k++) {
+            if (a.charAt(k) != b.charAt(k)) {
+                count += 1;
+                assertEquals((ABCD.toInt(a.charAt(k)) + 1) % ABCD.size(),
+                             ABCD.toInt(b.charAt(k)));
+            }
+        }
+        return count;
+    }
+
+    /** Check that applying the keys of ranks FROM .. TO-1 of KEYS, one
+     *  after another, with a cursor to INCREMENTAL sets it up as each
+     *  key applied in full would. */
+    private void checkCursor(KeySpace keys, long from, long to,
+                             Machine incremental) {
+        Machine full = abcdMachine();
+        KeySpace.Cursor c = keys.cursor(from, to);
+        while (c.next()) {
+            c.apply(incremental);
+            keys.key(c.rank()).apply(full);
+            for (int slot = 1; slot < 4; slot++) {
+                assertEquals(full.rotors()[slot].name(),
+                             incremental.rotors()[slot].name());
+                assertEquals(full.rotors()[slot].setting(),
+                             incremental.rotors()[slot].setting());
+                assertEquals(full.rotors()[slot].ring(),
+                             incremental.rotors()[slot].ring());
+            }
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkGrayOrder() {
+        KeySpace keys = space(true, "R,X,Y,Z");
+        assertEquals(4096, keys.size());
+        HashSet<String> seen = new HashSet<>();
+        KeySpace.Key prev = null;
+        for (KeySpace.Key key : keys) {
+            assertTrue(seen.add(key.toString()));
+            if (prev != null) {
+                assertEquals(1, differences(prev, key));
+                int slot = key.delta();
+                int k = key.deltaIsRing() ? slot + 2 : slot - 1;
+                assertTrue((prev.positions() + prev.rings()).charAt(k)
+                           != (key.positions() + key.rings()).charAt(k));
+            } else {
+                assertEquals(-1, key.delta());
+            }
+            prev = key;
+        }
+    }
+
+    @Test
+    public void checkOrderChange() {
+        KeySpace keys = space(false, "R,X,Y,Z", "R,Z,Y,X");
+        assertEquals(128, keys.size());
+        KeySpace.Key key = keys.key(64);
+        assertEquals(-1, key.delta());
+        assertEquals("R,Z,Y,X", String.join(",", key.order()));
+        assertEquals(1, differences(keys.key(64), keys.key(65)));
+        assertEquals(3, keys.key(65).delta());
+        assertEquals(2, keys.key(68).delta());
+    }
+
+    @Test
+    public void checkParallelStream() {
+        KeySpace keys = space(true, "R,X,Y,Z", "R,Z,Y,X");
+        long[] ranks = keys.stream(true).mapToLong(KeySpace.Key::rank)
+            .sorted().toArray();
+        assertEquals(keys.size(), ranks.length);
+        for (int k = 0; k < ranks.length; k++) {
+            assertEquals(k, ranks[k]);
+        }
+        assertEquals(keys.key(1000).toString(),
+                     keys.stream(true).filter(k -> k.rank() == 1000)
+                     .findFirst().get().toString());
+    }
+
+    @Test
+    public void checkCursorApply() {
+        KeySpace keys = space(true, "R,X,Y,Z", "R,Z,Y,X");
+        checkCursor(keys, 0, keys.size(), abcdMachine());
+    }
+
+    @Test
+    public void checkCursorMidOrder() {
+        KeySpace keys = space(true, "R,X,Y,Z", "R,Z,Y,X");
+        KeySpace.Cursor c = keys.cursor(5, 10);
+        assertTrue(c.next());
+        assertEquals(-1, c.delta());
+        assertEquals(keys.key(5).toString(), c.key().toString());
+        checkCursor(keys, 5, 10, abcdMachine());
+        Machine used = abcdMachine();
+        keys.key(3000).apply(used);
+        checkCursor(keys, 4100, 4200, used);
+    }
+
+}
@@ -0,0 +1,99 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** The permutations performed by the rotors of a machine (its core,
+ *  without the plugboard) for each of a run of key presses.  A machine
+ *  with plugboard P converts c at press k to P(C_k(P(c))), where C_k is
+ *  the core permutation at press k, and C_k does not depend on P.  So
+ *  once a keystream has been computed for a rotor order, positions and
+ *  rings, converting a message with any plugboard takes two plugboard
+ *  lookups and one core lookup per character, with no rotor work: useful
+ *  in key searches, and for traffic that shares rotor settings but
+ *  varies the plugboard.
+ *  @author Thomas Nguyen
+ */
+final class Keystream {
+
+    /** The core permutations of M for the next LENGTH key presses, starting
+     *  from its current state.  M itself is not changed. */
+    Keystream(Machine m, int length) {
+        _size = m.alphabet().size();
+        if (length < 0 || (long) length * _size > Integer.MAX_VALUE) {
+            throw error("bad keystream length: %d", length);
+        }
+        Machine core = m.copy();
+        core.setPlugboard(null);
+        _length = length;
+        _alphabet = m.alphabet();
+        _cores = IndexTable.create(length * _size, _size - 1);
+        for (int k = 0, row = 0; k < length; k += 1, row += _size) {
+            core.step();
+            for (int c = 0; c < _size; c += 1) {
+                _cores.set(row + c, core.translate(c));
+            }
+        }
+    }
+
+    /** Return the number of key presses I cover. */
+    int length() {
+        return _length;
+    }
+
+    /** Return the conversion of C (an index in my alphabet) by the core
+     *  at press K (counting from 0). */
+    int core(int k, int c) {
+        return _cores.get(k * _size + c);
+    }
+
+    /** Set DEST[k], for 0 <= k < LEN, to the conversion of the index
+     *  SRC[k] at press START + k by a machine whose plugboard mapping is
+     *  PLUGBOARD (as returned by Permutation.toArray()), or the identity
+     *  if PLUGBOARD is null.  START + LEN must not exceed length().  SRC
+     *  and DEST may be the same array.  Returns DEST. */
+    int[] convert(int[] src, int start, int len, int[] plugboard,
+                  int[] dest) {
+        if (start < 0 || len < 0 || start + len > _length) {
+            throw new IndexOutOfBoundsException("presses " + start + " to "
+                                                + (start + len));
+        }
+        int row = start * _size;
+        if (plugboard == null) {
+            for (int k = 0; k < len; k += 1, row += _size) {
+                dest[k] = _cores.get(row + src[k]);
+            }
+        } else {
+            for (int k = 0; k < len; k += 1, row += _size) {
+                dest[k] = plugboard[_cores.get(row + plugboard[src[k]])];
+            }
+        }
+        return dest;
+    }
+
+    /** Return the conversion of MSG, starting at the first press I cover,
+     *  by a machine with plugboard PLUGBOARD (or none, if null), as
+     *  Machine.convert(String) would produce it.  MSG must have at most
+     *  length() characters. */
+    String convert(String msg, Permutation plugboard) {
+        int[] message = msg.codePoints().toArray();
+        for (int x = 0; x < message.length; x += 1) {
+            message[x] = Math.max(0, _alphabet.indexOf(message[x]));
+        }
+        convert(message, 0, message.length,
+                plugboard == null ? null : plugboard.toArray(), message);
+        for (int x = 0; x < message.length; x += 1) {
+            message[x] = _alphabet.toCodePoint(message[x]);
+        }
+        return new String(message, 0, message.length);
+    }
+
+    /** Size of the alphabet. */
+    private final int _size;
+    /** Number of key presses covered. */
+    private final int _length;
+    /** The alphabet. */
+    private final Alphabet _alphabet;
+    /** Entry k * _size + c is the conversion of c by the core at press
+     *  k. */
+    private final IndexTable _cores;
+}
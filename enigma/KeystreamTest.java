@@ -0,0 +1,109 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Keystream class.
+ *  @author Thomas Nguyen
+ */
+public class KeystreamTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a random plugboard of up to 10 pairs, using RANDOM. */
+    private Permutation plugboard(Random random) {
+        int[] letters = new int[26];
+        for (int k = 0; k < 26; k += 1) {
+            letters[k] = k;
+        }
+        for (int k = 25; k > 0; k -= 1) {
+            int j = random.nextInt(k + 1);
+            int t = letters[k];
+            letters[k] = letters[j];
+            letters[j] = t;
+        }
+        StringBuilder cycles = new StringBuilder();
+        for (int k = random.nextInt(11); k > 0; k -= 1) {
+            cycles.append('(').append(UPPER.toChar(letters[2 * k]))
+                .append(UPPER.toChar(letters[2 * k + 1])).append(')');
+        }
+        return new Permutation(cycles.toString(), UPPER);
+    }
+
+    /** Return a random message of LEN letters, using RANDOM. */
+    private String message(int len, Random random) {
+        StringBuilder result = new StringBuilder();
+        for (int k = 0; k < len; k += 1) {
+            result.append(UPPER.toChar(random.nextInt(26)));
+        }
+        return result.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkPlugboards() {
+        Random random = new Random(42);
+        Machine m = navalMachine();
+        m.setRotors("QEVA");
+        m.setAlphabetRing("BCDE");
+        Keystream keys = new Keystream(m, 800);
+        assertEquals(800, keys.length());
+        String msg = message(800, random);
+        for (int trial = 0; trial < 50; trial += 1) {
+            Permutation plugboard = trial == 0 ? null : plugboard(random);
+            Machine check = m.copy();
+            check.setPlugboard(plugboard);
+            assertEquals(check.convert(msg), keys.convert(msg, plugboard));
+        }
+        assertEquals("QEVA", settings(m));
+    }
+
+    @Test
+    public void checkOffsets() {
+        Random random = new Random(43);
+        Machine m = navalMachine();
+        Keystream keys = new Keystream(m, 100);
+        int[] plug = plugboard(random).toArray();
+        int[] src = new int[40];
+        for (int k = 0; k < src.length; k += 1) {
+            src[k] = random.nextInt(26);
+        }
+        int[] all = new int[100], part = new int[40];
+        int[] padded = new int[100];
+        System.arraycopy(src, 0, padded, 30, 40);
+        keys.convert(padded, 0, 100, plug, all);
+        keys.convert(src, 30, 40, plug, part);
+        for (int k = 0; k < 40; k += 1) {
+            assertEquals(all[30 + k], part[k]);
+            assertEquals(src[k], keys.core(30 + k,
+                                           keys.core(30 + k, src[k])));
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void checkBounds() {
+        Keystream keys = new Keystream(navalMachine(), 10);
+        keys.convert(new int[5], 6, 5, null, new int[5]);
+    }
+
+    /** Return the settings of the non-reflector rotors of M, as letters. */
+    private String settings(Machine m) {
+        StringBuilder result = new StringBuilder();
+        for (int x = 1; x < m.numRotors(); x += 1) {
+            result.append(UPPER.toChar(m.rotors()[x].setting()));
+        }
+        return result.toString();
+    }
+
+}
@@ -0,0 +1,193 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** A load generator for EnigmaServer.  Usage:
+ *
+ *      java enigma.Main --load ADDRESS SETTINGS [CONNECTIONS [REQUESTS
+ *                                               [DEPTH [LENGTH]]]]
+ *
+ *  Opens CONNECTIONS (default 4) concurrent sessions with the server at
+ *  ADDRESS (as for EnigmaServer), sends each the settings line SETTINGS
+ *  (which must be quoted as one argument), and then sends REQUESTS
+ *  (default 10000) random upper-case messages of LENGTH (default 100)
+ *  letters on each, keeping up to DEPTH (default 16) requests in flight
+ *  per connection.  Reports the overall throughput and the median, 99th
+ *  percentile, and maximum time from sending a request to receiving its
+ *  reply.  The server's default configuration must include the letters
+ *  A-Z.
+ *  @author Thomas Nguyen
+ */
+final class LoadClient {
+
+    /** Not instantiable. */
+    private LoadClient() {
+    }
+
+    /** Run the load generator with ARGS, as described above. */
+    static void run(String... args) {
+        if (args.length < 2 || args.length > 6) {
+            throw error("Usage: --load ADDRESS SETTINGS [CONNECTIONS "
+                        + "[REQUESTS [DEPTH [LENGTH]]]]");
+        }
+        SocketAddress address = EnigmaServer.address(args[0]);
+        String settings = args[1];
+        int connections = argument(args, 2, 4),
+            requests = argument(args, 3, 10000),
+            depth = argument(args, 4, 16),
+            length = argument(args, 5, 100);
+
+        ExecutorService pool = Executors.newFixedThreadPool(connections);
+        List<Future<long[]>> results = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int k = 0; k < connections; k++) {
+            long seed = k;
+            results.add(pool.submit(() -> session(address, settings,
+                                                  requests, depth, length,
+                                                  seed)));
+        }
+        long[] latencies = new long[connections * requests];
+        try {
+            for (int k = 0; k < connections; k++) {
+                System.arraycopy(results.get(k).get(), 0, latencies,
+                                 k * requests, requests);
+            }
+        } catch (ExecutionException excp) {
+            throw error("load failed: %s", excp.getCause().getMessage());
+        } catch (InterruptedException excp) {
+            throw error("interrupted");
+        } finally {
+            pool.shutdownNow();
+        }
+        double seconds = (System.nanoTime() - start) / NANOS_PER_SECOND;
+        Arrays.sort(latencies);
+        System.out.printf("connections %d, requests %d, depth %d, "
+                          + "length %d%n",
+                          connections, latencies.length, depth, length);
+        System.out.printf("elapsed %.3f s, %.0f requests/s, "
+                          + "%.2f M chars/s%n",
+                          seconds, latencies.length / seconds,
+                          (double) latencies.length * length / seconds
+                          / MILLION);
+        System.out.printf("latency p50 %.3f ms, p99 %.3f ms, "
+                          + "max %.3f ms%n",
+                          millis(latencies, 0.5), millis(latencies, 0.99),
+                          millis(latencies, 1.0));
+    }
+
+    /** Run one session with the server at ADDRESS, sending SETTINGS and
+     *  then REQUESTS messages of LENGTH letters generated from SEED, with
+     *  up to DEPTH in flight.  Return the latency of each request in
+     *  nanoseconds. */
+    private static long[] session(SocketAddress address, String settings,
+                                  int requests, int depth, int length,
+                                  long seed) throws IOException {
+        String[] messages = messages(length, seed);
+        long[] latencies = new long[requests];
+        long[] sent = new long[depth];
+        try (SocketChannel channel = SocketChannel.open(address)) {
+            if (address instanceof InetSocketAddress) {
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            }
+            BufferedReader in =
+                new BufferedReader(new InputStreamReader(
+                                       Channels.newInputStream(channel),
+                                       StandardCharsets.UTF_8));
+            Writer out =
+                new BufferedWriter(new OutputStreamWriter(
+                                       Channels.newOutputStream(channel),
+                                       StandardCharsets.UTF_8));
+            out.write(settings);
+            out.write('\n');
+            int sentCount = 0;
+            for (int received = 0; received < requests; received++) {
+                while (sentCount < requests
+                       && sentCount - received < depth) {
+                    sent[sentCount % depth] = System.nanoTime();
+                    out.write(messages[sentCount % messages.length]);
+                    out.write('\n');
+                    sentCount += 1;
+                }
+                out.flush();
+                String reply = in.readLine();
+                if (reply == null || reply.startsWith("Error")) {
+                    throw error("server replied %s", reply);
+                }
+                latencies[received] =
+                    System.nanoTime() - sent[received % depth];
+            }
+        }
+        return latencies;
+    }
+
+    /** Return some random upper-case messages of LENGTH letters generated
+     *  from SEED. */
+    private static String[] messages(int length, long seed) {
+        Random random = new Random(seed);
+        String[] result = new String[MESSAGES];
+        for (int k = 0; k < result.length; k++) {
+            char[] letters = new char[length];
+            for (int j = 0; j < length; j++) {
+                letters[j] = (char) ('A' + random.nextInt(LETTERS));
+            }
+            result[k] = new String(letters);
+        }
+        return result;
+    }
+
+    /** Return ARGS[K] as a positive integer, or DEFAULTVALUE if there is
+     *  no ARGS[K]. */
+    private static int argument(String[] args, int k, int defaultValue) {
+        if (k >= args.length) {
+            return defaultValue;
+        }
+        try {
+            int result = Integer.parseInt(args[k]);
+            if (result > 0) {
+                return result;
+            }
+        } catch (NumberFormatException excp) {
+            /* Fall through to the error. */
+        }
+        throw error("bad count: %s", args[k]);
+    }
+
+    /** Return the FRACTION quantile of the sorted nanosecond times
+     *  LATENCIES, in milliseconds. */
+    private static double millis(long[] latencies, double fraction) {
+        int k = (int) Math.ceil(fraction * latencies.length) - 1;
+        return latencies[Math.max(0, k)] / NANOS_PER_MILLI;
+    }
+
+    /** Number of distinct messages each session sends. */
+    private static final int MESSAGES = 64;
+    /** Number of upper-case letters. */
+    private static final int LETTERS = 26;
+    /** Nanoseconds per second. */
+    private static final double NANOS_PER_SECOND = 1e9;
+    /** Nanoseconds per millisecond. */
+    private static final double NANOS_PER_MILLI = 1e6;
+    /** One million. */
+    private static final double MILLION = 1e6;
+}
@@ -1,8 +1,14 @@
 package enigma;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import static enigma.EnigmaException.*;
 
 /** Class that represents a complete enigma machine.
  *  @author Thomas Nguyen
@@ -18,21 +24,96 @@ class Machine {
     private int _pawls;
     /** Return the number of rotor slots I have. */
     private Collection<Rotor> _allRotors;
+    /** The rotors of _allRotors by name: unmodifiable, and shared with my
+     *  copies. */
+    private Map<String, Rotor> _rotorsByName;
+    /** My own copies, by name, of the rotors I have had inserted. */
+    private HashMap<String, Rotor> _ownRotors;
     /** Return the plugbaord I have. */
     private Permutation _plugboard;
     /** Return the number of rotors I have. */
     private Rotor[] _rotors;
-    /** Return the number of rotors to move. */
-    private HashSet<Rotor> _moveRotors;
+    /** Entry x is true iff the rotor in slot x moves on this key press. */
+    private boolean[] _moving;
+    /** The stepping table for my current rotor order, or null if I step
+     *  by checking notches. */
+    private SteppingTable _stepping;
+    /** The rotating slots of _stepping. */
+    private int[] _steppingSlots;
+    /** Number of key presses since my rotors were inserted, up to
+     *  STEPPING_THRESHOLD. */
+    private int _steps;
+    /** Stepping tables by rotor order, shared with my copies. */
+    private Map<String, SteppingTable> _steppingTables;
+
+    /** Step using TABLE, which must be for my current rotor order. */
+    void useSteppingTable(SteppingTable table) {
+        _stepping = table;
+        _steppingSlots = table.slots();
+    }
+
+    /** Start stepping with a table for my current rotor order, built if
+     *  need be, unless it would be too large. */
+    private void useSteppingTable() {
+        long states = 1;
+        for (int x = 1; x < _rotors.length && states <= MAX_TABLE; x++) {
+            if (_rotors[x].rotates()) {
+                states *= _alphabet.size();
+            }
+        }
+        if (states > MAX_TABLE) {
+            return;
+        }
+        StringBuilder order = new StringBuilder();
+        for (Rotor r : _rotors) {
+            order.append(r.name()).append(' ');
+        }
+        useSteppingTable(_steppingTables.computeIfAbsent(
+                             order.toString(), k -> new SteppingTable(this)));
+    }
+
+    /** Number of key presses with one rotor order after which I step with
+     *  a table: enough that building one costs little by comparison. */
+    private static final int STEPPING_THRESHOLD = 1 << 16;
+    /** Largest number of states of a table that I build for myself. */
+    private static final int MAX_TABLE = 1 << 20;
     /** A new Enigma machine with alphabet ALPHA, 1 < NUMROTORS rotor slots,
      *  and 0 <= PAWLS < NUMROTORS pawls.  ALLROTORS contains all the
-     *  available rotors. */
+     *  available rotors.  These are not changed: I use copies of them,
+     *  made as they are first inserted. */
     Machine(Alphabet alpha, int numRotors, int pawls,
             Collection<Rotor> allRotors) {
+        this(alpha, numRotors, pawls, allRotors, byName(allRotors));
+        _steppingTables = new ConcurrentHashMap<>();
+    }
+
+    /** A new Enigma machine with alphabet ALPHA, NUMROTORS slots, PAWLS
+     *  pawls and available rotors ALLROTORS, whose rotors by name are
+     *  ROTORSBYNAME. */
+    private Machine(Alphabet alpha, int numRotors, int pawls,
+                    Collection<Rotor> allRotors,
+                    Map<String, Rotor> rotorsByName) {
         _alphabet = alpha;
         _numRotors = numRotors;
         _pawls = pawls;
         _allRotors = allRotors;
+        _rotorsByName = rotorsByName;
+        _ownRotors = new HashMap<>();
+    }
+
+    /** Return an unmodifiable map of ROTORS by name, the last of each
+     *  name winning. */
+    private static Map<String, Rotor> byName(Collection<Rotor> rotors) {
+        HashMap<String, Rotor> result = new HashMap<>();
+        for (Rotor r : rotors) {
+            result.put(r.name(), r);
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
     }
 
     /** Return the number of rotor slots I have. */
@@ -44,10 +125,6 @@ class Machine {
         return _rotors;
     }
     /** Return the number of rotor slots I have. */
-    HashSet<Rotor> moveRotors() {
-        return _moveRotors;
-    }
-    /** Return the number of rotor slots I have. */
     int numRotors() {
         return _numRotors;
     }
@@ -58,55 +135,111 @@ class Machine {
     }
 
     /**
-     * Return the all Rotors I have.
+     * Return the all Rotors I have, as given when I was made: the rotors
+     * in my slots are my own copies of these.
      */
     Collection<Rotor> allRotors() {
         return _allRotors;
     }
 
+    /** Return a new machine with the same alphabet, slots, pawls and
+     *  rotors as me, in my current state, but with its own copies of the
+     *  rotors I have had inserted, so that it may be used independently of
+     *  (and concurrently with) me.  The rotors I have never had inserted
+     *  are shared, unchanged, as they are with any machine. */
+    Machine copy() {
+        Machine result = new Machine(_alphabet, _numRotors, _pawls,
+                                     _allRotors, _rotorsByName);
+        for (Map.Entry<String, Rotor> e : _ownRotors.entrySet()) {
+            result._ownRotors.put(e.getKey(), e.getValue().copy());
+        }
+        if (_rotors != null) {
+            result._rotors = new Rotor[_rotors.length];
+            result._moving = new boolean[_rotors.length];
+            for (int x = 0; x < _rotors.length; x++) {
+                result._rotors[x] = _rotors[x] == null ? null
+                    : result._ownRotors.get(_rotors[x].name());
+            }
+        }
+        result._plugboard = _plugboard;
+        result._stepping = _stepping;
+        result._steppingSlots = _steppingSlots;
+        result._steps = _steps;
+        result._steppingTables = _steppingTables;
+        return result;
+    }
+
     /** Set my rotor slots to the rotors named ROTORS from my set of
      *  available rotors (ROTORS[0] names the reflector).
-     *  Initially, all rotors are set at their 0 setting. */
+     *  Initially, all rotors are set at their 0 setting.  The wiring of
+     *  each rotor is compiled here, the first time it is inserted.  A
+     *  rotor inserted again keeps the setting and ring it last had. */
     void insertRotors(String[] rotors) {
         _rotors = new Rotor[rotors.length];
-        HashMap<String, Rotor> mapping = new HashMap<>();
+        _moving = new boolean[rotors.length];
         if (rotors.length != _numRotors) {
             throw new AssertionError("bad length");
         }
-        for (Rotor x : _allRotors) {
-            mapping.put(x.name(), x);
-        }
         for (int x = 0; x < rotors.length; x++) {
-            _rotors[x] = mapping.get(rotors[x]);
+            _rotors[x] = ownRotor(rotors[x]);
         }
         if (!_rotors[0].reflecting()) {
             throw new AssertionError("first rotor is not reflector");
         }
+        _stepping = null;
+        _steps = 0;
+    }
+
+    /** Return my own copy of the rotor named NAME, made if need be, or
+     *  null if I have no such rotor. */
+    private Rotor ownRotor(String name) {
+        Rotor result = _ownRotors.get(name);
+        if (result == null) {
+            Rotor rotor = _rotorsByName.get(name);
+            if (rotor == null) {
+                return null;
+            }
+            result = rotor.copy();
+            result.useShiftedTables();
+            _ownRotors.put(name, result);
+        }
+        return result;
     }
 
     /** Set my rotors according to SETTING, which must be a string of
      *  numRotors()-1 characters in my alphabet. The first letter refers
      *  to the leftmost rotor setting (not counting the reflector).  */
     void setRotors(String setting) {
-        if (setting.length() != _numRotors - 1) {
+        int[] settings = indices(setting);
+        if (settings.length != _numRotors - 1) {
             throw new EnigmaException("incorrect setting length");
         }
-        for (int x = 0; x < setting.length(); x++) {
-            char setnum = setting.charAt(x);
-            _rotors[x + 1].set(setnum);
+        for (int x = 0; x < settings.length; x++) {
+            _rotors[x + 1].set(settings[x]);
         }
     }
 
     /** Set the _ring to RINGS. */
     void setAlphabetRing(String rings) {
-        if (rings.length() != _numRotors - 1) {
+        int[] settings = indices(rings);
+        if (settings.length != _numRotors - 1) {
             throw new EnigmaException("incorrect ring length");
         }
-        for (int x = 0; x < rings.length(); x++) {
-            _rotors[x + 1].setRing(rings.charAt(x));
+        for (int x = 0; x < settings.length; x++) {
+            _rotors[x + 1].setRing(settings[x]);
         }
     }
 
+    /** Return the indices in my alphabet of the characters of S, taking
+     *  characters not in the alphabet as index 0. */
+    private int[] indices(String s) {
+        int[] result = s.codePoints().toArray();
+        for (int x = 0; x < result.length; x++) {
+            result[x] = Math.max(0, _alphabet.indexOf(result[x]));
+        }
+        return result;
+    }
+
     /** Set the plugboard to PLUGBOARD. */
     void setPlugboard(Permutation plugboard) {
         _plugboard = plugboard;
@@ -116,10 +249,179 @@ class Machine {
      *  index in the range 0..alphabet size - 1), after first advancing
      *  the machine. */
     int convert(int c) {
+        Metrics.CHARACTERS.add(1);
+        step();
+        return translate(c);
+    }
+
+    /** Advance my rotors as for one key press. */
+    void step() {
+        SteppingTable table = _stepping;
+        if (table != null) {
+            int mask = table.moves(table.state(this));
+            if (Metrics.ENABLED) {
+                recordTablePress(mask);
+            }
+            for (int j = _steppingSlots.length - 1; mask != 0; j--) {
+                if ((mask & 1) != 0) {
+                    _rotors[_steppingSlots[j]].advance();
+                }
+                mask >>>= 1;
+            }
+            return;
+        }
+        if (_steps < STEPPING_THRESHOLD && ++_steps == STEPPING_THRESHOLD) {
+            useSteppingTable();
+        }
         movingRotors();
-        for (Rotor y : _moveRotors) {
-            y.advance();
+        if (Metrics.ENABLED) {
+            recordPress(moveMask());
+        }
+        for (int x = 1; x < _rotors.length; x++) {
+            if (_moving[x]) {
+                _rotors[x].advance();
+            }
+        }
+    }
+
+    /** Count a key press that moves the rotors given by MASK, as returned
+     *  by SteppingTable.moves, before they move, in Metrics. */
+    private void recordTablePress(int mask) {
+        int slots = 0;
+        for (int j = 0; j < _steppingSlots.length; j++) {
+            if ((mask & (1 << (_steppingSlots.length - 1 - j))) != 0) {
+                slots |= 1 << _steppingSlots[j];
+            }
         }
+        recordPress(slots);
+    }
+
+    /** Count a key press that moves the rotors in the slots whose bits
+     *  are set in MASK, before they move, in Metrics. */
+    private void recordPress(int mask) {
+        Metrics.PRESSES.add(1);
+        Metrics.ROTOR_STEPS.add(Integer.bitCount(mask));
+        for (int x = 1; x < _rotors.length - 1; x++) {
+            if ((mask & (1 << x)) != 0 && (mask & (2 << x)) != 0
+                && !_rotors[x + 1].atNotch()) {
+                Metrics.DOUBLE_STEPS.add(1);
+            }
+        }
+    }
+
+    /** Advance my rotors as for N key presses, without converting
+     *  anything.  This takes time bounded by the number of states of my
+     *  slower rotors, independent of N: whole revolutions of the
+     *  rightmost rotor are applied as a function on the states of the
+     *  other rotors, whose eventual cycle is found and reduced modulo its
+     *  period; within a revolution, runs of key presses that move only
+     *  the rightmost rotor are taken in one jump. */
+    void skip(long n) {
+        if (n < 0) {
+            throw error("cannot skip backwards");
+        }
+        int size = _alphabet.size();
+        if (!_rotors[_rotors.length - 1].rotates()) {
+            for (; n > 0; n -= 1) {
+                step();
+            }
+            return;
+        }
+        revolve(n / size);
+        press(n % size);
+    }
+
+    /** Advance my rotors as for N key presses, jumping over runs of
+     *  presses that move only the rightmost rotor. */
+    private void press(long n) {
+        int last = _rotors.length - 1;
+        Rotor fast = _rotors[last], next = _rotors[last - 1];
+        while (n > 0) {
+            if (fast.atNotch() || next.atNotch()) {
+                step();
+                n -= 1;
+            } else {
+                long k = Math.min(n, fast.distanceToNotch());
+                fast.set((int) ((fast.setting() + k) % _alphabet.size()));
+                n -= k;
+            }
+        }
+    }
+
+    /** Advance my rotors by COUNT revolutions of the rightmost rotor
+     *  (COUNT * alphabet size key presses). */
+    private void revolve(long count) {
+        int size = _alphabet.size();
+        int bits = Integer.SIZE - Integer.numberOfLeadingZeros(size - 1);
+        int slow = 0;
+        for (int x = 1; x < _rotors.length - 1; x++) {
+            if (_rotors[x].rotates()) {
+                slow += 1;
+            }
+        }
+        if (slow * bits >= Long.SIZE) {
+            for (; count > 0; count -= 1) {
+                press(size);
+            }
+            return;
+        }
+        HashMap<Long, Long> seen = new HashMap<>();
+        ArrayList<Long> states = new ArrayList<>();
+        for (long i = 0; i < count; i++) {
+            long state = slowState(bits);
+            Long first = seen.putIfAbsent(state, i);
+            if (first != null) {
+                long period = i - first;
+                setSlowState(states.get((int) (first
+                                               + (count - first) % period)),
+                             bits);
+                return;
+            }
+            states.add(state);
+            press(size);
+        }
+    }
+
+    /** Return the settings of my rotating rotors other than the
+     *  rightmost, packed BITS bits apiece into a long. */
+    private long slowState(int bits) {
+        long result = 0;
+        for (int x = 1; x < _rotors.length - 1; x++) {
+            if (_rotors[x].rotates()) {
+                result = (result << bits) | _rotors[x].setting();
+            }
+        }
+        return result;
+    }
+
+    /** Set the settings of my rotating rotors other than the rightmost
+     *  from STATE, as packed by slowState(BITS). */
+    private void setSlowState(long state, int bits) {
+        for (int x = _rotors.length - 2; x > 0; x--) {
+            if (_rotors[x].rotates()) {
+                _rotors[x].set((int) (state & ((1L << bits) - 1)));
+                state >>>= bits;
+            }
+        }
+    }
+
+    /** Return the slots whose rotors move on the next key press, as a
+     *  mask in which bit x is set iff the rotor in slot x moves. */
+    int moveMask() {
+        movingRotors();
+        int result = 0;
+        for (int x = 1; x < _rotors.length; x++) {
+            if (_moving[x]) {
+                result |= 1 << x;
+            }
+        }
+        return result;
+    }
+
+    /** Returns the result of passing the input character C (as an index in
+     *  the range 0..alphabet size - 1) through my plugboard and rotors in
+     *  their current positions, without advancing the machine. */
+    int translate(int c) {
         if (_plugboard != null) {
             c = _plugboard.permute(_plugboard.wrap(c));
         }
@@ -137,44 +439,69 @@ class Machine {
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
-        char[] message = new char[msg.length()];
-        for (int x = 0; x < msg.length(); x++) {
-            int integer = _alphabet.toInt(msg.charAt(x));
-            int y = convert(integer);
-            message[x] = _alphabet.toChar(y);
+        int[] message = msg.codePoints().toArray();
+        for (int x = 0; x < message.length; x++) {
+            int integer = Math.max(0, _alphabet.indexOf(message[x]));
+            message[x] = _alphabet.toCodePoint(convert(integer));
         }
-        return new String(message);
+        return new String(message, 0, message.length);
+    }
+
+    /** Convert the LEN code points of SRC starting at SRCPOS, storing the
+     *  resulting code points in DEST starting at DESTPOS, and updating the
+     *  state of the rotors accordingly.  SRC and DEST may be the same
+     *  array.  Each code point must be in my alphabet. */
+    void convert(int[] src, int srcPos, int[] dest, int destPos, int len) {
+        for (int x = 0; x < len; x++) {
+            int c = _alphabet.indexOf(src[srcPos + x]);
+            if (c < 0) {
+                throw error("character %s is not in the alphabet",
+                            new String(Character.toChars(src[srcPos + x])));
+            }
+            dest[destPos + x] = _alphabet.toCodePoint(convert(c));
+        }
+    }
+
+    /** Return a stream of the conversions of the code points CODEPOINTS,
+     *  each of which must be in my alphabet.  The stream updates my rotors
+     *  as it is consumed, and so must be sequential and consumed at most
+     *  once. */
+    IntStream convert(IntStream codePoints) {
+        return codePoints.sequential().map(cp -> {
+            int c = _alphabet.indexOf(cp);
+            if (c < 0) {
+                throw error("character %s is not in the alphabet",
+                            new String(Character.toChars(cp)));
+            }
+            return _alphabet.toCodePoint(convert(c));
+        });
     }
 
     /** Common alphabet of my rotors. */
     private final Alphabet _alphabet;
 
-    /**Make a HashSet that includes all the Rotors that need to be moved. */
+    /** Set _moving to show which of my rotors move on the next key
+     *  press. */
     private void movingRotors() {
-        HashSet<Rotor> moveRotors = new HashSet<>();
-        _moveRotors = moveRotors;
-        for (int x = _rotors.length - 1; x > 0; x--) {
-            if (x == _rotors.length - 1) {
-                moveRotors.add(_rotors[x]);
-
-            } else if (moveRotors.contains(_rotors[x + 1])) {
-                if (_rotors[_rotors.length - 2].atNotch()) {
-                    if (_rotors[_rotors.length - 2].rotates()
-                            && !_rotors[_rotors.length - 2].atNotch()) {
-                        moveRotors.add(_rotors[_rotors.length - 2]);
-                    }
-                    if (_rotors[_rotors.length - 2].rotates()
-                            && _rotors[_rotors.length - 2].atNotch()
-                            && _rotors[_rotors.length - 3].rotates()) {
-                        moveRotors.add(_rotors[_rotors.length - 2]);
+        boolean[] moving = _moving;
+        int last = _rotors.length - 1;
+        for (int x = last; x > 0; x--) {
+            moving[x] = false;
+            if (x == last) {
+                moving[x] = true;
+            } else if (moving[x + 1]) {
+                if (_rotors[last - 1].atNotch()) {
+                    if (_rotors[last - 1].rotates()
+                            && _rotors[last - 2].rotates()) {
+                        moving[last - 1] = true;
                     }
                 }
                 if (_rotors[x + 1].atNotch() && _rotors[x].rotates()) {
                     if (_rotors[x].atNotch() && _rotors[x - 1].rotates()) {
-                        moveRotors.add(_rotors[x]);
+                        moving[x] = true;
                     }
                     if (!_rotors[x].atNotch()) {
-                        moveRotors.add(_rotors[x]);
+                        moving[x] = true;
                     }
                 }
             }
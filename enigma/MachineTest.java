@@ -0,0 +1,98 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Machine class.
+ *  @author Thomas Nguyen
+ */
+public class MachineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Check that skipping N presses from every one of SAMPLES random
+     *  states of M matches stepping, using RANDOM. */
+    private void checkSkips(Machine m, int samples, long n, Random random) {
+        int size = m.alphabet().size();
+        for (int k = 0; k < samples; k++) {
+            for (int x = 1; x < m.numRotors(); x++) {
+                m.rotors()[x].set(random.nextInt(size));
+            }
+            Machine stepped = m.copy();
+            long presses = random.nextInt((int) n);
+            for (long p = 0; p < presses; p++) {
+                stepped.step();
+            }
+            m.skip(presses);
+            assertEquals(settings(stepped), settings(m));
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkSkipNaval() {
+        checkSkips(navalMachine(), 200, 40000, new Random(35));
+    }
+
+    @Test
+    public void checkSkipNotches() {
+        Random random = new Random(36);
+        Alphabet alpha = new Alphabet("ABCDEFG");
+        checkSkips(machine(alpha, "AD", "C", "BF"), 300, 3000, random);
+        checkSkips(machine(alpha, "", "A", "ABCDEFG"), 300, 3000, random);
+        checkSkips(machine(alpha, "G", "G", "G", "G"), 300, 10000, random);
+        checkSkips(machine(alpha, "E"), 100, 100, random);
+    }
+
+    @Test
+    public void checkSkipFar() {
+        Machine m = navalMachine();
+        Machine stepped = navalMachine();
+        long n = 3_000_000L;
+        for (long p = 0; p < n; p++) {
+            stepped.step();
+        }
+        m.skip(n);
+        assertEquals(settings(stepped), settings(m));
+        m.skip(1_000_000_000_000L);
+        m.skip(1);
+    }
+
+    @Test
+    public void checkCopy() {
+        Machine m = navalMachine();
+        Main.setUp(m, "* B Beta III II I AXLE HLMP (HQ) (EX)");
+        m.convert("FROMHISSHOULDERHIAWATHA");
+        Machine c = m.copy();
+        assertSame(m.allRotors(), c.allRotors());
+        for (int x = 0; x < m.numRotors(); x++) {
+            assertNotSame(m.rotors()[x], c.rotors()[x]);
+            assertFalse(m.allRotors().contains(m.rotors()[x]));
+            assertEquals(m.rotors()[x].ring(), c.rotors()[x].ring());
+        }
+        assertEquals(settings(m), settings(c));
+        String msg = "TOOKTHECAMERAOFROSEWOOD";
+        assertEquals(m.convert(msg), c.convert(msg));
+
+        c.insertRotors(new String[] { "B", "Beta", "I", "III", "II" });
+        c.setRotors("AAAA");
+        assertEquals(UPPER.toInt('M'), c.rotors()[4].ring());
+        assertEquals(settings(m), settings(m.copy()));
+        for (Rotor r : m.allRotors()) {
+            assertEquals(r.name(), 0, r.setting());
+            assertEquals(r.name(), 0, r.ring());
+        }
+    }
+
+}
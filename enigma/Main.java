@@ -18,10 +18,6 @@ import static enigma.EnigmaException.*;
  *  @author Thomas Nguyen
  */
 public final class Main {
-    /**
-     * Initialize everyRotor as collection.
-     */
-    private Collection<Rotor> _everyRotor = new HashSet<>();
     /** Process a sequence of encryptions and decryptions, as
      *  specified by ARGS, where 1 <= ARGS.length <= 3.
      *  ARGS[0] is the name ofia configuration file.
@@ -30,10 +26,49 @@ public final class Main {
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
      *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  otherwise with code 1.  If ARGS[0] is --binary, --server, --load,
+     *  --checkpoint, --resume, --slice, --batch, --search,
+     *  --search-worker, --depth, --pass-through, or --stats, the
+     *  remaining arguments are instead as described in BinaryMode,
+     *  EnigmaServer, LoadClient, Checkpoint, Slice, Batch,
+     *  SearchCoordinator, SearchWorker, DepthFinder, PassThroughMode, or
+     *  Statistics, respectively. */
     public static void main(String... args) {
+        if (Metrics.ENABLED) {
+            Runtime.getRuntime().addShutdownHook(
+                new Thread(() -> Metrics.dump(System.err)));
+        }
         try {
-            new Main(args).process();
+            String[] rest = Arrays.copyOfRange(args, Math.min(1, args.length),
+                                               args.length);
+            if (args.length > 0 && args[0].equals("--binary")) {
+                BinaryMode.run(rest);
+            } else if (args.length > 0 && args[0].equals("--server")) {
+                EnigmaServer.run(rest);
+            } else if (args.length > 0 && args[0].equals("--load")) {
+                LoadClient.run(rest);
+            } else if (args.length > 0 && args[0].equals("--checkpoint")) {
+                Checkpoint.run(false, rest);
+            } else if (args.length > 0 && args[0].equals("--resume")) {
+                Checkpoint.run(true, rest);
+            } else if (args.length > 0 && args[0].equals("--slice")) {
+                Slice.run(rest);
+            } else if (args.length > 0 && args[0].equals("--batch")) {
+                Batch.run(rest);
+            } else if (args.length > 0 && args[0].equals("--search")) {
+                SearchCoordinator.run(rest);
+            } else if (args.length > 0
+                       && args[0].equals("--search-worker")) {
+                SearchWorker.run(rest);
+            } else if (args.length > 0 && args[0].equals("--depth")) {
+                DepthFinder.run(rest);
+            } else if (args.length > 0 && args[0].equals("--stats")) {
+                Statistics.run(rest);
+            } else if (args.length > 0 && args[0].equals("--pass-through")) {
+                PassThroughMode.run(rest);
+            } else {
+                new Main(args).process();
+            }
             return;
         } catch (EnigmaException excp) {
             System.err.printf("Error: %s%n", excp.getMessage());
@@ -51,6 +86,7 @@ public final class Main {
 
         if (args.length > 1) {
             _input = getInput(args[1]);
+            _pipelined = true;
         } else {
             _input = new Scanner(System.in);
         }
@@ -62,8 +98,30 @@ public final class Main {
         }
     }
 
+    /** A Main that reads its machine configuration from CONFIG, interning
+     *  its alphabet and permutations in REGISTRY unless it is null, for
+     *  use by readConfig(String, ConfigRegistry). */
+    private Main(Scanner config, ConfigRegistry registry) {
+        _config = config;
+        _registry = registry;
+    }
+
+    /** Return an Enigma machine configured from the contents of the
+     *  configuration file named NAME, for use by tools other than main. */
+    static Machine readConfig(String name) {
+        return readConfig(name, null);
+    }
+
+    /** As for readConfig(NAME), but interning the machine's alphabet and
+     *  permutations in REGISTRY, unless it is null. */
+    static Machine readConfig(String name, ConfigRegistry registry) {
+        try (Scanner config = getInput(name)) {
+            return new Main(config, registry).readConfig();
+        }
+    }
+
     /** Return a Scanner reading from the file named NAME. */
-    private Scanner getInput(String name) {
+    private static Scanner getInput(String name) {
         try {
             return new Scanner(new File(name));
         } catch (IOException excp) {
@@ -72,7 +130,7 @@ public final class Main {
     }
 
     /** Return a PrintStream writing to the file named NAME. */
-    private PrintStream getOutput(String name) {
+    private static PrintStream getOutput(String name) {
         try {
             return new PrintStream(new File(name));
         } catch (IOException excp) {
@@ -85,28 +143,61 @@ public final class Main {
      *  results to _output. */
     private void process() {
         Machine m = readConfig();
+        if (_pipelined) {
+            new Pipeline(m, _input, _output).run();
+        } else {
+            process(m, _input, _output);
+        }
+    }
+
+    /** Apply M to the messages in INPUT, sending the results to OUTPUT,
+     *  as process does. */
+    static void process(Machine m, Scanner input, PrintStream output) {
         boolean initial = true;
-        while (_input.hasNextLine()) {
-            String line = _input.nextLine();
-            while (line.isEmpty()) {
-                line = " ";
-            }
-            if (line.charAt(0) != '*' && initial) {
-                throw new EnigmaException("wrong config");
-            }
+        while (input.hasNextLine()) {
+            processLine(m, input.nextLine(), initial, output);
             initial = false;
-            if (line.charAt(0) == '*') {
-                setUp(m, line);
-            } else {
-                String msg = line.replace(" ", "");
-                printMessageLine(m.convert(msg));
-            }
         }
     }
 
+    /** Apply the line LINE of an input file to M, as process does: a
+     *  settings line sets M up, and any other line is a message, whose
+     *  conversion is printed on OUTPUT.  INITIAL is true iff LINE is the
+     *  first line of its input, which must be a settings line. */
+    static void processLine(Machine m, String line, boolean initial,
+                            PrintStream output) {
+        while (line.isEmpty()) {
+            line = " ";
+        }
+        if (settingsLine(line, initial)) {
+            setUp(m, line);
+        } else {
+            Metrics.ConversionEvent event = new Metrics.ConversionEvent();
+            event.begin();
+            String msg = line.replace(" ", "");
+            String result = m.convert(msg);
+            event.characters = result.length();
+            event.commit();
+            printMessageLine(result, output);
+        }
+    }
+
+    /** Return true iff LINE, which is not empty, is a settings line.
+     *  INITIAL is true iff LINE is the first line of its input, which must
+     *  be a settings line. */
+    static boolean settingsLine(String line, boolean initial) {
+        if (line.charAt(0) != '*' && initial) {
+            throw new EnigmaException("wrong config");
+        }
+        return line.charAt(0) == '*';
+    }
+
     /** Return an Enigma machine configured from the contents of configuration
      *  file _config. */
     private Machine readConfig() {
+        long start = Metrics.CONFIG.start();
+        Metrics.ConfigLoadEvent event = new Metrics.ConfigLoadEvent();
+        event.begin();
         try {
             Collection<Rotor> everyRotor = new HashSet<>();
             String alphabet = _config.next();
@@ -115,15 +206,22 @@ public final class Main {
                 throw new EnigmaException("Incorrect Format");
             }
             _alphabet = new Alphabet(alphabet);
+            if (_registry != null) {
+                _alphabet = _registry.intern(_alphabet);
+            }
             int numRotors = _config.nextInt();
             int pawls = _config.nextInt();
             while (_config.hasNext()) {
                 everyRotor.add(this.readRotor());
             }
-            _everyRotor = everyRotor;
+            event.alphabetSize = _alphabet.size();
+            event.rotors = everyRotor.size();
+            event.commit();
             return new Machine(_alphabet, numRotors, pawls, everyRotor);
         } catch (NoSuchElementException excp) {
             throw error("configuration file truncated");
+        } finally {
+            Metrics.CONFIG.stop(start);
         }
     }
 
@@ -136,16 +234,16 @@ public final class Main {
             while (_config.hasNext("\\(.*\\)")) {
                 cycles.append(_config.next());
             }
+            Permutation perm = new Permutation(cycles.toString(), _alphabet);
+            if (_registry != null) {
+                perm = _registry.intern(perm);
+            }
             if (type.charAt(0) == 'M') {
-                return new MovingRotor(name,
-                        new Permutation(cycles.toString(),
-                                _alphabet), type.substring(1));
+                return new MovingRotor(name, perm, type.substring(1));
             } else if (type.charAt(0) == 'N') {
-                return new FixedRotor(name,
-                        new Permutation(cycles.toString(), _alphabet));
+                return new FixedRotor(name, perm);
             } else if (type.charAt(0) == 'R') {
-                return new Reflector(name,
-                        new Permutation(cycles.toString(), _alphabet));
+                return new Reflector(name, perm);
             } else {
                 throw new EnigmaException("wrong rotor");
             }
@@ -156,7 +254,22 @@ public final class Main {
 
     /** Set M according to the specification given on SETTINGS,
      *  which must have the format specified in the assignment. */
-    private void setUp(Machine M, String settings) {
+    static void setUp(Machine M, String settings) {
+        long start = Metrics.SETUP.start();
+        Metrics.SettingsEvent event = new Metrics.SettingsEvent();
+        event.begin();
+        try {
+            applySettings(M, settings);
+            Metrics.SETTINGS.add(1);
+        } finally {
+            event.settings = settings;
+            event.commit();
+            Metrics.SETUP.stop(start);
+        }
+    }
+
+    /** Set M according to SETTINGS, as setUp does. */
+    private static void applySettings(Machine M, String settings) {
         String[] tokens = settings.split(" ");
         String[] rotors = Arrays.copyOfRange(tokens, 1, M.numRotors() + 1);
         String rings = "";
@@ -164,8 +277,8 @@ public final class Main {
         Boolean checkring = false;
         checkNames(M, rotors);
         checkRepeat(rotors);
-        reflect(rotors);
-        if (rotors.length - 1 != tokens[M.numRotors() + 1].length()) {
+        reflect(M, rotors);
+        if (rotors.length - 1 != symbols(tokens[M.numRotors() + 1])) {
             throw error("Number of settings is not equal to number of rotors");
         }
         M.insertRotors(rotors);
@@ -182,9 +295,9 @@ public final class Main {
             String[] plugCycles = Arrays.copyOfRange(tokens,
                     M.numRotors() + 1, tokens.length);
             String cycles = String.join(",", plugCycles);
-            M.setPlugboard(new Permutation(cycles, _alphabet));
+            M.setPlugboard(new Permutation(cycles, M.alphabet()));
         } else {
-            if (tokens[M.numRotors() + 1].length() != M.numRotors() - 1) {
+            if (symbols(tokens[M.numRotors() + 1]) != M.numRotors() - 1) {
                 throw new EnigmaException("Wrong Number of Arguments");
             }
             M.setRotors(tokens[M.numRotors() + 1]);
@@ -192,31 +305,41 @@ public final class Main {
                 String[] plugCycles = Arrays.copyOfRange(tokens,
                         M.numRotors() + 2, tokens.length);
                 String cycles = String.join(",", plugCycles);
-                M.setPlugboard(new Permutation(cycles, _alphabet));
+                M.setPlugboard(new Permutation(cycles, M.alphabet()));
             } else {
                 String[] plugCycles = Arrays.copyOfRange(tokens,
                         M.numRotors() + 3, tokens.length);
                 String cycles = String.join(",", plugCycles);
-                M.setPlugboard(new Permutation(cycles, _alphabet));
+                M.setPlugboard(new Permutation(cycles, M.alphabet()));
             }
         }
 
     }
 
-    /** Print MSG in groups of five (except that the last group may
-     *  have fewer letters). */
-    private void printMessageLine(String msg) {
+    /** Print MSG on OUTPUT in groups of five (except that the last group
+     *  may have fewer letters). */
+    static void printMessageLine(String msg, PrintStream output) {
+        long start = Metrics.OUTPUT.start();
+        StringBuilder line = new StringBuilder(msg.length() * 2);
         int point = 0;
-        for (char c : msg.toCharArray()) {
+        for (int x = 0; x < msg.length(); ) {
+            int c = msg.codePointAt(x);
+            x += Character.charCount(c);
             if (point != 0) {
                 if (point % 5 == 0) {
-                    _output.print(" ");
+                    line.append(' ');
                 }
             }
-            _output.print(c);
+            line.appendCodePoint(c);
             point++;
         }
-        _output.println();
+        output.println(line);
+        Metrics.OUTPUT.stop(start);
+    }
+
+    /** Return the number of characters (code points) in S. */
+    private static int symbols(String s) {
+        return s.codePointCount(0, s.length());
     }
 
     /**
@@ -224,7 +347,7 @@ public final class Main {
      * @param m machine.
      * @param rotors is array of strings of rotor names.
      */
-    private void checkNames(Machine m, String[] rotors) {
+    private static void checkNames(Machine m, String[] rotors) {
         ArrayList<Boolean> matches = new ArrayList<>();
         Collection<Rotor> allofRotors = m.allRotors();
         for (String rotor : rotors) {
@@ -243,7 +366,7 @@ public final class Main {
      * Checks if any of the rotors are repeated.
      * @param rotors are array of string rotors names.
      */
-    private void checkRepeat(String[] rotors) {
+    private static void checkRepeat(String[] rotors) {
         Set<String> rotorSet = new HashSet<>(Arrays.asList(rotors));
         if (rotorSet.size() < rotors.length) {
             throw new EnigmaException("Repeated Rotor");
@@ -252,11 +375,12 @@ public final class Main {
 
     /**
      * Checks if the first rotor is a reflector.
+     * @param m machine.
      * @param rotors is array of string rotors names.
      */
-    private void reflect(String[] rotors) {
+    private static void reflect(Machine m, String[] rotors) {
         String initial = rotors[0];
-        for (Rotor x : _everyRotor) {
+        for (Rotor x : m.allRotors()) {
             if (x.reflecting() && x.name().equals(initial)) {
                 return;
             }
@@ -273,6 +397,15 @@ public final class Main {
     /** Source of machine configuration. */
     private Scanner _config;
 
+    /** Registry in which the configuration's alphabet and permutations
+     *  are interned, or null. */
+    private ConfigRegistry _registry;
+
     /** File for encoded/decoded messages. */
     private PrintStream _output;
+
+    /** True iff input is processed by a Pipeline: when it comes from a
+     *  file, so that waiting to read ahead cannot hold up interactive
+     *  output. */
+    private boolean _pipelined;
 }
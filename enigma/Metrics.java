@@ -0,0 +1,238 @@
+package enigma;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** Counters and timers for the engine, and JDK Flight Recorder events.
+ *  Counting and timing are enabled by running with
+ *
+ *      java -Denigma.metrics=true enigma.Main ...
+ *
+ *  in which case Main prints a summary on the standard error when it
+ *  exits.  Otherwise, since ENABLED is a constant, they compile to
+ *  nothing.  Counters are striped (LongAdders), so that threads counting
+ *  at once do not contend; timers keep a histogram of their times, in
+ *  buckets whose bounds are powers of 2 nanoseconds.  The events (for
+ *  configuration loads, settings lines, and conversions of messages) are
+ *  independent of ENABLED, and are recorded whenever a flight recording
+ *  that includes them is running, e.g. with
+ *
+ *      java -XX:StartFlightRecording=filename=enigma.jfr enigma.Main ...
+ *
+ *  @author Thomas Nguyen
+ */
+final class Metrics {
+
+    /** Not instantiable. */
+    private Metrics() {
+    }
+
+    /** A count of events. */
+    static final class Counter {
+        /** A counter described by LABEL. */
+        Counter(String label) {
+            _label = label;
+        }
+
+        /** Add N to my count, if metrics are enabled. */
+        void add(long n) {
+            if (ENABLED) {
+                _count.add(n);
+            }
+        }
+
+        /** Return my count. */
+        long count() {
+            return _count.sum();
+        }
+
+        /** Return my description. */
+        String label() {
+            return _label;
+        }
+
+        /** My description. */
+        private final String _label;
+        /** My count. */
+        private final LongAdder _count = new LongAdder();
+    }
+
+    /** A histogram of the times taken by some operation. */
+    static final class Timer {
+        /** A timer described by LABEL. */
+        Timer(String label) {
+            _label = label;
+            for (int b = 0; b < _buckets.length; b++) {
+                _buckets[b] = new LongAdder();
+            }
+        }
+
+        /** Return the time at which an operation starts, to be passed to
+         *  stop, if metrics are enabled, and otherwise 0. */
+        long start() {
+            return ENABLED ? System.nanoTime() : 0;
+        }
+
+        /** Record an operation that started at START, as returned by
+         *  start(), and ends now, if metrics are enabled. */
+        void stop(long start) {
+            if (ENABLED) {
+                record(System.nanoTime() - start);
+            }
+        }
+
+        /** Record an operation that took NANOS nanoseconds. */
+        void record(long nanos) {
+            nanos = Math.max(0, nanos);
+            _buckets[Long.SIZE - Long.numberOfLeadingZeros(nanos)]
+                .increment();
+            _total.add(nanos);
+            _max.accumulate(nanos);
+        }
+
+        /** Return the number of operations recorded. */
+        long count() {
+            long result = 0;
+            for (LongAdder bucket : _buckets) {
+                result += bucket.sum();
+            }
+            return result;
+        }
+
+        /** Return the total of the recorded times, in nanoseconds. */
+        long total() {
+            return _total.sum();
+        }
+
+        /** Return the longest recorded time, in nanoseconds. */
+        long max() {
+            return _max.get();
+        }
+
+        /** Return an upper bound, in nanoseconds, on the time within
+         *  which the fraction P of the recorded operations finished: the
+         *  upper bound of the bucket holding that quantile, or max(), if
+         *  smaller. */
+        long percentile(double p) {
+            long target = (long) Math.ceil(p * count()), seen = 0;
+            for (int b = 0; b < _buckets.length; b++) {
+                seen += _buckets[b].sum();
+                if (seen >= target && seen > 0) {
+                    return Math.min(max(), (1L << b) - 1);
+                }
+            }
+            return max();
+        }
+
+        /** Return my description. */
+        String label() {
+            return _label;
+        }
+
+        /** My description. */
+        private final String _label;
+        /** Entry b counts times t with 2**(b-1) <= t < 2**b (or t = 0,
+         *  for b = 0). */
+        private final LongAdder[] _buckets = new LongAdder[Long.SIZE + 1];
+        /** Total of recorded times. */
+        private final LongAdder _total = new LongAdder();
+        /** Longest recorded time. */
+        private final LongAccumulator _max =
+            new LongAccumulator(Math::max, 0);
+    }
+
+    /** Flight recorder event for the loading of a configuration. */
+    @Name("enigma.ConfigLoad")
+    @Label("Configuration Load")
+    @Category("Enigma")
+    static class ConfigLoadEvent extends Event {
+        /** Size of the alphabet. */
+        @Label("Alphabet Size")
+        int alphabetSize;
+        /** Number of rotors described. */
+        @Label("Rotors")
+        int rotors;
+    }
+
+    /** Flight recorder event for the processing of a settings line. */
+    @Name("enigma.Settings")
+    @Label("Settings")
+    @Category("Enigma")
+    static class SettingsEvent extends Event {
+        /** The settings line. */
+        @Label("Settings")
+        String settings;
+    }
+
+    /** Flight recorder event for the conversion of a batch of messages. */
+    @Name("enigma.Conversion")
+    @Label("Conversion")
+    @Category("Enigma")
+    static class ConversionEvent extends Event {
+        /** Number of characters converted. */
+        @Label("Characters")
+        long characters;
+    }
+
+    /** Print a summary of all counters and timers on OUT. */
+    static void dump(PrintStream out) {
+        out.println("enigma metrics:");
+        for (Counter c : COUNTERS) {
+            out.printf("  %-20s %d%n", c.label(), c.count());
+        }
+        for (Timer t : TIMERS) {
+            out.printf("  %-20s %d, total %s, p50 %s, p99 %s, max %s%n",
+                       t.label(), t.count(), time(t.total()),
+                       time(t.percentile(P50)), time(t.percentile(P99)),
+                       time(t.max()));
+        }
+        out.flush();
+    }
+
+    /** Return NANOS nanoseconds, formatted for dump. */
+    private static String time(long nanos) {
+        if (nanos < NANOS_PER_MILLI) {
+            return String.format("%.1f us", nanos / 1e3);
+        }
+        return String.format("%.3f ms", nanos / 1e6);
+    }
+
+    /** True iff counting and timing are enabled. */
+    static final boolean ENABLED = Boolean.getBoolean("enigma.metrics");
+
+    /** Characters converted by machines. */
+    static final Counter CHARACTERS = new Counter("characters");
+    /** Key presses. */
+    static final Counter PRESSES = new Counter("key presses");
+    /** Advances of individual rotors. */
+    static final Counter ROTOR_STEPS = new Counter("rotor steps");
+    /** Advances of rotors that were not carried by the rotor to their
+     *  right, which moved but was not at a notch: double steps. */
+    static final Counter DOUBLE_STEPS = new Counter("double steps");
+    /** Settings lines applied. */
+    static final Counter SETTINGS = new Counter("settings lines");
+    /** All counters, in the order dump prints them. */
+    private static final List<Counter> COUNTERS =
+        List.of(CHARACTERS, PRESSES, ROTOR_STEPS, DOUBLE_STEPS, SETTINGS);
+
+    /** Times to read configurations. */
+    static final Timer CONFIG = new Timer("config loads");
+    /** Times to apply settings lines. */
+    static final Timer SETUP = new Timer("setups");
+    /** Times to format and write output. */
+    static final Timer OUTPUT = new Timer("output writes");
+    /** All timers, in the order dump prints them. */
+    private static final List<Timer> TIMERS = List.of(CONFIG, SETUP, OUTPUT);
+
+    /** Quantiles printed by dump. */
+    private static final double P50 = 0.5, P99 = 0.99;
+    /** Nanoseconds per millisecond. */
+    private static final long NANOS_PER_MILLI = 1_000_000;
+}
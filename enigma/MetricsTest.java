@@ -0,0 +1,49 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the Metrics class.
+ *  @author Thomas Nguyen
+ */
+public class MetricsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkTimer() {
+        Metrics.Timer timer = new Metrics.Timer("test");
+        assertEquals(0, timer.count());
+        assertEquals(0, timer.percentile(0.5));
+        for (long t = 1; t <= 100; t++) {
+            timer.record(t * 1000);
+        }
+        timer.record(0);
+        assertEquals(101, timer.count());
+        assertEquals(5_050_000, timer.total());
+        assertEquals(100_000, timer.max());
+        long p50 = timer.percentile(0.5), p99 = timer.percentile(0.99);
+        assertTrue(p50 >= 50_000 && p50 < 2 * 50_000);
+        assertTrue(p99 >= 99_000 && p99 <= 100_000);
+        assertEquals(0, timer.percentile(0.001));
+    }
+
+    @Test
+    public void checkDisabled() {
+        if (!Metrics.ENABLED) {
+            Metrics.Counter counter = new Metrics.Counter("test");
+            counter.add(5);
+            assertEquals(0, counter.count());
+            Metrics.Timer timer = new Metrics.Timer("test");
+            timer.stop(timer.start());
+            assertEquals(0, timer.count());
+        }
+    }
+
+}
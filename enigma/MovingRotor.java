@@ -18,6 +18,30 @@ class MovingRotor extends Rotor {
     MovingRotor(String name, Permutation perm, String notches) {
         super(name, perm);
         _notches = notches;
+        _notchAt = new boolean[perm.size()];
+        _notches.codePoints().forEach(cp -> {
+            _notchAt[Math.max(0, alphabet().indexOf(cp))] = true;
+        });
+        _toNotch = new int[_notchAt.length];
+        int next = Integer.MAX_VALUE;
+        for (int pass = 0; pass < 2; pass++) {
+            for (int k = _notchAt.length - 1; k >= 0; k--) {
+                if (_notchAt[k]) {
+                    next = k;
+                }
+                _toNotch[k] = next == Integer.MAX_VALUE ? next
+                    : Math.floorMod(next - k, _notchAt.length);
+            }
+        }
+    }
+
+    /** A copy of ROTOR, in its 0 setting, sharing its notch tables, which
+     *  are never changed. */
+    private MovingRotor(MovingRotor rotor) {
+        super(rotor.name(), rotor.permutation());
+        _notches = rotor._notches;
+        _notchAt = rotor._notchAt;
+        _toNotch = rotor._toNotch;
     }
 
     /** Return the notches I have. */
@@ -34,15 +58,26 @@ class MovingRotor extends Rotor {
         this.set(permutation().wrap(this.setting() + 1));
     }
 
+    @Override
+    Rotor copy() {
+        return copyState(new MovingRotor(this));
+    }
+
     @Override
     boolean atNotch() {
-        for (int x = 0; x < _notches.length(); x++) {
-            if (permutation().wrap(alphabet().
-                    toInt(_notches.charAt(x))) == this.setting()) {
-                return true;
-            }
-        }
-        return false;
+        return _notchAt[setting()];
     }
 
+    @Override
+    int distanceToNotch() {
+        return _toNotch[setting()];
+    }
+
+    /** Entry k is true iff setting k is one of my notches. */
+    private final boolean[] _notchAt;
+
+    /** Entry k is the number of advances from setting k to a notch, or
+     *  Integer.MAX_VALUE if I have none. */
+    private final int[] _toNotch;
+
 }
@@ -156,4 +156,54 @@ public class MovingRotorTest {
         machine.setRotors("KO");
         machine.convert(4);
     }
+
+    @Test
+    public void checkShiftedTables() {
+        setRotor("IV", NAVALA, "J");
+        Rotor tabled = rotor.copy();
+        tabled.useShiftedTables();
+        for (int ring = 0; ring < 26; ring += 1) {
+            rotor.setRing(ring);
+            tabled.setRing(ring);
+            for (int posn = 0; posn < 26; posn += 1) {
+                rotor.set(posn);
+                tabled.set(posn);
+                for (int c = 0; c < 26; c += 1) {
+                    assertEquals(rotor.convertForward(c),
+                                 tabled.convertForward(c));
+                    assertEquals(rotor.convertBackward(c),
+                                 tabled.convertBackward(c));
+                }
+            }
+        }
+        tabled.set(0);
+        tabled.advance();
+        Rotor copy = tabled.copy();
+        rotor.set(0);
+        rotor.advance();
+        for (int c = 0; c < 26; c += 1) {
+            assertEquals(rotor.convertForward(c), copy.convertForward(c));
+        }
+    }
+
+    @Test
+    public void checkShiftedTableLimit() {
+        int n = 600;
+        int[] mapping = new int[n];
+        for (int k = 0; k < n; k += 1) {
+            mapping[k] = (k + 1) % n;
+        }
+        StringBuilder symbols = new StringBuilder();
+        for (int k = 0; k < n; k += 1) {
+            symbols.appendCodePoint(0x100 + k);
+        }
+        Permutation perm = new Permutation(mapping,
+                                           new Alphabet(symbols.toString()));
+        assertNull(perm.shiftedForward());
+        Rotor big = new MovingRotor("Big", perm, "");
+        big.useShiftedTables();
+        big.set(7);
+        assertEquals(1, big.convertForward(0));
+        assertEquals(n - 1, big.convertBackward(0));
+    }
 }
@@ -0,0 +1,226 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static enigma.EnigmaException.*;
+
+/** Conversion of text that keeps its layout and punctuation.  Usage:
+ *
+ *      java enigma.Main --pass-through CONFIG [INPUT [OUTPUT]]
+ *
+ *  INPUT (default the standard input) is laid out as for Main: lines
+ *  beginning with "*" are settings lines, and the first line must be
+ *  one.  In every other line, each character falls into one of four
+ *  classes, looked up in tables built once for the machine's alphabet:
+ *  CONVERT, characters of the alphabet, which are converted; FOLD,
+ *  characters outside the alphabet whose upper case is in it, which are
+ *  converted as their upper case; DROP, control characters such as the
+ *  carriage return of a CRLF line end, which are dropped; and PASS,
+ *  everything else, blanks and punctuation included, which is copied
+ *  unchanged to its place in the output without advancing the rotors.
+ *  Output, to OUTPUT (default the standard output), is not grouped.
+ *  Input is read into one reusable buffer and output built in another,
+ *  in a single pass with no String per line; only settings lines are
+ *  collected as Strings.
+ *  @author Thomas Nguyen
+ */
+final class PassThroughMode {
+
+    /** A converter for text over ALPHA. */
+    PassThroughMode(Alphabet alpha) {
+        _alphabet = alpha;
+        int limit = ASCII;
+        for (int k = 0; k < alpha.size(); k += 1) {
+            int cp = alpha.toCodePoint(k);
+            if (Character.isBmpCodePoint(cp)) {
+                limit = Math.max(limit, cp + 1);
+                limit = Math.max(limit, Character.toLowerCase(cp) + 1);
+            }
+        }
+        _classes = new byte[limit];
+        _indices = new int[limit];
+        for (int c = 0; c < limit; c += 1) {
+            _classes[c] = (byte) lookUpClass(c);
+            _indices[c] = lookUpIndex(c);
+        }
+    }
+
+    /** Run pass-through mode with ARGS, as described above. */
+    static void run(String... args) {
+        if (args.length < 1 || args.length > 3) {
+            throw error("Only 1, 2, or 3 arguments allowed after "
+                        + "--pass-through");
+        }
+        Machine m = Main.readConfig(args[0]);
+        Charset charset = Charset.defaultCharset();
+        try (Reader in = new InputStreamReader(
+                 args.length > 1 ? Files.newInputStream(Paths.get(args[1]))
+                 : System.in, charset)) {
+            Writer out = new OutputStreamWriter(
+                args.length > 2 ? Files.newOutputStream(Paths.get(args[2]))
+                : System.out, charset);
+            try {
+                new PassThroughMode(m.alphabet()).process(m, in, out);
+            } finally {
+                if (args.length > 2) {
+                    out.close();
+                } else {
+                    out.flush();
+                }
+            }
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        }
+    }
+
+    /** Return the class (CONVERT, FOLD, DROP, or PASS) of the code point
+     *  CP in message lines. */
+    int classify(int cp) {
+        return cp < _classes.length ? _classes[cp] : lookUpClass(cp);
+    }
+
+    /** Return the index in my alphabet of the symbol that converts the
+     *  code point CP, whose class is CONVERT or FOLD. */
+    private int index(int cp) {
+        return cp < _indices.length ? _indices[cp] : lookUpIndex(cp);
+    }
+
+    /** Return classify(CP), without the tables. */
+    private int lookUpClass(int cp) {
+        if (_alphabet.contains(cp)) {
+            return CONVERT;
+        } else if (_alphabet.contains(Character.toUpperCase(cp))) {
+            return FOLD;
+        } else if (Character.isISOControl(cp)) {
+            return DROP;
+        } else {
+            return PASS;
+        }
+    }
+
+    /** Return index(CP), without the tables, or -1 if the class of CP
+     *  is neither CONVERT nor FOLD. */
+    private int lookUpIndex(int cp) {
+        int k = _alphabet.indexOf(cp);
+        return k >= 0 ? k : _alphabet.indexOf(Character.toUpperCase(cp));
+    }
+
+    /** Apply M to the text read from IN, as described above, writing the
+     *  results to OUT.  Everything converted before a settings line is
+     *  written to OUT before the line is applied, so that an error in it
+     *  loses none of the output before it. */
+    void process(Machine m, Reader in, Writer out) throws IOException {
+        char[] buffer = new char[BUFFER_SIZE];
+        char[] result = new char[2 * BUFFER_SIZE];
+        StringBuilder settings = new StringBuilder();
+        boolean initial = true, lineStart = true, setting = false;
+        int end = 0;
+        boolean eof = false;
+        while (!eof) {
+            int n = in.read(buffer, end, buffer.length - end);
+            eof = n < 0;
+            end += Math.max(n, 0);
+            int x, size = 0;
+            for (x = 0; x < end; x += 1) {
+                int cp = buffer[x];
+                if (Character.isHighSurrogate(buffer[x])) {
+                    if (x + 1 < end) {
+                        if (Character.isLowSurrogate(buffer[x + 1])) {
+                            x += 1;
+                            cp = Character.toCodePoint(buffer[x - 1],
+                                                       buffer[x]);
+                        }
+                    } else if (!eof) {
+                        break;
+                    }
+                }
+                if (lineStart) {
+                    if (cp != '*' && initial) {
+                        throw error("wrong config");
+                    }
+                    initial = lineStart = false;
+                    setting = cp == '*';
+                }
+                if (cp == '\n') {
+                    if (setting) {
+                        out.write(result, 0, size);
+                        size = 0;
+                        Main.setUp(m, settings.toString());
+                        settings.setLength(0);
+                        setting = false;
+                    } else {
+                        result[size++] = '\n';
+                    }
+                    lineStart = true;
+                } else if (setting) {
+                    if (cp != '\r') {
+                        settings.appendCodePoint(cp);
+                    }
+                } else {
+                    switch (classify(cp)) {
+                    case CONVERT: case FOLD:
+                        size = put(_alphabet.toCodePoint(
+                                       m.convert(index(cp))),
+                                   result, size);
+                        break;
+                    case PASS:
+                        size = put(cp, result, size);
+                        break;
+                    default:
+                        break;
+                    }
+                }
+            }
+            out.write(result, 0, size);
+            System.arraycopy(buffer, x, buffer, 0, end - x);
+            end -= x;
+        }
+        if (setting) {
+            Main.setUp(m, settings.toString());
+        }
+        out.flush();
+    }
+
+    /** Store the code point CP in DEST at POS, returning the position
+     *  after it. */
+    private static int put(int cp, char[] dest, int pos) {
+        if (Character.isBmpCodePoint(cp)) {
+            dest[pos] = (char) cp;
+            return pos + 1;
+        }
+        dest[pos] = Character.highSurrogate(cp);
+        dest[pos + 1] = Character.lowSurrogate(cp);
+        return pos + 2;
+    }
+
+    /** Class of characters of the alphabet. */
+    static final int CONVERT = 0;
+    /** Class of characters whose upper case is in the alphabet. */
+    static final int FOLD = 1;
+    /** Class of characters dropped from the output. */
+    static final int DROP = 2;
+    /** Class of characters copied unchanged. */
+    static final int PASS = 3;
+
+    /** Number of code points always covered by the tables. */
+    private static final int ASCII = 128;
+    /** Number of chars read at a time. */
+    private static final int BUFFER_SIZE = 1 << 13;
+
+    /** The alphabet converted. */
+    private final Alphabet _alphabet;
+    /** Entry c is the class of char c, for every c below its length: the
+     *  largest char in my alphabet, or whose upper case is, and all of
+     *  ASCII. */
+    private final byte[] _classes;
+    /** Entry c is the index of the symbol that converts char c, if its
+     *  class is CONVERT or FOLD, for c below the length of _classes. */
+    private final int[] _indices;
+}
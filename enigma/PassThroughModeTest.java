@@ -0,0 +1,118 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the PassThroughMode class.
+ *  @author Thomas Nguyen
+ */
+public class PassThroughModeTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Settings for the naval machine. */
+    private static final String SETTINGS = "* B Beta III II I AXLE (YF) (ZH)";
+
+    /** Return the output of pass-through mode for INPUT on a naval
+     *  machine. */
+    private String process(String input) throws IOException {
+        Machine m = navalMachine();
+        StringWriter out = new StringWriter();
+        new PassThroughMode(m.alphabet()).process(m, new StringReader(input),
+                                                  out);
+        return out.toString();
+    }
+
+    /** Return the conversion of MSG by Main after SETTINGS, ungrouped. */
+    private String convert(String msg) {
+        Machine m = navalMachine();
+        Main.setUp(m, SETTINGS);
+        return m.convert(msg);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkClasses() {
+        PassThroughMode mode = new PassThroughMode(UPPER);
+        assertEquals(PassThroughMode.CONVERT, mode.classify('Q'));
+        assertEquals(PassThroughMode.FOLD, mode.classify('q'));
+        assertEquals(PassThroughMode.DROP, mode.classify('\r'));
+        assertEquals(PassThroughMode.PASS, mode.classify(','));
+        assertEquals(PassThroughMode.PASS, mode.classify(' '));
+        assertEquals(PassThroughMode.PASS, mode.classify('\u00e9'));
+        assertEquals(PassThroughMode.FOLD, mode.classify('\u0131'));
+        assertEquals(PassThroughMode.PASS, mode.classify(0x1f600));
+    }
+
+    @Test
+    public void checkPassThrough() throws IOException {
+        String plain = convert("HELLOWORLDTHEREISMORE");
+        String result = process(SETTINGS + "\r\n" + "Hello, World!\r\n\n"
+                                + " there...\u00e9 is more.");
+        assertEquals(plain.substring(0, 5) + ", " + plain.substring(5, 10)
+                     + "!\n\n " + plain.substring(10, 15) + "...\u00e9 "
+                     + plain.substring(15, 17) + " "
+                     + plain.substring(17) + ".", result);
+        assertEquals("HELLO, WORLD!\n\n THERE...\u00e9 IS MORE.",
+                     process(SETTINGS + "\n" + result));
+    }
+
+    @Test
+    public void checkSettingsLines() throws IOException {
+        String first = convert("ABCDE");
+        assertEquals(first + "\n" + first + "\n",
+                     process(SETTINGS + "\nabcde\n" + SETTINGS
+                             + "\nA-B-C-D-E\n").replace("-", ""));
+        assertEquals("", process(SETTINGS));
+        try {
+            process("ABC\n" + SETTINGS + "\n");
+            fail("no initial settings line");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void checkLongInput() throws IOException {
+        StringBuilder input = new StringBuilder(), letters =
+            new StringBuilder();
+        for (int k = 0; k < 20000; k += 1) {
+            char c = (char) ('A' + k % 26);
+            input.append(c).append(k % 7 == 0 ? ". " : "");
+            letters.append(c);
+        }
+        String result = process(SETTINGS + "\n" + input);
+        assertEquals(input.length(), result.length());
+        assertEquals(convert(letters.toString()),
+                     result.replace(". ", ""));
+    }
+
+    @Test
+    public void checkOutputBeforeBadSettings() throws IOException {
+        Machine m = navalMachine();
+        StringWriter out = new StringWriter();
+        try {
+            new PassThroughMode(m.alphabet())
+                .process(m, new StringReader(SETTINGS + "\nHello\n"
+                                             + "* B Beta I II XYZ AAAA\n"
+                                             + "World\n"), out);
+            fail("bad settings line accepted");
+        } catch (EnigmaException excp) {
+            assertEquals(convert("HELLO") + "\n", out.toString());
+        }
+    }
+
+}
@@ -1,7 +1,5 @@
 package enigma;
 
-import java.util.HashMap;
-
 import static enigma.EnigmaException.*;
 
 /** Represents a permutation of a range of integers starting at 0 corresponding
@@ -12,42 +10,106 @@ class Permutation {
     /** Number of cycles I have. */
     private String _cycles;
 
-    /** Map that I have. */
-    private HashMap _map;
     /**
      * Set this Permutation to that specified by CYCLES, a string in the
      * form "(cccc) (cc) ..." where the c's are characters in ALPHABET, which
      * is interpreted as a permutation in cycle notation.  Characters in the
      * alphabet that are not included in any cycle map to themselves.
-     * Whitespace is ignored.
+     * Whitespace, and anything else between cycles, is ignored.
      */
 
 
     Permutation(String cycles, Alphabet alphabet) {
-        HashMap<Character, Character> map = new HashMap<>();
         _cycles = cycles;
         _alphabet = alphabet;
-        _map = map;
-        char first = ' ';
         if (!paranthesis(cycles)) {
             throw new AssertionError("Incorrect cycle");
         }
-        for (int x = 0; x < cycles.length(); x++) {
-            if (cycles.charAt(x) != '('
-                    && cycles.charAt(x) != ' ' && cycles.charAt(x) != ')') {
-                if (cycles.charAt(x - 1) == '(') {
-                    first = cycles.charAt(x);
+        _size = alphabet.size();
+        parse(cycles, alphabet, null);
+    }
+
+    /** A permutation of ALPHABET whose mapping is MAPPING: MAPPING[k] is
+     *  the index of the image of character #k.  MAPPING is copied. */
+    Permutation(int[] mapping, Alphabet alphabet) {
+        if (mapping.length != alphabet.size()) {
+            throw error("mapping does not match alphabet size");
+        }
+        Permutations.check(mapping);
+        _alphabet = alphabet;
+        _size = mapping.length;
+        _tables = new Tables(mapping);
+        _cycles = Permutations.toCycles(mapping, alphabet);
+    }
+
+    /** Check that CYCLES, as described for Permutation(String, Alphabet),
+     *  uses only characters of ALPHABET, each at most once.  If MAPPING is
+     *  not null, it must be the identity on ALPHABET, and is changed to
+     *  the permutation CYCLES describes. */
+    private static void parse(String cycles, Alphabet alphabet,
+                              int[] mapping) {
+        boolean[] used = new boolean[alphabet.size()];
+        boolean inCycle = false;
+        int first = -1, prev = -1;
+        for (int x = 0; x < cycles.length(); ) {
+            int cp = cycles.codePointAt(x);
+            x += Character.charCount(cp);
+            if (cp == '(') {
+                inCycle = true;
+                first = prev = -1;
+            } else if (cp == ')') {
+                if (prev >= 0 && mapping != null) {
+                    mapping[prev] = first;
+                }
+                inCycle = false;
+            } else if (inCycle && !Character.isWhitespace(cp)) {
+                int k = alphabet.indexOf(cp);
+                if (k < 0) {
+                    throw error("character %s is not in the alphabet",
+                                new String(Character.toChars(cp)));
                 }
-                if (cycles.charAt(x + 1) != ')') {
-                    map.put(cycles.charAt(x), cycles.charAt(x + 1));
-                } else {
-                    map.put(cycles.charAt(x), first);
+                if (used[k]) {
+                    throw error("character %s appears twice in cycles",
+                                new String(Character.toChars(cp)));
                 }
+                used[k] = true;
+                if (first < 0) {
+                    first = k;
+                } else if (mapping != null) {
+                    mapping[prev] = k;
+                }
+                prev = k;
             }
         }
-        for (int e = 0; e < alphabet.size(); e++) {
-            map.putIfAbsent(alphabet.toChar(e), alphabet.toChar(e));
+    }
+
+    /** Build my tables now, if they are not built yet.  A permutation
+     *  given by cycles is only checked when constructed, and its tables
+     *  are built when first needed, by whichever thread needs them
+     *  first. */
+    void compile() {
+        tables();
+    }
+
+    /** Return true iff my tables have been built. */
+    boolean compiled() {
+        return _tables != null;
+    }
+
+    /** Return my tables, building them from _cycles if need be. */
+    private Tables tables() {
+        Tables result = _tables;
+        if (result == null) {
+            synchronized (this) {
+                result = _tables;
+                if (result == null) {
+                    int[] mapping = Permutations.identity(new int[_size]);
+                    parse(_cycles, _alphabet, mapping);
+                    result = _tables = new Tables(mapping);
+                }
+            }
         }
+        return result;
     }
 
     /**
@@ -58,11 +120,6 @@ class Permutation {
         this._cycles += cycle;
     }
 
-    /** Return the map I have. */
-    HashMap map() {
-        return _map;
-    }
-
     /** Return the number of cycles I have. */
     String cycles() {
         return _cycles;
@@ -71,9 +128,19 @@ class Permutation {
      * Return the value of P modulo the size of this permutation.
      */
     final int wrap(int p) {
-        int r = p % size();
+        int n = _size;
+        if (p >= 0) {
+            if (p < n) {
+                return p;
+            } else if (p - n < n) {
+                return p - n;
+            }
+        } else if (p >= -n) {
+            return p + n;
+        }
+        int r = p % n;
         if (r < 0) {
-            r += size();
+            r += n;
         }
         return r;
     }
@@ -82,7 +149,7 @@ class Permutation {
      * Returns the size of the alphabet I permute.
      */
     int size() {
-        return _alphabet.size();
+        return _size;
     }
 
     /**
@@ -90,19 +157,13 @@ class Permutation {
      * alphabet size.
      */
     int permute(int p) {
-        return _alphabet.toInt((char) _map.get(_alphabet.toChar(wrap(p))));
+        return tables().forward.get(wrap(p));
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        for (int x = 0; x < _alphabet.size(); x++) {
-            if (_alphabet.toChar(wrap(c))
-                    == (char) _map.get(_alphabet.toChar(x))) {
-                return x;
-            }
-        }
-        return c;
+        return tables().inverse.get(wrap(c));
     }
 
     /** Return the result of applying this permutation
@@ -110,17 +171,101 @@ class Permutation {
          *  in ALPHABET, and converting the result
      *  to a character of ALPHABET. */
     char permute(char p) {
-        return (char) _map.get(p);
+        if (!_alphabet.contains(p)) {
+            return p;
+        }
+        return _alphabet.toChar(tables().forward.get(_alphabet.toInt(p)));
     }
 
     /** Return the result of applying the inverse of this permutation to C. */
     char invert(char c) {
-        for (int x = 0; x < _alphabet.size(); x++) {
-            if (c == (char) _map.get(_alphabet.toChar(x))) {
-                return _alphabet.toChar(x);
+        if (!_alphabet.contains(c)) {
+            return c;
+        }
+        return _alphabet.toChar(tables().inverse.get(_alphabet.toInt(c)));
+    }
+
+    /** Return a copy of my mapping: entry k is permute(k). */
+    int[] toArray() {
+        return tables().forward.toArray();
+    }
+
+    /** Return the permutation that applies me and then OTHER. */
+    Permutation compose(Permutation other) {
+        int[] result = toArray();
+        return new Permutation(Permutations.compose(result, other.toArray(),
+                                                    result),
+                               _alphabet);
+    }
+
+    /** Return my inverse. */
+    Permutation inverse() {
+        return new Permutation(tables().inverse.toArray(), _alphabet);
+    }
+
+    /** Return me raised to the power EXP. */
+    Permutation pow(long exp) {
+        int n = size();
+        return new Permutation(Permutations.power(toArray(), exp, new int[n],
+                                                  new int[n], new int[n]),
+                               _alphabet);
+    }
+
+    /** Return me conjugated by a rotation of SHIFT places: the
+     *  permutation performed by a rotor with my wiring at offset SHIFT. */
+    Permutation shift(int shift) {
+        return new Permutation(Permutations.shift(toArray(), shift,
+                                                  new int[size()]),
+                               _alphabet);
+    }
+
+    /** Return the lengths of my cycles, in decreasing order.  The result
+     *  is computed once and must not be modified. */
+    int[] cycleType() {
+        int[] result = _cycleType;
+        if (result == null) {
+            result = _cycleType = Permutations.cycleType(toArray());
+        }
+        return result;
+    }
+
+    /** Return a table whose entry D * size() + P, for D and P in
+     *  0 .. size()-1, is wrap(permute(P + D) - D): the conversion of P by a
+     *  rotor with my wiring whose setting less its ring is D.  Returns null
+     *  if the table would have more than MAX_SHIFTED_ENTRIES entries.  The
+     *  result is built on first use and must not be modified. */
+    IndexTable shiftedForward() {
+        IndexTable result = _shiftedForward;
+        if (result == null && (long) _size * _size <= MAX_SHIFTED_ENTRIES) {
+            result = _shiftedForward = shifted(toArray());
+        }
+        return result;
+    }
+
+    /** Return the table for my inverse that shiftedForward returns for
+     *  me, or null if that would have more than MAX_SHIFTED_ENTRIES
+     *  entries. */
+    IndexTable shiftedInverse() {
+        IndexTable result = _shiftedInverse;
+        if (result == null && (long) _size * _size <= MAX_SHIFTED_ENTRIES) {
+            result = _shiftedInverse =
+                shifted(tables().inverse.toArray());
+        }
+        return result;
+    }
+
+    /** Return the table described in shiftedForward for the permutation
+     *  MAPPING. */
+    private IndexTable shifted(int[] mapping) {
+        IndexTable result = IndexTable.create(_size * _size, _size - 1);
+        int[] row = new int[_size];
+        for (int d = 0; d < _size; d++) {
+            Permutations.shift(mapping, d, row);
+            for (int p = 0; p < _size; p++) {
+                result.set(d * _size + p, row[p]);
             }
         }
-        return c;
+        return result;
     }
 
     /** Return the alphabet used to initialize this Permutation. */
@@ -131,8 +276,11 @@ class Permutation {
     /** Return true iff this permutation is a derangement (i.e., a
      *  permutation for which no value maps to itself). */
     boolean derangement() {
-        if (_map.get(this) == this) {
-            return false;
+        IndexTable forward = tables().forward;
+        for (int k = 0; k < _size; k++) {
+            if (forward.get(k) == k) {
+                return false;
+            }
         }
         return true;
     }
@@ -140,6 +288,44 @@ class Permutation {
     /** Alphabet of this permutation. */
     private Alphabet _alphabet;
 
+    /** Number of characters I permute. */
+    private final int _size;
+
+    /** The tables of a permutation. */
+    private static final class Tables {
+        /** Tables for the permutation MAPPING. */
+        Tables(int[] mapping) {
+            int last = mapping.length - 1;
+            forward = IndexTable.of(mapping, last);
+            inverse = IndexTable.of(Permutations.invert(mapping,
+                                                        new int[last + 1]),
+                                    last);
+        }
+
+        /** My mapping: entry k is the index of the image of character
+         *  #k. */
+        final IndexTable forward;
+        /** The inverse of forward. */
+        final IndexTable inverse;
+    }
+
+    /** My tables, or null if not yet built from _cycles. */
+    private volatile Tables _tables;
+
+    /** My cycle lengths, or null if not yet computed. */
+    private volatile int[] _cycleType;
+
+    /** The result of shiftedForward, or null if not yet computed. */
+    private volatile IndexTable _shiftedForward;
+
+    /** The result of shiftedInverse, or null if not yet computed. */
+    private volatile IndexTable _shiftedInverse;
+
+    /** Largest number of entries in a table of shiftedForward or
+     *  shiftedInverse: 512 * 512, which, in 16-bit entries, is 512K
+     *  bytes per table. */
+    static final int MAX_SHIFTED_ENTRIES = 1 << 18;
+
     /** Return true iff there is even # parenthesis
      *  permutation for which no value maps to itself).
      *  @param p is string to check if there is parenthesis*/
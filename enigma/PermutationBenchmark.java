@@ -0,0 +1,97 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/** Timing of the operations of Permutations on random permutations of 26
+ *  and 256 symbols.  Usage: java enigma.PermutationBenchmark [SECONDS],
+ *  where SECONDS (default 1) is the approximate time spent on each
+ *  measurement.  Reports nanoseconds per operation.
+ *  @author Thomas Nguyen
+ */
+final class PermutationBenchmark {
+
+    /** Not instantiable. */
+    private PermutationBenchmark() {
+    }
+
+    /** Run the benchmarks, as described above, using ARGS. */
+    public static void main(String... args) {
+        double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 1;
+        for (int n : new int[] {26, 256}) {
+            run(n, (long) (seconds * 1e9));
+        }
+    }
+
+    /** Time each operation on permutations of N symbols for about NANOS
+     *  nanoseconds, printing the results. */
+    private static void run(int n, long nanos) {
+        Random random = new Random(n);
+        int[] p = randomPermutation(n, random),
+            q = randomPermutation(n, random);
+        int[] dest = new int[n], base = new int[n], temp = new int[n];
+        int[] lengths = new int[n];
+        boolean[] seen = new boolean[n];
+
+        report(n, "compose", time(nanos, () -> {
+            Permutations.compose(p, q, dest);
+        }));
+        report(n, "invert", time(nanos, () -> {
+            Permutations.invert(p, dest);
+        }));
+        report(n, "shift", time(nanos, () -> {
+            Permutations.shift(p, 7, dest);
+        }));
+        report(n, "power 1e9", time(nanos, () -> {
+            Permutations.power(p, 1_000_000_007L, dest, base, temp);
+        }));
+        report(n, "cycle type", time(nanos, () -> {
+            Arrays.fill(seen, false);
+            Permutations.cycleType(p, seen, lengths);
+        }));
+        report(n, "derangement", time(nanos, () -> {
+            _sink += Permutations.isDerangement(dest) ? 1 : 0;
+        }));
+        _sink += dest[0] + lengths[0];
+    }
+
+    /** Return a random permutation of N symbols drawn using RANDOM. */
+    private static int[] randomPermutation(int n, Random random) {
+        int[] p = Permutations.identity(new int[n]);
+        for (int k = n - 1; k > 0; k--) {
+            int j = random.nextInt(k + 1), t = p[k];
+            p[k] = p[j];
+            p[j] = t;
+        }
+        return p;
+    }
+
+    /** Return the mean time in nanoseconds of OP, after warming up, running
+     *  it repeatedly for about NANOS nanoseconds. */
+    private static double time(long nanos, Runnable op) {
+        for (int k = 0; k < WARMUP; k++) {
+            op.run();
+        }
+        long count = 0, start = System.nanoTime(), elapsed;
+        do {
+            for (int k = 0; k < BATCH; k++) {
+                op.run();
+            }
+            count += BATCH;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < nanos);
+        return (double) elapsed / count;
+    }
+
+    /** Print the time NS for operation NAME on N symbols. */
+    private static void report(int n, String name, double ns) {
+        System.out.printf("n=%-4d %-12s %10.1f ns/op%n", n, name, ns);
+    }
+
+    /** Number of untimed runs before timing. */
+    private static final int WARMUP = 20_000;
+    /** Number of runs between clock readings. */
+    private static final int BATCH = 1_000;
+    /** Accumulates results so that the JIT cannot discard work. */
+    private static long _sink;
+}
@@ -5,6 +5,8 @@ import org.junit.Rule;
 import org.junit.rules.Timeout;
 import static org.junit.Assert.*;
 
+import java.util.Arrays;
+
 import static enigma.TestUtils.*;
 
 /** The suite of all JUnit tests for the Permutation class.
@@ -66,4 +68,109 @@ public class PermutationTest {
         assertEquals(perm.permute('S'), 'S');
     }
 
+    @Test
+    public void checkDerangement() {
+        perm = new Permutation(NAVALA.get("I"), UPPER);
+        assertFalse(perm.derangement());
+        perm = new Permutation(NAVALA.get("B"), UPPER);
+        assertTrue(perm.derangement());
+    }
+
+    @Test
+    public void checkComposeAndInverse() {
+        Permutation p = new Permutation(NAVALA.get("I"), UPPER);
+        Permutation q = new Permutation(NAVALA.get("II"), UPPER);
+        perm = p.compose(q);
+        for (int k = 0; k < UPPER.size(); k += 1) {
+            assertEquals(q.permute(p.permute(k)), perm.permute(k));
+        }
+        perm = p.compose(p.inverse());
+        checkPerm("p p^-1", UPPER_STRING, UPPER_STRING);
+    }
+
+    @Test
+    public void checkPower() {
+        Permutation p = new Permutation(NAVALA.get("III"), UPPER);
+        perm = p.pow(3);
+        for (int k = 0; k < UPPER.size(); k += 1) {
+            assertEquals(p.permute(p.permute(p.permute(k))), perm.permute(k));
+        }
+        perm = p.pow(-5).compose(p.pow(5));
+        checkPerm("p^-5 p^5", UPPER_STRING, UPPER_STRING);
+        perm = p.pow(8 * 17);
+        checkPerm("p^order", UPPER_STRING, UPPER_STRING);
+    }
+
+    @Test
+    public void checkShiftMatchesRotor() {
+        perm = new Permutation(NAVALA.get("I"), UPPER).shift(1);
+        checkPerm("shifted I", UPPER_STRING, NAVALB_MAP.get("I"));
+        perm = new Permutation(NAVALA.get("I"), UPPER).shift(-1);
+        checkPerm("shifted I", UPPER_STRING, NAVALZ_MAP.get("I"));
+    }
+
+    @Test
+    public void checkCycleType() {
+        perm = new Permutation(NAVALA.get("I"), UPPER);
+        assertArrayEquals(new int[] {10, 4, 4, 3, 2, 2, 1},
+                          perm.cycleType());
+        perm = new Permutation(perm.toArray(), UPPER);
+        checkPerm("from array", UPPER_STRING, NAVALA_MAP.get("I"));
+    }
+
+    @Test
+    public void checkLazyCompile() {
+        perm = new Permutation(NAVALA.get("I"), UPPER);
+        assertFalse(perm.compiled());
+        assertEquals(26, perm.size());
+        checkPerm("lazy I", UPPER_STRING, NAVALA_MAP.get("I"));
+        assertTrue(perm.compiled());
+        assertTrue(new Permutation(new int[] {1, 0}, new Alphabet("AB"))
+                   .compiled());
+    }
+
+    @Test
+    public void checkSyntaxCheckedEagerly() {
+        for (String cycles : new String[] { "(AB) (C1)", "(ABC) (DA)" }) {
+            try {
+                new Permutation(cycles, UPPER);
+                fail("bad cycles " + cycles + " accepted");
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        }
+    }
+
+    @Test
+    public void checkConcurrentCompile() throws InterruptedException {
+        perm = new Permutation(NAVALA.get("II"), UPPER);
+        Permutation shared = perm;
+        Thread[] threads = new Thread[8];
+        int[][] results = new int[threads.length][];
+        for (int t = 0; t < threads.length; t += 1) {
+            int k = t;
+            threads[t] = new Thread(() -> results[k] = shared.toArray());
+            threads[t].start();
+        }
+        for (int t = 0; t < threads.length; t += 1) {
+            threads[t].join();
+            assertArrayEquals(results[0], results[t]);
+        }
+        checkPerm("shared II", UPPER_STRING, NAVALA_MAP.get("II"));
+    }
+
+    @Test
+    public void checkInsertCompiles() {
+        Machine m = Main.readConfig(navalConfig(null).toString());
+        for (Rotor r : m.allRotors()) {
+            assertFalse(r.name(), r.permutation().compiled());
+        }
+        String[] order = { "B", "Beta", "III", "IV", "I" };
+        m.insertRotors(order);
+        for (Rotor r : m.allRotors()) {
+            assertEquals(r.name(), Arrays.asList(order).contains(r.name()),
+                         r.permutation().compiled());
+        }
+    }
+
 }
@@ -0,0 +1,175 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** Permutation algebra on primitive arrays.  A permutation of 0 .. n-1 is
+ *  an int[] P of length n in which P[k] is the image of k.  Operations
+ *  write into caller-supplied destination arrays so that inner loops of
+ *  searches and table builders need not allocate; each method says which
+ *  of its arguments the destination may share storage with.
+ *  @author Thomas Nguyen
+ */
+final class Permutations {
+
+    /** Not instantiable. */
+    private Permutations() {
+    }
+
+    /** Set DEST to the identity permutation, and return it. */
+    static int[] identity(int[] dest) {
+        for (int k = 0; k < dest.length; k++) {
+            dest[k] = k;
+        }
+        return dest;
+    }
+
+    /** Set DEST to the permutation that applies FIRST and then SECOND
+     *  (DEST[k] = SECOND[FIRST[k]]), and return it.  DEST may be FIRST,
+     *  but not SECOND. */
+    static int[] compose(int[] first, int[] second, int[] dest) {
+        for (int k = 0; k < dest.length; k++) {
+            dest[k] = second[first[k]];
+        }
+        return dest;
+    }
+
+    /** Set DEST, which must not be P, to the inverse of P, and return
+     *  it. */
+    static int[] invert(int[] p, int[] dest) {
+        for (int k = 0; k < p.length; k++) {
+            dest[p[k]] = k;
+        }
+        return dest;
+    }
+
+    /** Set DEST, which must not be P, to P conjugated by a rotation of
+     *  SHIFT places: DEST[k] = P[k + SHIFT] - SHIFT, modulo the size.  This
+     *  is the permutation a rotor with wiring P performs at offset SHIFT,
+     *  and shifting by S1 and then S2 is the same as shifting by
+     *  S1 + S2.  Returns DEST. */
+    static int[] shift(int[] p, int shift, int[] dest) {
+        int n = p.length;
+        shift = Math.floorMod(shift, n);
+        for (int k = 0, j = shift; k < n; k++, j++) {
+            if (j == n) {
+                j = 0;
+            }
+            int v = p[j] - shift;
+            dest[k] = v < 0 ? v + n : v;
+        }
+        return dest;
+    }
+
+    /** Set DEST to P raised to the power EXP (negative powers being powers
+     *  of the inverse), computed by repeated squaring, and return it.
+     *  BASE and TEMP are scratch arrays of the same length as P; none of
+     *  DEST, BASE, and TEMP may share storage with each other, although P
+     *  may be BASE. */
+    static int[] power(int[] p, long exp, int[] dest, int[] base,
+                       int[] temp) {
+        if (exp < 0) {
+            invert(p, temp);
+            System.arraycopy(temp, 0, base, 0, p.length);
+            exp = -exp;
+        } else if (base != p) {
+            System.arraycopy(p, 0, base, 0, p.length);
+        }
+        identity(dest);
+        while (exp != 0) {
+            if ((exp & 1) != 0) {
+                compose(dest, base, dest);
+            }
+            exp >>>= 1;
+            if (exp != 0) {
+                compose(base, base, temp);
+                System.arraycopy(temp, 0, base, 0, p.length);
+            }
+        }
+        return dest;
+    }
+
+    /** Return true iff P maps no value to itself. */
+    static boolean isDerangement(int[] p) {
+        for (int k = 0; k < p.length; k++) {
+            if (p[k] == k) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return true iff P is a permutation of 0 .. P.length-1. */
+    static boolean isPermutation(int[] p) {
+        boolean[] seen = new boolean[p.length];
+        for (int v : p) {
+            if (v < 0 || v >= p.length || seen[v]) {
+                return false;
+            }
+            seen[v] = true;
+        }
+        return true;
+    }
+
+    /** Check that P is a permutation of 0 .. P.length-1. */
+    static void check(int[] p) {
+        if (!isPermutation(p)) {
+            throw error("mapping is not a permutation");
+        }
+    }
+
+    /** Return the lengths of the cycles of P in decreasing order.  Fixed
+     *  points count as cycles of length 1. */
+    static int[] cycleType(int[] p) {
+        int[] lengths = new int[p.length];
+        int count = cycleType(p, new boolean[p.length], lengths);
+        return Arrays.copyOf(lengths, count);
+    }
+
+    /** Store the lengths of the cycles of P in decreasing order at the
+     *  start of DEST, using SEEN (which must be all false and is left all
+     *  true) as scratch, and return the number of cycles. */
+    static int cycleType(int[] p, boolean[] seen, int[] dest) {
+        int count = 0;
+        for (int start = 0; start < p.length; start++) {
+            if (!seen[start]) {
+                int len = 0;
+                for (int k = start; !seen[k]; k = p[k]) {
+                    seen[k] = true;
+                    len++;
+                }
+                dest[count++] = len;
+            }
+        }
+        Arrays.sort(dest, 0, count);
+        for (int i = 0, j = count - 1; i < j; i++, j--) {
+            int t = dest[i];
+            dest[i] = dest[j];
+            dest[j] = t;
+        }
+        return count;
+    }
+
+    /** Return P in cycle notation over ALPHABET, omitting fixed points,
+     *  e.g. "(ABC) (DE)". */
+    static String toCycles(int[] p, Alphabet alphabet) {
+        StringBuilder result = new StringBuilder();
+        boolean[] seen = new boolean[p.length];
+        for (int start = 0; start < p.length; start++) {
+            if (!seen[start] && p[start] != start) {
+                if (result.length() > 0) {
+                    result.append(' ');
+                }
+                result.append('(');
+                for (int k = start; !seen[k]; k = p[k]) {
+                    seen[k] = true;
+                    result.appendCodePoint(alphabet.toCodePoint(k));
+                }
+                result.append(')');
+            }
+        }
+        return result.toString();
+    }
+
+}
@@ -0,0 +1,331 @@
+package enigma;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Scanner;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static enigma.EnigmaException.*;
+
+/** Main's processing of an input, as a three-stage pipeline: one thread
+ *  reads lines, another sets up the machine and converts messages, and
+ *  the thread calling run formats the results in groups and writes them,
+ *  so that input, conversion and output overlap.  Lines pass from stage
+ *  to stage in chunks, of which a fixed number circulate, returning to
+ *  the reader once written; the reader can thus run only a few chunks
+ *  ahead of the writer.  The stages are connected by ring queues with a
+ *  single producer and a single consumer, which need no locks.  The
+ *  output is exactly Main's, and an error in the input is thrown by run
+ *  after the output of every line before it has been written.  So is any
+ *  other exception or error that stops a stage, and a stage whose thread
+ *  has died without passing anything on is noticed by the next, so that
+ *  run never waits forever.
+ *  @author Thomas Nguyen
+ */
+final class Pipeline {
+
+    /** A pipeline applying M to the messages in INPUT and sending the
+     *  results to OUTPUT. */
+    Pipeline(Machine m, Scanner input, PrintStream output) {
+        _machine = m;
+        _input = input;
+        _output = output;
+        for (int k = 0; k < CHUNKS; k++) {
+            _free.put(new Chunk());
+        }
+    }
+
+    /** Process all of my input, as Main.process does. */
+    void run() {
+        Thread reader = new Thread(this::read, "enigma-reader"),
+            converter = new Thread(this::convert, "enigma-converter");
+        reader.setDaemon(true);
+        converter.setDaemon(true);
+        _toConvert.producer(reader);
+        _toWrite.producer(converter);
+        reader.start();
+        converter.start();
+        try {
+            write();
+        } finally {
+            reader.interrupt();
+            converter.interrupt();
+        }
+    }
+
+    /** The reading stage: fill free chunks with lines of input. */
+    private void read() {
+        try {
+            while (true) {
+                Chunk chunk = _free.take();
+                if (chunk == null) {
+                    return;
+                }
+                chunk.clear();
+                try {
+                    int chars = 0;
+                    while (chunk.size < CHUNK_LINES && chars < CHUNK_CHARS
+                           && _input.hasNextLine()) {
+                        String line = _input.nextLine();
+                        chunk.lines[chunk.size++] = line;
+                        chars += line.length();
+                    }
+                    chunk.last = !_input.hasNextLine();
+                } catch (Throwable excp) {
+                    chunk.failure = excp;
+                    chunk.last = true;
+                }
+                _toConvert.put(chunk);
+                if (chunk.last) {
+                    return;
+                }
+            }
+        } catch (InterruptedException excp) {
+            return;
+        }
+    }
+
+    /** The conversion stage: apply each line of each chunk to the
+     *  machine, recording the conversions of messages in the chunk. */
+    private void convert() {
+        boolean initial = true;
+        Alphabet alpha = _machine.alphabet();
+        try {
+            while (true) {
+                Chunk chunk = _toConvert.take();
+                if (chunk == null) {
+                    return;
+                }
+                Metrics.ConversionEvent event =
+                    new Metrics.ConversionEvent();
+                event.begin();
+                int pos = 0;
+                try {
+                    for (; chunk.done < chunk.size; chunk.done++) {
+                        String line = chunk.lines[chunk.done];
+                        if (line.isEmpty()) {
+                            line = " ";
+                        }
+                        if (Main.settingsLine(line, initial)) {
+                            Main.setUp(_machine, line);
+                            chunk.ends[chunk.done] = -1;
+                        } else {
+                            pos = chunk.reserve(pos, line.length());
+                            for (int x = 0; x < line.length(); ) {
+                                int c = line.codePointAt(x);
+                                x += Character.charCount(c);
+                                if (c != ' ') {
+                                    int k = Math.max(0, alpha.indexOf(c));
+                                    chunk.converted[pos++] =
+                                        alpha.toCodePoint(
+                                            _machine.convert(k));
+                                }
+                            }
+                            chunk.ends[chunk.done] = pos;
+                        }
+                        initial = false;
+                    }
+                } catch (Throwable excp) {
+                    chunk.failure = excp;
+                    chunk.last = true;
+                }
+                event.characters = pos;
+                event.commit();
+                _toWrite.put(chunk);
+                if (chunk.last) {
+                    return;
+                }
+            }
+        } catch (InterruptedException excp) {
+            return;
+        }
+    }
+
+    /** The writing stage: print the converted messages of each chunk in
+     *  groups of five, as Main does, and return the chunk to the reader.
+     *  Throws the first error found by the other stages. */
+    private void write() {
+        StringBuilder text = new StringBuilder();
+        String newline = System.lineSeparator();
+        while (true) {
+            Chunk chunk;
+            try {
+                chunk = _toWrite.take();
+            } catch (InterruptedException excp) {
+                throw error("interrupted");
+            }
+            if (chunk == null) {
+                throw error("conversion stopped unexpectedly");
+            }
+            long time = Metrics.OUTPUT.start();
+            text.setLength(0);
+            for (int k = 0, start = 0; k < chunk.done; k++) {
+                int end = chunk.ends[k];
+                if (end < 0) {
+                    continue;
+                }
+                for (int x = start; x < end; x++) {
+                    if (x != start && (x - start) % GROUP_SIZE == 0) {
+                        text.append(' ');
+                    }
+                    text.appendCodePoint(chunk.converted[x]);
+                }
+                text.append(newline);
+                start = end;
+            }
+            _output.print(text);
+            Metrics.OUTPUT.stop(time);
+            Throwable failure = chunk.failure;
+            boolean last = chunk.last;
+            _free.put(chunk);
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            } else if (failure instanceof Error) {
+                throw (Error) failure;
+            } else if (failure != null) {
+                throw new IllegalStateException(failure);
+            } else if (last) {
+                return;
+            }
+        }
+    }
+
+    /** A batch of lines and their conversions, passed between stages. */
+    private static class Chunk {
+        /** Make ready for reuse. */
+        void clear() {
+            Arrays.fill(lines, 0, size, null);
+            size = done = 0;
+            last = false;
+            failure = null;
+        }
+
+        /** Ensure that converted can hold LEN more code points after
+         *  the first POS, and return POS. */
+        int reserve(int pos, int len) {
+            if (pos + len > converted.length) {
+                converted = Arrays.copyOf(converted,
+                                          Math.max(pos + len,
+                                                   2 * converted.length));
+            }
+            return pos;
+        }
+
+        /** The lines. */
+        final String[] lines = new String[CHUNK_LINES];
+        /** Number of lines. */
+        int size;
+        /** Number of lines that were processed without error. */
+        int done;
+        /** Entry k is the end in converted of the conversion of message
+         *  line k, which starts at the end of the previous message line
+         *  (or 0), or -1 if line k is a settings line. */
+        final int[] ends = new int[CHUNK_LINES];
+        /** Code points of the conversions of the messages. */
+        int[] converted = new int[CHUNK_CHARS];
+        /** True iff this is the last chunk of the input. */
+        boolean last;
+        /** The error that stopped processing in this chunk, or null. */
+        Throwable failure;
+    }
+
+    /** A bounded queue with one producer thread and one consumer thread,
+     *  holding items of type T. */
+    private static class Ring<T> {
+        /** A queue holding up to CAPACITY items, a power of 2. */
+        Ring(int capacity) {
+            _items = new Object[capacity];
+        }
+
+        /** Add ITEM to my end, waiting while I am full. */
+        void put(T item) {
+            long tail = _tail.get();
+            for (int spins = 0; tail - _head.get() == _items.length;
+                 spins++) {
+                pause(spins);
+            }
+            _items[(int) tail & (_items.length - 1)] = item;
+            _tail.lazySet(tail + 1);
+        }
+
+        /** Make THREAD my producer, whose death take notices. */
+        void producer(Thread thread) {
+            _producer = thread;
+        }
+
+        /** Remove and return my first item, waiting while I am empty, or
+         *  return null if I am empty and my producer has died.  Throws
+         *  InterruptedException if interrupted while waiting. */
+        @SuppressWarnings("unchecked")
+        T take() throws InterruptedException {
+            long head = _head.get();
+            for (int spins = 0; _tail.get() == head; spins++) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                Thread producer = _producer;
+                if (spins >= SPINS && producer != null && !producer.isAlive()
+                    && _tail.get() == head) {
+                    return null;
+                }
+                pause(spins);
+            }
+            int k = (int) head & (_items.length - 1);
+            T result = (T) _items[k];
+            _items[k] = null;
+            _head.lazySet(head + 1);
+            return result;
+        }
+
+        /** Wait briefly, the SPINSth time in a row: spin at first, then
+         *  yield, then sleep. */
+        private static void pause(int spins) {
+            if (spins < SPINS) {
+                Thread.onSpinWait();
+            } else if (spins < SPINS + YIELDS) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+        }
+
+        /** The items, at indices modulo their length. */
+        private final Object[] _items;
+        /** Number of items ever removed. */
+        private final AtomicLong _head = new AtomicLong();
+        /** Number of items ever added. */
+        private final AtomicLong _tail = new AtomicLong();
+        /** The thread that adds my items, or null if unknown. */
+        private volatile Thread _producer;
+    }
+
+    /** Number of chunks in circulation. */
+    static final int CHUNKS = 4;
+    /** Most lines in a chunk. */
+    static final int CHUNK_LINES = 1024;
+    /** Number of characters of input after which a chunk is passed on,
+     *  even if it has fewer than CHUNK_LINES lines. */
+    static final int CHUNK_CHARS = 1 << 16;
+    /** Number of symbols in a group. */
+    private static final int GROUP_SIZE = 5;
+    /** Number of times a waiting stage spins before yielding. */
+    private static final int SPINS = 100;
+    /** Number of times a waiting stage yields before sleeping. */
+    private static final int YIELDS = 100;
+    /** Time in nanoseconds for which a waiting stage sleeps. */
+    private static final long PARK_NANOS = 50_000;
+
+    /** The machine. */
+    private final Machine _machine;
+    /** Source of input. */
+    private final Scanner _input;
+    /** Destination of output. */
+    private final PrintStream _output;
+    /** Chunks ready for the reader. */
+    private final Ring<Chunk> _free = new Ring<>(CHUNKS);
+    /** Chunks ready for the converter. */
+    private final Ring<Chunk> _toConvert = new Ring<>(CHUNKS);
+    /** Chunks ready for the writer. */
+    private final Ring<Chunk> _toWrite = new Ring<>(CHUNKS);
+}
@@ -0,0 +1,114 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.util.Scanner;
+import java.util.ServiceConfigurationError;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Pipeline class.
+ *  @author Thomas Nguyen
+ */
+public class PipelineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return what Main, processing INPUT sequentially (if PIPELINED is
+     *  false) or with a Pipeline, prints, followed by the message of the
+     *  error it reports, if any. */
+    private String output(String input, boolean pipelined) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true,
+                                          Charset.defaultCharset());
+        Scanner in = new Scanner(input);
+        String error = "";
+        try {
+            if (pipelined) {
+                new Pipeline(navalMachine(), in, out).run();
+            } else {
+                Main.process(navalMachine(), in, out);
+            }
+        } catch (EnigmaException excp) {
+            error = "Error: " + excp.getMessage();
+        }
+        return new String(bytes.toByteArray(), Charset.defaultCharset())
+            + error;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkSameOutput() {
+        for (int lines : new int[] {0, 1, 5, 1023, 1024, 1025, 5000}) {
+            String text = input(lines, lines, 300, 120, true);
+            assertEquals(output(text, false), output(text, true));
+        }
+    }
+
+    @Test
+    public void checkErrors() {
+        String text = input(3000, 38, 300, 120, true);
+        String bad = text.substring(0, text.indexOf("* B", 2000))
+            + "* B Beta I II XI AAAA\n" + text;
+        String expected = output(bad, false);
+        assertTrue(expected.endsWith("Improper Name"));
+        assertEquals(expected, output(bad, true));
+        assertEquals(output("HELLO\n" + text, false),
+                     output("HELLO\n" + text, true));
+    }
+
+    @Test
+    public void checkStageErrors() {
+        Machine naval = navalMachine();
+        Machine failing = new Machine(naval.alphabet(), 5, 3,
+                                      naval.allRotors()) {
+                @Override
+                int convert(int c) {
+                    throw new StackOverflowError("converter failed");
+                }
+            };
+        String text = input(100, 39, 300, 120, false);
+        try {
+            new Pipeline(failing, new Scanner(text), new PrintStream(
+                             new ByteArrayOutputStream())).run();
+            fail("converter's error not thrown");
+        } catch (StackOverflowError excp) {
+            assertEquals("converter failed", excp.getMessage());
+        }
+
+        Readable broken = new Readable() {
+                @Override
+                public int read(CharBuffer buffer) {
+                    if (_read) {
+                        throw new ServiceConfigurationError("reader failed");
+                    }
+                    _read = true;
+                    buffer.put("* B Beta I II III AAAA\nHELLO\n");
+                    return buffer.position();
+                }
+
+                /** True once my text has been read. */
+                private boolean _read;
+            };
+        try {
+            new Pipeline(navalMachine(), new Scanner(broken),
+                         new PrintStream(new ByteArrayOutputStream())).run();
+            fail("reader's error not thrown");
+        } catch (ServiceConfigurationError excp) {
+            assertEquals("reader failed", excp.getMessage());
+        }
+    }
+
+}
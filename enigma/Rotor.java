@@ -33,6 +33,13 @@ class Rotor {
      * @param cring is alphabet ring*/
     void setRing(char cring) {
         _ring = _permutation.alphabet().toInt(cring);
+        updateOffset();
+    }
+
+    /** Set ring() to RING. */
+    void setRing(int ring) {
+        _ring = ring;
+        updateOffset();
     }
 
     /** Return my alphabet. */
@@ -74,16 +81,37 @@ class Rotor {
     /** Set setting() to POSN.  */
     void set(int posn) {
         _setting = posn;
+        updateOffset();
     }
 
     /** Set setting() to character CPOSN. */
     void set(char cposn) {
         _setting = alphabet().toInt(cposn);
+        updateOffset();
+    }
+
+    /** Convert from now on by looking up my permutation's shifted tables
+     *  (see Permutation.shiftedForward), if it has them, rather than by
+     *  arithmetic.  Builds my permutation's tables, if it has not built
+     *  them yet. */
+    void useShiftedTables() {
+        _permutation.compile();
+        _shiftedForward = _permutation.shiftedForward();
+        _shiftedInverse = _permutation.shiftedInverse();
+    }
+
+    /** Recompute _offset after a change of setting or ring. */
+    private void updateOffset() {
+        _offset = _permutation.wrap(_setting - _ring) * _permutation.size();
     }
 
     /** Return the conversion of P (an integer in the range 0..size()-1)
      *  according to my permutation. */
     int convertForward(int p) {
+        IndexTable table = _shiftedForward;
+        if (table != null) {
+            return table.get(_offset + p);
+        }
         int input = _permutation.wrap(p + setting() - ring());
         int permput = _permutation.permute(input);
         return _permutation.wrap(permput - setting() + ring());
@@ -93,6 +121,10 @@ class Rotor {
     /** Return the conversion of E (an integer in the range 0..size()-1)
      *  according to the inverse of my permutation. */
     int convertBackward(int e) {
+        IndexTable table = _shiftedInverse;
+        if (table != null) {
+            return table.get(_offset + e);
+        }
         int input = _permutation.wrap(e + setting() - ring());
         int permput = _permutation.invert(input);
         return _permutation.wrap(permput - setting() + ring());
@@ -104,10 +136,33 @@ class Rotor {
         return false;
     }
 
+    /** Return the number of times I must advance to reach a notch: 0 if
+     *  atNotch(), and Integer.MAX_VALUE if I never will.  By default,
+     *  I have no notches. */
+    int distanceToNotch() {
+        return Integer.MAX_VALUE;
+    }
+
     /** Advance me one position, if possible. By default, does nothing. */
     void advance() {
     }
 
+    /** Return a new rotor like me, with my current setting and ring, that
+     *  shares my permutation but none of my mutable state. */
+    Rotor copy() {
+        return copyState(new Rotor(_name, _permutation));
+    }
+
+    /** Give ROTOR my setting and ring, and return it. */
+    final Rotor copyState(Rotor rotor) {
+        rotor._setting = _setting;
+        rotor._ring = _ring;
+        rotor._offset = _offset;
+        rotor._shiftedForward = _shiftedForward;
+        rotor._shiftedInverse = _shiftedInverse;
+        return rotor;
+    }
+
     @Override
     public String toString() {
         return "Rotor " + _name;
@@ -119,5 +174,15 @@ class Rotor {
     /** The permutation implemented by this rotor in its 0 position. */
     private Permutation _permutation;
 
+    /** The wrapped difference of my setting and ring, times my size: the
+     *  start of my row in _shiftedForward and _shiftedInverse. */
+    private int _offset;
+
+    /** My permutation's shiftedForward table, if I use it, or null. */
+    private IndexTable _shiftedForward;
+
+    /** My permutation's shiftedInverse table, if I use it, or null. */
+    private IndexTable _shiftedInverse;
+
 
 }
@@ -0,0 +1,582 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import static enigma.EnigmaException.*;
+import static enigma.SearchWorker.Candidate;
+
+/** A key search spread over worker processes.  Usage:
+ *
+ *      java enigma.Main --search [-w WORKERS] [-k TOP] [-u UNIT] [-r]
+ *                                [-s STATEFILE] CONFIG CIPHERFILE
+ *
+ *  Searches the keys of the machine configured by CONFIG (every legal
+ *  rotor order, with every rotor position and, with -r, every ring
+ *  setting) for those under which the ciphertext in CIPHERFILE (ignoring
+ *  whitespace) decrypts to text that looks most like language, as
+ *  SearchWorker scores it, and prints the TOP (default 10) best as lines
+ *  "SCORE RANK ORDER POSITIONS RINGS", best first.  The key space is
+ *  divided by rank into units of UNIT keys (by default, one rotor order
+ *  each), which are handed out over loopback sockets to WORKERS (by
+ *  default, one per processor) worker processes, each a JVM running
+ *  SearchWorker.  Each worker takes a new unit when it finishes one, so
+ *  faster workers do more.  A unit held by a worker whose connection
+ *  fails or closes is handed to another worker, so the search survives
+ *  the loss of any workers but the last.
+ *
+ *  Units are handed out in a random order, so that the best keys found
+ *  early come from all over the key space.  With -s, the state of the
+ *  search (which units are finished, the best keys so far, and the seed
+ *  of that order) is saved in STATEFILE every few seconds, replacing it
+ *  atomically, as Checkpoint does.  If STATEFILE exists at the start, the
+ *  search resumes from it, searching only the units not finished, in the
+ *  same order as before.  STATEFILE is deleted when the search is done.
+ *  @author Thomas Nguyen
+ */
+final class SearchCoordinator implements AutoCloseable {
+
+    /** A search of the keys of the machine configured by the file CONFIG,
+     *  including ring settings iff RINGS, for the TOP best decryptions
+     *  of CIPHER, in units of UNIT keys, without saving its state.
+     *  Workers are to connect to port(). */
+    SearchCoordinator(String config, String cipher, boolean rings, int top,
+                      long unit) {
+        this(config, cipher, rings, top, unit, null);
+    }
+
+    /** As for SearchCoordinator(CONFIG, CIPHER, RINGS, TOP, UNIT), but
+     *  saving the state of the search in STATE, unless it is null, and
+     *  resuming from STATE if it exists. */
+    SearchCoordinator(String config, String cipher, boolean rings, int top,
+                      long unit, Path state) {
+        if (top <= 0) {
+            throw error("bad number of results");
+        }
+        if (unit <= 0) {
+            throw error("bad unit size");
+        }
+        _config = new File(config).getAbsolutePath();
+        Machine m = Main.readConfig(_config);
+        _space = new KeySpace(m.alphabet(), KeySpace.allOrders(m), rings);
+        _cipher = cipherString(m.alphabet(), cipher);
+        _rings = rings;
+        _top = top;
+        if ((_space.size() - 1) / unit >= MAX_UNITS) {
+            throw error("too many units; use larger ones");
+        }
+        _unit = unit;
+        _units = (int) ((_space.size() - 1) / unit + 1);
+        _state = state;
+        long seed = new Random().nextLong();
+        if (state != null && Files.exists(state)) {
+            seed = restore(state);
+        }
+        _seed = seed;
+        int[] order = new int[_units];
+        Random random = new Random(seed);
+        for (int k = 0; k < _units; k += 1) {
+            int j = random.nextInt(k + 1);
+            order[k] = order[j];
+            order[j] = k;
+        }
+        for (int id : order) {
+            if (!_finished.get(id)) {
+                _pending.add(new Unit(id, id * unit,
+                                      Math.min(_space.size(),
+                                               (id + 1) * unit)));
+            }
+        }
+        _remaining = _pending.size();
+        _saved = System.nanoTime();
+        _changed = true;
+        try {
+            _server = new ServerSocket(0, 0, InetAddress.getLoopbackAddress());
+        } catch (IOException excp) {
+            throw error("could not listen: %s", excp.getMessage());
+        }
+        Thread acceptor = new Thread(this::accept, "search-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /** Run with ARGS, as described above. */
+    static void run(String... args) {
+        int workers = Runtime.getRuntime().availableProcessors(), top = 10;
+        long unit = 0;
+        boolean rings = false;
+        Path state = null;
+        int k;
+        for (k = 0; k < args.length && args[k].startsWith("-"); k += 1) {
+            if (args[k].equals("-r")) {
+                rings = true;
+            } else if (k + 1 < args.length && args[k].equals("-w")) {
+                workers = (int) number(args[++k]);
+            } else if (k + 1 < args.length && args[k].equals("-k")) {
+                top = (int) number(args[++k]);
+            } else if (k + 1 < args.length && args[k].equals("-u")) {
+                unit = number(args[++k]);
+            } else if (k + 1 < args.length && args[k].equals("-s")) {
+                state = Paths.get(args[++k]);
+            } else {
+                break;
+            }
+        }
+        if (args.length != k + 2 || workers <= 0) {
+            throw error("Usage: --search [-w WORKERS] [-k TOP] [-u UNIT] "
+                        + "[-r] [-s STATEFILE] CONFIG CIPHERFILE");
+        }
+        String cipher;
+        try {
+            cipher = Files.readString(Paths.get(args[k + 1]),
+                                      Charset.defaultCharset());
+        } catch (IOException excp) {
+            throw error("could not read %s", args[k + 1]);
+        }
+        if (unit == 0) {
+            Machine m = Main.readConfig(args[k]);
+            unit = new KeySpace(m.alphabet(), KeySpace.allOrders(m), rings)
+                .sizePerOrder();
+        }
+        try (SearchCoordinator search =
+             new SearchCoordinator(args[k], cipher, rings, top, unit,
+                                   state)) {
+            search.launch(workers);
+            for (Candidate c : search.run()) {
+                System.out.printf("%.6f %d %s%n", c.score(), c.rank(),
+                                  search.key(c.rank()));
+            }
+        }
+    }
+
+    /** Return the port on which I accept workers. */
+    int port() {
+        return _server.getLocalPort();
+    }
+
+    /** Return the number of units not yet searched. */
+    synchronized int remaining() {
+        return _remaining;
+    }
+
+    /** Return my key space. */
+    KeySpace space() {
+        return _space;
+    }
+
+    /** Return the key of rank RANK. */
+    KeySpace.Key key(long rank) {
+        return _space.key(rank);
+    }
+
+    /** Start N worker processes, using the Java runtime and class path of
+     *  this one. */
+    void launch(int n) {
+        String java = Paths.get(System.getProperty("java.home"), "bin",
+                                "java").toString();
+        for (int k = 0; k < n; k += 1) {
+            ProcessBuilder builder =
+                new ProcessBuilder(java, "-cp",
+                                   System.getProperty("java.class.path"),
+                                   "enigma.Main", "--search-worker",
+                                   Integer.toString(port()));
+            builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+            builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+            try {
+                Process worker = builder.start();
+                synchronized (this) {
+                    _processes.add(worker);
+                }
+            } catch (IOException excp) {
+                throw error("could not start worker: %s",
+                            excp.getMessage());
+            }
+        }
+    }
+
+    /** Wait for every unit to be searched, saving my state periodically,
+     *  and return the best keys found, best first.  Throws an error if
+     *  every worker process I launched has died while there is work
+     *  left. */
+    List<Candidate> run() {
+        while (true) {
+            synchronized (this) {
+                if (_remaining == 0) {
+                    break;
+                }
+                if (!_processes.isEmpty() && _connections == 0
+                    && _processes.stream().noneMatch(Process::isAlive)) {
+                    save();
+                    throw error("all workers failed; %d units not searched",
+                                _remaining);
+                }
+                try {
+                    wait(POLL_MILLIS);
+                } catch (InterruptedException excp) {
+                    throw error("interrupted");
+                }
+            }
+            if (System.nanoTime() - _saved >= SAVE_NANOS) {
+                save();
+            }
+        }
+        if (_state != null) {
+            try {
+                Files.deleteIfExists(_state);
+            } catch (IOException excp) {
+                throw error("could not delete %s", _state);
+            }
+        }
+        synchronized (this) {
+            List<Candidate> result = new ArrayList<>(_best);
+            result.sort(Collections.reverseOrder());
+            return result;
+        }
+    }
+
+    /** Save the state of my search, if I have a state file and it has
+     *  changed since last saved.  The state is copied while locked, but
+     *  written while the workers carry on. */
+    void save() {
+        _saved = System.nanoTime();
+        Properties state = new Properties();
+        synchronized (this) {
+            if (_state == null || !_changed) {
+                return;
+            }
+            _changed = false;
+            state.setProperty("config", _config);
+            state.setProperty("cipher", checksum(_cipher));
+            state.setProperty("rings", Boolean.toString(_rings));
+            state.setProperty("top", Integer.toString(_top));
+            state.setProperty("unit", Long.toString(_unit));
+            state.setProperty("keys", Long.toString(_space.size()));
+            state.setProperty("seed", Long.toString(_seed));
+            state.setProperty("finished", ranges(_finished));
+            StringBuilder best = new StringBuilder();
+            for (Candidate c : _best) {
+                best.append(best.length() == 0 ? "" : " ").append(c.rank())
+                    .append(':').append(Double.toString(c.score()));
+            }
+            state.setProperty("best", best.toString());
+        }
+        Path temp = Paths.get(_state + ".tmp");
+        try {
+            try (FileOutputStream out = new FileOutputStream(temp.toFile())) {
+                state.store(out, "enigma search");
+                out.getFD().sync();
+            }
+            Files.move(temp, _state, StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw error("could not save search: %s", excp.getMessage());
+        }
+    }
+
+    /** Restore the finished units and best keys saved in the file STATE,
+     *  checking that it is for the same search as mine, and return the
+     *  seed of its order of units. */
+    private long restore(Path state) {
+        Properties saved = new Properties();
+        try (InputStream in = Files.newInputStream(state)) {
+            saved.load(in);
+        } catch (IOException excp) {
+            throw error("could not read search state %s", state);
+        }
+        if (!_config.equals(saved.getProperty("config"))
+            || !checksum(_cipher).equals(saved.getProperty("cipher"))
+            || !Boolean.toString(_rings).equals(saved.getProperty("rings"))
+            || !Integer.toString(_top).equals(saved.getProperty("top"))
+            || !Long.toString(_unit).equals(saved.getProperty("unit"))
+            || !Long.toString(_space.size()).equals(
+                saved.getProperty("keys"))) {
+            throw error("%s is the state of a different search", state);
+        }
+        try {
+            for (String range : saved.getProperty("finished", "")
+                     .split(" ")) {
+                if (!range.isEmpty()) {
+                    String[] ends = range.split("-");
+                    int first = Integer.parseInt(ends[0]),
+                        last = Integer.parseInt(ends[ends.length - 1]);
+                    if (first < 0 || last < first || last >= _units) {
+                        throw new NumberFormatException();
+                    }
+                    _finished.set(first, last + 1);
+                }
+            }
+            for (String c : saved.getProperty("best", "").split(" ")) {
+                if (!c.isEmpty()) {
+                    String[] fields = c.split(":");
+                    SearchWorker.keep(_best,
+                                      new Candidate(Long.parseLong(fields[0]),
+                                                    Double.parseDouble(
+                                                        fields[1])), _top);
+                }
+            }
+            return Long.parseLong(saved.getProperty("seed"));
+        } catch (NumberFormatException
+                 | ArrayIndexOutOfBoundsException excp) {
+            throw error("corrupt search state %s", state);
+        }
+    }
+
+    /** Return the set bits of BITS as blank-separated ranges, "K" or
+     *  "K-L". */
+    private static String ranges(BitSet bits) {
+        StringBuilder result = new StringBuilder();
+        for (int k = bits.nextSetBit(0); k >= 0;
+             k = bits.nextSetBit(bits.nextClearBit(k))) {
+            int last = bits.nextClearBit(k) - 1;
+            result.append(result.length() == 0 ? "" : " ").append(k);
+            if (last > k) {
+                result.append('-').append(last);
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return a checksum of TEXT, with its length. */
+    private static String checksum(String text) {
+        CRC32 crc = new CRC32();
+        crc.update(text.getBytes(StandardCharsets.UTF_8));
+        return text.length() + ":" + Long.toHexString(crc.getValue());
+    }
+
+    /** Stop accepting workers, and end my worker processes. */
+    @Override
+    public void close() {
+        synchronized (this) {
+            _closed = true;
+            notifyAll();
+        }
+        try {
+            _server.close();
+        } catch (IOException excp) {
+            /* Ignore IOException */
+        }
+        synchronized (this) {
+            for (Process worker : _processes) {
+                worker.destroy();
+            }
+        }
+    }
+
+    /** Accept connections from workers, serving each on its own thread,
+     *  until closed. */
+    private void accept() {
+        while (true) {
+            Socket socket;
+            try {
+                socket = _server.accept();
+            } catch (IOException excp) {
+                return;
+            }
+            synchronized (this) {
+                _connections += 1;
+            }
+            Thread handler = new Thread(() -> serve(socket), "search-worker");
+            handler.setDaemon(true);
+            handler.start();
+        }
+    }
+
+    /** Hand units to the worker on SOCKET, and collect its results, until
+     *  there are no units left or the connection fails.  The unit held
+     *  when the connection fails is returned to be handed out again. */
+    private void serve(Socket socket) {
+        Unit unit = null;
+        try (socket) {
+            BufferedReader in = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(),
+                                      StandardCharsets.UTF_8));
+            PrintStream out = new PrintStream(socket.getOutputStream(),
+                                              false, StandardCharsets.UTF_8);
+            out.printf("JOB %d %d%n", _rings ? 1 : 0, _top);
+            out.printf("CONFIG %s%n", _config);
+            out.printf("CIPHER %s%n", _cipher);
+            while ((unit = take()) != null) {
+                out.printf("UNIT %d %d %d%n", unit.id, unit.from, unit.to);
+                out.flush();
+                if (out.checkError()) {
+                    throw new IOException("error writing to worker");
+                }
+                List<Candidate> results = new ArrayList<>();
+                String done = "DONE " + unit.id;
+                for (String line = in.readLine(); !done.equals(line);
+                     line = in.readLine()) {
+                    results.add(result(line, unit));
+                }
+                complete(unit, results);
+                unit = null;
+            }
+            out.println("QUIT");
+            out.flush();
+        } catch (IOException | EnigmaException
+                 | NumberFormatException excp) {
+            /* The worker is lost; its unit is handed out again below. */
+        } finally {
+            synchronized (this) {
+                if (unit != null) {
+                    _pending.addFirst(unit);
+                }
+                _connections -= 1;
+                notifyAll();
+            }
+        }
+    }
+
+    /** Return the next unit to search, waiting while all of the units
+     *  left are held by other workers, or null if there are none left. */
+    private synchronized Unit take() {
+        while (_pending.isEmpty() && _remaining > 0 && !_closed) {
+            try {
+                wait();
+            } catch (InterruptedException excp) {
+                return null;
+            }
+        }
+        return _closed ? null : _pending.poll();
+    }
+
+    /** Record that UNIT has been searched, finding RESULTS.  A unit
+     *  already recorded is ignored. */
+    private synchronized void complete(Unit unit, List<Candidate> results) {
+        if (_finished.get(unit.id)) {
+            return;
+        }
+        _finished.set(unit.id);
+        _changed = true;
+        for (Candidate c : results) {
+            SearchWorker.keep(_best, c, _top);
+        }
+        _remaining -= 1;
+        notifyAll();
+    }
+
+    /** Return the candidate reported by LINE, a RESULT line for UNIT.
+     *  Throws IOException if LINE is not one. */
+    private static Candidate result(String line, Unit unit)
+        throws IOException {
+        String[] fields = line == null ? new String[0] : line.split(" ");
+        if (fields.length != 4 || !fields[0].equals("RESULT")
+            || Integer.parseInt(fields[1]) != unit.id) {
+            throw new IOException("protocol error");
+        }
+        long rank = Long.parseLong(fields[2]);
+        if (rank < unit.from || rank >= unit.to) {
+            throw new IOException("result out of range");
+        }
+        return new Candidate(rank, Double.parseDouble(fields[3]));
+    }
+
+    /** Return the ciphertext TEXT, checked to be in ALPHA, without
+     *  whitespace. */
+    private static String cipherString(Alphabet alpha, String text) {
+        int[] cipher = SearchWorker.indices(text, alpha);
+        for (int k = 0; k < cipher.length; k += 1) {
+            cipher[k] = alpha.toCodePoint(cipher[k]);
+        }
+        return new String(cipher, 0, cipher.length);
+    }
+
+    /** Return the positive number NUM. */
+    private static long number(String num) {
+        try {
+            long result = Long.parseLong(num);
+            if (result > 0) {
+                return result;
+            }
+        } catch (NumberFormatException excp) {
+            /* Fall through */
+        }
+        throw error("bad number: %s", num);
+    }
+
+    /** A range of key ranks searched as one piece of work. */
+    private static class Unit {
+        /** Unit #ID, covering ranks FROM .. TO-1. */
+        Unit(int id, long from, long to) {
+            this.id = id;
+            this.from = from;
+            this.to = to;
+        }
+
+        /** My number. */
+        final int id;
+        /** My first rank. */
+        final long from;
+        /** The rank after my last. */
+        final long to;
+    }
+
+    /** Largest number of units. */
+    static final int MAX_UNITS = 1 << 20;
+    /** Time in milliseconds between checks that workers are alive. */
+    private static final long POLL_MILLIS = 100;
+    /** Time in nanoseconds between saves of the state of a search. */
+    static final long SAVE_NANOS = 5_000_000_000L;
+
+    /** Absolute name of the configuration file. */
+    private final String _config;
+    /** The keys searched. */
+    private final KeySpace _space;
+    /** The ciphertext, without whitespace. */
+    private final String _cipher;
+    /** True iff ring settings are searched. */
+    private final boolean _rings;
+    /** Number of best keys reported. */
+    private final int _top;
+    /** Listens for workers. */
+    private final ServerSocket _server;
+    /** Units not yet handed out, or handed back. */
+    private final Deque<Unit> _pending = new ArrayDeque<>();
+    /** Number of keys per unit. */
+    private final long _unit;
+    /** Number of units. */
+    private final int _units;
+    /** Seed of the order in which units are handed out. */
+    private final long _seed;
+    /** File in which my state is saved, or null. */
+    private final Path _state;
+    /** Value of System.nanoTime() when my state was last saved. */
+    private volatile long _saved;
+    /** True iff units have been finished since my state was saved. */
+    private boolean _changed;
+    /** Bit k is set once unit #k has been searched. */
+    private final BitSet _finished = new BitSet();
+    /** Number of units not yet searched. */
+    private int _remaining;
+    /** The best keys found so far, worst first. */
+    private final PriorityQueue<Candidate> _best = new PriorityQueue<>();
+    /** The worker processes I launched. */
+    private final List<Process> _processes = new ArrayList<>();
+    /** Number of workers connected. */
+    private int _connections;
+    /** True once closed. */
+    private boolean _closed;
+}
@@ -0,0 +1,230 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import static enigma.SearchWorker.Candidate;
+
+/** The suite of all JUnit tests for SearchCoordinator and SearchWorker.
+ *  @author Thomas Nguyen
+ */
+public class SearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A small configuration: three moving rotors, two slots. */
+    private static final String CONFIG =
+        "ABCDEFGH\n3 2\n"
+        + "X MB (ACEGBDFH)\n"
+        + "Y MD (AHBG) (CF) (DE)\n"
+        + "Z MF (AEBH) (CGD) (F)\n"
+        + "R R (AF) (BD) (CH) (EG)\n";
+
+    /** The settings line of the key used to encrypt. */
+    private static final String SETTINGS = "* R Z X CF";
+
+    /** Return the name of a new file holding CONFIG. */
+    private String configFile() throws IOException {
+        Path file = Files.createTempFile("search", ".conf");
+        file.toFile().deleteOnExit();
+        Files.writeString(file, CONFIG, Charset.defaultCharset());
+        return file.toString();
+    }
+
+    /** Return a ciphertext of LEN symbols: the encryption under SETTINGS
+     *  of text in which A and B are much commoner than the rest. */
+    private String cipher(String config, int len) {
+        Machine m = Main.readConfig(config);
+        Main.setUp(m, SETTINGS);
+        Random random = new Random(43);
+        StringBuilder plain = new StringBuilder();
+        for (int k = 0; k < len; k++) {
+            int r = random.nextInt(16);
+            plain.append("ABCDEFGH".charAt(r < 10 ? r % 2 : r - 8));
+        }
+        return m.convert(plain.toString());
+    }
+
+    /** Return the best TOP keys for CIPHER found by one worker searching
+     *  the whole key space of SEARCH. */
+    private List<Candidate> sequential(String config, String cipher,
+                                       SearchCoordinator search, int top) {
+        Machine m = Main.readConfig(config);
+        SearchWorker worker =
+            new SearchWorker(m, search.space(),
+                             SearchWorker.indices(cipher, m.alphabet()), top);
+        return worker.search(0, search.space().size());
+    }
+
+    /** Start a worker thread connecting to SEARCH. */
+    private void worker(SearchCoordinator search) {
+        Thread worker = new Thread(() -> {
+                try {
+                    SearchWorker.run(Integer.toString(search.port()));
+                } catch (EnigmaException excp) {
+                    /* Coordinator closed. */
+                }
+            });
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /** Connect to SEARCH as a worker and search COUNT units, using
+     *  WORKER, then disconnect without being told to. */
+    private void partialWorker(SearchCoordinator search, SearchWorker worker,
+                               int count) throws IOException {
+        try (Socket socket =
+             new Socket(InetAddress.getLoopbackAddress(), search.port())) {
+            BufferedReader in = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(),
+                                      StandardCharsets.UTF_8));
+            PrintStream out = new PrintStream(socket.getOutputStream(),
+                                              true, StandardCharsets.UTF_8);
+            for (int k = 0; k < 3; k++) {
+                in.readLine();
+            }
+            for (int k = 0; k < count; k++) {
+                String[] unit = in.readLine().split(" ");
+                for (Candidate c
+                         : worker.search(Long.parseLong(unit[2]),
+                                         Long.parseLong(unit[3]))) {
+                    out.printf("RESULT %s %d %s%n", unit[1], c.rank(),
+                               Double.toString(c.score()));
+                }
+                out.printf("DONE %s%n", unit[1]);
+            }
+        }
+    }
+
+    /** Assert that EXPECTED and ACTUAL hold the same keys, in order, with
+     *  the same scores. */
+    private void assertSameResults(List<Candidate> expected,
+                                   List<Candidate> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int k = 0; k < expected.size(); k++) {
+            assertEquals(expected.get(k).rank(), actual.get(k).rank());
+            assertEquals(expected.get(k).score(), actual.get(k).score(),
+                         0.0);
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkSearch() throws IOException {
+        String config = configFile(), cipher = cipher(config, 400);
+        try (SearchCoordinator search =
+             new SearchCoordinator(config, cipher, false, 5, 10)) {
+            assertEquals(6 * 64, search.space().size());
+            for (int k = 0; k < 3; k++) {
+                worker(search);
+            }
+            List<Candidate> result = search.run();
+            assertSameResults(sequential(config, cipher, search, 5),
+                              result);
+            assertEquals("R Z X CF AA",
+                         search.key(result.get(0).rank()).toString());
+        }
+    }
+
+    @Test
+    public void checkLostWorker() throws IOException {
+        String config = configFile(), cipher = cipher(config, 200);
+        try (SearchCoordinator search =
+             new SearchCoordinator(config, cipher, true, 3, 1000)) {
+            try (Socket socket =
+                 new Socket(InetAddress.getLoopbackAddress(),
+                            search.port())) {
+                BufferedReader in = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(),
+                                          StandardCharsets.UTF_8));
+                assertEquals("JOB 1 3", in.readLine());
+                assertTrue(in.readLine().startsWith("CONFIG "));
+                assertTrue(in.readLine().startsWith("CIPHER "));
+                assertTrue(in.readLine().startsWith("UNIT "));
+            }
+            worker(search);
+            assertSameResults(sequential(config, cipher, search, 3),
+                              search.run());
+        }
+    }
+
+    @Test
+    public void checkWorkerProcesses() throws IOException {
+        String config = configFile(), cipher = cipher(config, 300);
+        try (SearchCoordinator search =
+             new SearchCoordinator(config, cipher, false, 4, 64)) {
+            search.launch(2);
+            assertSameResults(sequential(config, cipher, search, 4),
+                              search.run());
+        }
+    }
+
+    @Test
+    public void checkResume() throws Exception {
+        String config = configFile(), cipher = cipher(config, 300);
+        Path state = Files.createTempFile("search", ".state");
+        Files.delete(state);
+        Machine m = Main.readConfig(config);
+        List<Candidate> expected;
+        try (SearchCoordinator search =
+             new SearchCoordinator(config, cipher, true, 4, 512, state)) {
+            assertEquals(48, search.remaining());
+            expected = sequential(config, cipher, search, 4);
+            partialWorker(search,
+                          new SearchWorker(m, search.space(),
+                                           SearchWorker.indices(
+                                               cipher, m.alphabet()), 4),
+                          10);
+            while (search.remaining() > 38) {
+                Thread.sleep(10);
+            }
+            search.save();
+        }
+        assertTrue(Files.exists(state));
+        try (SearchCoordinator search =
+             new SearchCoordinator(config, cipher, true, 4, 512, state)) {
+            assertEquals(38, search.remaining());
+            worker(search);
+            assertSameResults(expected, search.run());
+        }
+        assertFalse(Files.exists(state));
+
+        try (SearchCoordinator search =
+             new SearchCoordinator(config, cipher, true, 4, 512, state)) {
+            search.save();
+        }
+        try {
+            new SearchCoordinator(config, cipher, true, 5, 512, state);
+            fail("resumed a different search");
+        } catch (EnigmaException excp) {
+            /* Expected */
+        }
+        Files.delete(state);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkBadCipher() throws IOException {
+        new SearchCoordinator(configFile(), "ABCXYZ", false, 5, 10).close();
+    }
+
+}
@@ -0,0 +1,246 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import static enigma.EnigmaException.*;
+
+/** A worker process of a distributed key search (see SearchCoordinator).
+ *  Usage (normally only by SearchCoordinator):
+ *
+ *      java enigma.Main --search-worker PORT
+ *
+ *  connects to the coordinator on PORT of the loopback interface, reads
+ *  the job, and then searches each unit of the key space it is given,
+ *  until told to quit.  The protocol, in lines of UTF-8 text, is:
+ *
+ *      coordinator: JOB RINGS TOP         (RINGS is 1 to search rings)
+ *      coordinator: CONFIG PATH           (a configuration file)
+ *      coordinator: CIPHER TEXT           (the ciphertext, no blanks)
+ *      coordinator: UNIT ID FROM TO       (search key ranks FROM..TO-1)
+ *      worker:      RESULT ID RANK SCORE  (for each of up to TOP keys)
+ *      worker:      DONE ID
+ *      ...
+ *      coordinator: QUIT
+ *
+ *  A key's score is the index of coincidence of the ciphertext decrypted
+ *  with that key and no plugboard, which is highest for the keys nearest
+ *  the true one.
+ *  @author Thomas Nguyen
+ */
+final class SearchWorker {
+
+    /** A worker searching the keys of SPACE for machine M, with
+     *  ciphertext CIPHER (as indices in M's alphabet), keeping the TOP
+     *  best keys of each unit. */
+    SearchWorker(Machine m, KeySpace space, int[] cipher, int top) {
+        _machine = m.copy();
+        _machine.setPlugboard(null);
+        _space = space;
+        _cipher = cipher;
+        _top = top;
+        _plain = new int[cipher.length];
+        _counts = new int[m.alphabet().size()];
+    }
+
+    /** Run a worker with ARGS, as described above. */
+    static void run(String... args) {
+        if (args.length != 1) {
+            throw error("Usage: --search-worker PORT");
+        }
+        int port;
+        try {
+            port = Integer.parseInt(args[0]);
+        } catch (NumberFormatException excp) {
+            throw error("bad port: %s", args[0]);
+        }
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+                                        port)) {
+            serve(new BufferedReader(new InputStreamReader(
+                                         socket.getInputStream(),
+                                         StandardCharsets.UTF_8)),
+                  new PrintStream(socket.getOutputStream(), false,
+                                  StandardCharsets.UTF_8));
+        } catch (IOException excp) {
+            throw error("lost coordinator: %s", excp.getMessage());
+        }
+    }
+
+    /** Carry out the job read from IN, sending results to OUT, as
+     *  described above. */
+    static void serve(BufferedReader in, PrintStream out)
+        throws IOException {
+        String[] job = fields(in.readLine(), "JOB", 3);
+        String config = field(in.readLine(), "CONFIG");
+        String cipher = field(in.readLine(), "CIPHER");
+        Machine m = Main.readConfig(config);
+        KeySpace space = new KeySpace(m.alphabet(), KeySpace.allOrders(m),
+                                      job[1].equals("1"));
+        SearchWorker worker = new SearchWorker(m, space,
+                                               indices(cipher, m.alphabet()),
+                                               Integer.parseInt(job[2]));
+        for (String line = in.readLine(); line != null
+                 && !line.equals("QUIT"); line = in.readLine()) {
+            String[] unit = fields(line, "UNIT", 4);
+            for (Candidate c : worker.search(Long.parseLong(unit[2]),
+                                             Long.parseLong(unit[3]))) {
+                out.printf("RESULT %s %d %s%n", unit[1], c.rank(),
+                           Double.toString(c.score()));
+            }
+            out.printf("DONE %s%n", unit[1]);
+            out.flush();
+            if (out.checkError()) {
+                throw new IOException("error writing results");
+            }
+        }
+    }
+
+    /** Return the best keys with ranks FROM .. TO-1, best first, up to
+     *  my limit. */
+    List<Candidate> search(long from, long to) {
+        PriorityQueue<Candidate> best = new PriorityQueue<>();
+        KeySpace.Cursor cursor = _space.cursor(from, to);
+        Rotor[] rotors = null;
+        while (cursor.next()) {
+            if (rotors == null || cursor.delta() < 0) {
+                _machine.insertRotors(_space.orders().get(cursor.order()));
+                rotors = _machine.rotors();
+            }
+            for (int slot = 1; slot < rotors.length; slot += 1) {
+                rotors[slot].setRing(cursor.ring(slot));
+                rotors[slot].set(cursor.position(slot));
+            }
+            keep(best, new Candidate(cursor.rank(), score()), _top);
+        }
+        List<Candidate> result = new ArrayList<>(best);
+        result.sort(Collections.reverseOrder());
+        return result;
+    }
+
+    /** Add C to BEST, a queue of the best TOP candidates so far, if it
+     *  is among them, dropping the worst to make room. */
+    static void keep(PriorityQueue<Candidate> best, Candidate c, int top) {
+        if (best.size() < top) {
+            best.add(c);
+        } else if (c.compareTo(best.peek()) > 0) {
+            best.poll();
+            best.add(c);
+        }
+    }
+
+    /** Return the index of coincidence of my ciphertext as decrypted by
+     *  my machine in its current state. */
+    private double score() {
+        int n = _cipher.length;
+        for (int k = 0; k < n; k += 1) {
+            _plain[k] = _machine.convert(_cipher[k]);
+        }
+        Arrays.fill(_counts, 0);
+        for (int k = 0; k < n; k += 1) {
+            _counts[_plain[k]] += 1;
+        }
+        long pairs = 0;
+        for (int f : _counts) {
+            pairs += (long) f * (f - 1);
+        }
+        return n < 2 ? 0 : (double) pairs / ((long) n * (n - 1));
+    }
+
+    /** A key, by rank, with its score.  Better candidates compare
+     *  greater: those with higher scores, then those with lower ranks. */
+    static final class Candidate implements Comparable<Candidate> {
+        /** The key of rank RANK, with score SCORE. */
+        Candidate(long rank, double score) {
+            _rank = rank;
+            _score = score;
+        }
+
+        /** Return my key's rank. */
+        long rank() {
+            return _rank;
+        }
+
+        /** Return my score. */
+        double score() {
+            return _score;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            int result = Double.compare(_score, other._score);
+            return result != 0 ? result : Long.compare(other._rank, _rank);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Candidate
+                && compareTo((Candidate) obj) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(_rank);
+        }
+
+        /** Rank of my key. */
+        private final long _rank;
+        /** Score of my key. */
+        private final double _score;
+    }
+
+    /** Return the indices in ALPHA of the symbols of TEXT, ignoring
+     *  whitespace. */
+    static int[] indices(String text, Alphabet alpha) {
+        return text.codePoints().filter(cp -> !Character.isWhitespace(cp))
+            .map(cp -> {
+                int k = alpha.indexOf(cp);
+                if (k < 0) {
+                    throw error("character %s is not in the alphabet",
+                                new String(Character.toChars(cp)));
+                }
+                return k;
+            }).toArray();
+    }
+
+    /** Return the blank-separated fields of LINE, which must have COUNT
+     *  fields, the first being KEYWORD. */
+    private static String[] fields(String line, String keyword, int count) {
+        String[] result = line == null ? new String[0] : line.split(" ");
+        if (result.length != count || !result[0].equals(keyword)) {
+            throw error("protocol error: expected %s", keyword);
+        }
+        return result;
+    }
+
+    /** Return the rest of LINE after its first field, which must be
+     *  KEYWORD. */
+    private static String field(String line, String keyword) {
+        if (line == null || !line.startsWith(keyword + " ")) {
+            throw error("protocol error: expected %s", keyword);
+        }
+        return line.substring(keyword.length() + 1);
+    }
+
+    /** The machine used to decrypt, whose rotors are set to each key. */
+    private final Machine _machine;
+    /** The key space. */
+    private final KeySpace _space;
+    /** The ciphertext, as indices. */
+    private final int[] _cipher;
+    /** Number of best keys kept per unit. */
+    private final int _top;
+    /** The decryption under the current key. */
+    private final int[] _plain;
+    /** Number of occurrences of each symbol in _plain. */
+    private final int[] _counts;
+}
@@ -0,0 +1,404 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** A store of the states of many Enigma sessions, each identified by a
+ *  long key, packed into fixed-size records outside the Java heap.  A
+ *  session's state is its configuration (one of the machines given to
+ *  register), the rotor in each slot, the position and ring of each
+ *  rotor, and its plugboard.  Plugboards are interned per configuration,
+ *  so a record holds only their numbers; a Machine, by contrast, holds
+ *  its own rotor objects, tables, and collections.  Interned plugboards
+ *  are counted by the records that use them, and dropped (their numbers
+ *  reused) when the last of those records is removed or overwritten, so
+ *  that there are never more of them than sessions.
+ *
+ *  The records themselves form an open-addressing hash table (linear
+ *  probing, with deletion by backward shifting) keyed by session, so
+ *  that saving, restoring, and removing a session take constant expected
+ *  time with no allocation per session.  Each record takes
+ *  14 + 6 * SLOTS bytes (44 for a five-slot machine), and the table is
+ *  kept at most three-quarters full.  The table is either a direct
+ *  buffer or a memory-mapped file, which is scratch space for this store
+ *  only: its contents mean nothing without the registrations of the store
+ *  that wrote them.  Alphabets and the number of rotors in a
+ *  configuration are limited to 65536.  All operations are synchronized.
+ *  @author Thomas Nguyen
+ */
+final class SessionStore implements AutoCloseable {
+
+    /** A store with room for CAPACITY sessions of machines with at most
+     *  SLOTS rotor slots, kept in memory outside the heap. */
+    SessionStore(int capacity, int slots) {
+        this(null, capacity, slots);
+    }
+
+    /** A store with room for CAPACITY sessions of machines with at most
+     *  SLOTS rotor slots, kept in a memory map of the file FILE (replacing
+     *  any previous contents), or outside the heap if FILE is null. */
+    SessionStore(Path file, int capacity, int slots) {
+        if (capacity <= 0 || slots <= 0) {
+            throw error("bad session store dimensions");
+        }
+        _slots = slots;
+        _recordSize = SLOT_RECORDS + SLOT_SIZE * slots;
+        int tableBits = 1;
+        while ((1L << tableBits) * MAX_LOAD_NUM
+               < (long) capacity * MAX_LOAD_DENOM) {
+            tableBits += 1;
+        }
+        long bytes = (1L << tableBits) * _recordSize;
+        if (bytes > Integer.MAX_VALUE) {
+            throw error("session store too large (%d bytes)", bytes);
+        }
+        _mask = (1 << tableBits) - 1;
+        _capacity = capacity;
+        _scratch = new byte[_recordSize];
+        if (file == null) {
+            _file = null;
+            _table = ByteBuffer.allocateDirect((int) bytes);
+        } else {
+            try {
+                _file = FileChannel.open(file, StandardOpenOption.CREATE,
+                                         StandardOpenOption.READ,
+                                         StandardOpenOption.WRITE,
+                                         StandardOpenOption.TRUNCATE_EXISTING);
+                _table = _file.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+            } catch (IOException excp) {
+                throw error("could not map %s: %s", file, excp.getMessage());
+            }
+        }
+    }
+
+    /** Add the configuration of CONFIG (its alphabet and rotors, but not
+     *  its current state) to the configurations I can store, and return
+     *  its number.  I keep CONFIG, which should not be changed. */
+    synchronized int register(Machine config) {
+        if (config.numRotors() > _slots) {
+            throw error("machine has more than %d slots", _slots);
+        }
+        if (_configs.size() >= FIELD_LIMIT - 1
+            || config.alphabet().size() > FIELD_LIMIT
+            || config.allRotors().size() > FIELD_LIMIT) {
+            throw error("configuration too large for session store");
+        }
+        _configs.add(new Config(config));
+        return _configs.size() - 1;
+    }
+
+    /** Return a new machine with registered configuration number CONFIG,
+     *  with no rotors inserted. */
+    synchronized Machine machine(int config) {
+        Machine template = config(config)._template;
+        return new Machine(template.alphabet(), template.numRotors(),
+                           template.numPawls(), template.allRotors());
+    }
+
+    /** Record the state of M, which has registered configuration number
+     *  CONFIG, as that of SESSION, replacing any previous state. */
+    synchronized void save(long session, int config, Machine m) {
+        Config c = config(config);
+        if (m.rotors() == null) {
+            throw error("machine has no rotors");
+        }
+        if (m.alphabet() != c._template.alphabet()
+            || m.numRotors() != c._template.numRotors()) {
+            throw error("machine does not have configuration %d", config);
+        }
+        Rotor[] rotors = m.rotors();
+        for (Rotor r : rotors) {
+            if (!c._index.containsKey(r.name())) {
+                throw error("rotor %s not in configuration", r.name());
+            }
+        }
+        int slot = find(session);
+        if (!used(slot) && _size == _capacity) {
+            throw error("session store full");
+        }
+        int plugboard = c.intern(m.plugboard());
+        int base = slot * _recordSize;
+        if (used(slot)) {
+            release(base);
+        } else {
+            _size += 1;
+        }
+        _table.putLong(base + KEY, session);
+        _table.putChar(base + CONFIG, (char) (config + 1));
+        _table.putInt(base + PLUGBOARD, plugboard);
+        for (int x = 0; x < rotors.length; x++) {
+            int p = base + SLOT_RECORDS + x * SLOT_SIZE;
+            int index = c._index.get(rotors[x].name());
+            _table.putChar(p + ROTOR, (char) index);
+            _table.putChar(p + POSITION, (char) rotors[x].setting());
+            _table.putChar(p + RING, (char) rotors[x].ring());
+        }
+    }
+
+    /** Return the number of the configuration of SESSION, or -1 if I
+     *  have no state for SESSION. */
+    synchronized int config(long session) {
+        int slot = find(session);
+        return used(slot) ? _table.getChar(slot * _recordSize + CONFIG) - 1
+            : -1;
+    }
+
+    /** Set M, which must have the configuration of SESSION (as from
+     *  machine(config(SESSION))), to the state last saved for SESSION.
+     *  Return false, leaving M unchanged, if I have no state for
+     *  SESSION. */
+    synchronized boolean restore(long session, Machine m) {
+        int slot = find(session);
+        if (!used(slot)) {
+            return false;
+        }
+        int base = slot * _recordSize;
+        Config c = config(_table.getChar(base + CONFIG) - 1);
+        if (m.alphabet() != c._template.alphabet()) {
+            throw error("machine does not have the session's "
+                        + "configuration");
+        }
+        String[] names = new String[c._template.numRotors()];
+        for (int x = 0; x < names.length; x++) {
+            names[x] = c._names[_table.getChar(base + SLOT_RECORDS
+                                               + x * SLOT_SIZE + ROTOR)];
+        }
+        m.insertRotors(names);
+        Rotor[] rotors = m.rotors();
+        for (int x = 0; x < rotors.length; x++) {
+            int p = base + SLOT_RECORDS + x * SLOT_SIZE;
+            rotors[x].set((int) _table.getChar(p + POSITION));
+            rotors[x].setRing((int) _table.getChar(p + RING));
+        }
+        int plugboard = _table.getInt(base + PLUGBOARD);
+        m.setPlugboard(plugboard == 0 ? null
+                       : c._plugboards.get(plugboard - 1));
+        return true;
+    }
+
+    /** Return a new machine in the state last saved for SESSION, or null
+     *  if I have no state for SESSION. */
+    synchronized Machine restore(long session) {
+        int config = config(session);
+        if (config < 0) {
+            return null;
+        }
+        Machine result = machine(config);
+        restore(session, result);
+        return result;
+    }
+
+    /** Forget SESSION, returning true iff I had state for it. */
+    synchronized boolean remove(long session) {
+        int hole = find(session);
+        if (!used(hole)) {
+            return false;
+        }
+        _size -= 1;
+        release(hole * _recordSize);
+        for (int j = (hole + 1) & _mask; used(j); j = (j + 1) & _mask) {
+            int home = home(_table.getLong(j * _recordSize + KEY));
+            boolean stays = hole <= j ? hole < home && home <= j
+                : hole < home || home <= j;
+            if (!stays) {
+                _table.get(j * _recordSize, _scratch);
+                _table.put(hole * _recordSize, _scratch);
+                hole = j;
+            }
+        }
+        _table.putChar(hole * _recordSize + CONFIG, (char) 0);
+        return true;
+    }
+
+    /** Return the number of sessions I hold. */
+    synchronized int size() {
+        return _size;
+    }
+
+    /** Return the number of plugboards interned for registered
+     *  configuration number CONFIG. */
+    synchronized int plugboards(int config) {
+        return config(config)._plugboardIds.size();
+    }
+
+    /** Return the number of sessions I can hold. */
+    int capacity() {
+        return _capacity;
+    }
+
+    /** Release my file, if any.  The memory of my table is released when
+     *  I am garbage. */
+    @Override
+    public synchronized void close() {
+        if (_file != null) {
+            try {
+                _file.close();
+            } catch (IOException excp) {
+                throw error("could not close session file");
+            }
+        }
+    }
+
+    /** Return the slot holding SESSION, or the empty slot where it would
+     *  go. */
+    private int find(long session) {
+        int slot = home(session);
+        while (used(slot)
+               && _table.getLong(slot * _recordSize + KEY) != session) {
+            slot = (slot + 1) & _mask;
+        }
+        return slot;
+    }
+
+    /** Return true iff SLOT holds a session. */
+    private boolean used(int slot) {
+        return _table.getChar(slot * _recordSize + CONFIG) != 0;
+    }
+
+    /** Return the home slot of SESSION. */
+    private int home(long session) {
+        long h = session;
+        h ^= h >>> 33;
+        h *= MIX1;
+        h ^= h >>> 33;
+        h *= MIX2;
+        h ^= h >>> 33;
+        return (int) h & _mask;
+    }
+
+    /** Release the plugboard of the record at BASE. */
+    private void release(int base) {
+        config(_table.getChar(base + CONFIG) - 1)
+            .release(_table.getInt(base + PLUGBOARD));
+    }
+
+    /** Return registered configuration number CONFIG. */
+    private Config config(int config) {
+        if (config < 0 || config >= _configs.size()) {
+            throw error("no configuration %d", config);
+        }
+        return _configs.get(config);
+    }
+
+    /** A registered configuration. */
+    private static class Config {
+        /** The registration of TEMPLATE. */
+        Config(Machine template) {
+            _template = template;
+            _names = new String[template.allRotors().size()];
+            int k = 0;
+            for (Rotor r : template.allRotors()) {
+                _names[k] = r.name();
+                _index.put(r.name(), k);
+                k += 1;
+            }
+        }
+
+        /** Return the number that identifies PLUGBOARD: 0 for none, and
+         *  otherwise one more than its index in _plugboards, adding it if
+         *  needed, and count one more use of it. */
+        int intern(Permutation plugboard) {
+            if (plugboard == null) {
+                return 0;
+            }
+            IntBuffer mapping = IntBuffer.wrap(plugboard.toArray());
+            Integer id = _plugboardIds.get(mapping);
+            if (id == null) {
+                if (_freeIds.isEmpty()) {
+                    _plugboards.add(null);
+                    _uses.add(0);
+                    id = _plugboards.size();
+                } else {
+                    id = _freeIds.pop();
+                }
+                _plugboardIds.put(mapping, id);
+                _plugboards.set(id - 1, plugboard);
+            }
+            _uses.set(id - 1, _uses.get(id - 1) + 1);
+            return id;
+        }
+
+        /** Count one less use of the plugboard numbered ID, as from
+         *  intern, dropping it if it has no more. */
+        void release(int id) {
+            if (id == 0) {
+                return;
+            }
+            int uses = _uses.get(id - 1) - 1;
+            _uses.set(id - 1, uses);
+            if (uses == 0) {
+                Permutation plugboard = _plugboards.set(id - 1, null);
+                _plugboardIds.remove(IntBuffer.wrap(plugboard.toArray()));
+                _freeIds.push(id);
+            }
+        }
+
+        /** The registered machine. */
+        private final Machine _template;
+        /** The names of the rotors of _template, by index. */
+        private final String[] _names;
+        /** The indices of the rotors of _template, by name. */
+        private final HashMap<String, Integer> _index = new HashMap<>();
+        /** The plugboards used with this configuration, or null for
+         *  numbers not in use. */
+        private final List<Permutation> _plugboards = new ArrayList<>();
+        /** The number of records using each plugboard in _plugboards. */
+        private final List<Integer> _uses = new ArrayList<>();
+        /** The numbers of the plugboards in _plugboards, by mapping. */
+        private final HashMap<IntBuffer, Integer> _plugboardIds =
+            new HashMap<>();
+        /** Numbers of _plugboards not in use. */
+        private final ArrayDeque<Integer> _freeIds = new ArrayDeque<>();
+    }
+
+    /** Offset of the session key (a long) in a record. */
+    private static final int KEY = 0;
+    /** Offset of one more than the configuration number (a char) in a
+     *  record; 0 marks an empty slot. */
+    private static final int CONFIG = 8;
+    /** Offset of the plugboard number (an int) in a record. */
+    private static final int PLUGBOARD = 10;
+    /** Offset of the first rotor slot's fields in a record. */
+    private static final int SLOT_RECORDS = 14;
+    /** Size of the fields of one rotor slot. */
+    private static final int SLOT_SIZE = 6;
+    /** Offsets of the rotor index, position, and ring (chars) within the
+     *  fields of a rotor slot. */
+    private static final int ROTOR = 0, POSITION = 2, RING = 4;
+    /** Number of distinct values of a char field. */
+    private static final int FIELD_LIMIT = 1 << 16;
+    /** The table is at most MAX_LOAD_NUM / MAX_LOAD_DENOM full. */
+    private static final int MAX_LOAD_NUM = 3, MAX_LOAD_DENOM = 4;
+    /** Multipliers of the MurmurHash3 finalizer. */
+    private static final long MIX1 = 0xff51afd7ed558ccdL,
+        MIX2 = 0xc4ceb9fe1a85ec53L;
+
+    /** My table of records. */
+    private final ByteBuffer _table;
+    /** The file mapped by _table, or null. */
+    private final FileChannel _file;
+    /** The number of slots of _table, less 1. */
+    private final int _mask;
+    /** Bytes per record. */
+    private final int _recordSize;
+    /** Maximum number of rotor slots in a machine. */
+    private final int _slots;
+    /** Maximum number of sessions. */
+    private final int _capacity;
+    /** Number of sessions held. */
+    private int _size;
+    /** One record, for moving records during removal. */
+    private final byte[] _scratch;
+    /** Registered configurations, by number. */
+    private final List<Config> _configs = new ArrayList<>();
+}
@@ -0,0 +1,144 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the SessionStore class.
+ *  @author Thomas Nguyen
+ */
+public class SessionStoreTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkResume() {
+        Machine m = navalMachine();
+        Machine expected = navalMachine();
+        try (SessionStore store = new SessionStore(10, 5)) {
+            int config = store.register(navalMachine());
+            m.setRotors("XYZA");
+            m.setAlphabetRing("BCDE");
+            m.setPlugboard(new Permutation("(AQ) (EP)", UPPER));
+            expected.setRotors("XYZA");
+            expected.setAlphabetRing("BCDE");
+            expected.setPlugboard(new Permutation("(AQ) (EP)", UPPER));
+            assertEquals(expected.convert("HELLOWORLD"),
+                         m.convert("HELLOWORLD"));
+            store.save(42, config, m);
+            store.save(43, config, navalMachine());
+            m.convert("SOMEOTHERTEXT");
+
+            assertEquals(config, store.config(42));
+            assertTrue(store.restore(42, m));
+            assertEquals(expected.convert("GOODBYEWORLD"),
+                         m.convert("GOODBYEWORLD"));
+            Machine resumed = store.restore(42);
+            resumed.convert("GOODBYEWORLD");
+            assertEquals(expected.convert("AGAIN"), resumed.convert("AGAIN"));
+            assertEquals(navalMachine().convert("HELLO"),
+                         store.restore(43).convert("HELLO"));
+            assertNull(store.restore(44));
+            assertEquals(-1, store.config(44));
+        }
+    }
+
+    @Test
+    public void checkAgainstMap() throws IOException {
+        File file = File.createTempFile("sessions", ".bin");
+        file.deleteOnExit();
+        Random random = new Random(33);
+        HashMap<Long, String> model = new HashMap<>();
+        Machine m = navalMachine();
+        try (SessionStore store = new SessionStore(file.toPath(), 300, 5)) {
+            int config = store.register(navalMachine());
+            for (int k = 0; k < 20000; k++) {
+                long session = random.nextInt(400) * 0x100000001L;
+                if (random.nextBoolean() && model.size() < 300) {
+                    String positions = "";
+                    for (int x = 0; x < 4; x++) {
+                        positions += UPPER.toChar(random.nextInt(26));
+                    }
+                    m.insertRotors(new String[] {"B", "Beta", "I", "II",
+                                                 "III"});
+                    m.setRotors(positions);
+                    store.save(session, config, m);
+                    model.put(session, positions);
+                } else {
+                    assertEquals(model.remove(session) != null,
+                                 store.remove(session));
+                }
+                assertEquals(model.size(), store.size());
+            }
+            for (long session = 0; session < 400; session++) {
+                String positions = model.get(session * 0x100000001L);
+                assertEquals(positions != null,
+                             store.restore(session * 0x100000001L, m));
+                if (positions != null) {
+                    String actual = "";
+                    for (int x = 1; x < 5; x++) {
+                        actual += UPPER.toChar(m.rotors()[x].setting());
+                    }
+                    assertEquals(positions, actual);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void checkPlugboardsReleased() {
+        Random random = new Random(33);
+        HashMap<Long, String> model = new HashMap<>();
+        Machine m = navalMachine();
+        try (SessionStore store = new SessionStore(50, 5)) {
+            int config = store.register(navalMachine());
+            for (int k = 0; k < 5000; k++) {
+                long session = random.nextInt(60);
+                if (random.nextInt(3) > 0 && model.size() < 50) {
+                    String cycles = random.nextInt(5) == 0 ? null
+                        : String.format("(A%c)", UPPER.toChar(
+                                            1 + random.nextInt(4)));
+                    m.setRotors("AAAA");
+                    m.setPlugboard(cycles == null ? null
+                                   : new Permutation(cycles, UPPER));
+                    store.save(session, config, m);
+                    model.put(session, cycles);
+                } else {
+                    assertEquals(model.containsKey(session),
+                                 store.remove(session));
+                    model.remove(session);
+                }
+                assertEquals(new HashSet<>(model.values()).size()
+                             - (model.containsValue(null) ? 1 : 0),
+                             store.plugboards(config));
+            }
+            for (long session : model.keySet()) {
+                Machine expected = navalMachine();
+                if (model.get(session) != null) {
+                    expected.setPlugboard(new Permutation(model.get(session),
+                                                          UPPER));
+                }
+                assertEquals(expected.convert("HELLO"),
+                             store.restore(session).convert("HELLO"));
+            }
+            for (long session : model.keySet()) {
+                store.remove(session);
+            }
+            assertEquals(0, store.plugboards(config));
+        }
+    }
+
+}
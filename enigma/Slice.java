@@ -0,0 +1,112 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+
+import static enigma.EnigmaException.*;
+
+/** Random-access conversion of part of a long message.  Usage:
+ *
+ *      java enigma.Main --slice CONFIG SETTINGS FILE START END [grouped]
+ *
+ *  FILE holds a single message converted with the settings line SETTINGS
+ *  (which must be quoted as one argument), either as a bare run of
+ *  symbols or, if the last argument is "grouped", in groups of five
+ *  separated by single blanks, as Main prints it.  Every symbol must be
+ *  an ASCII character, so that the position of symbol #k in FILE is
+ *  known without reading what precedes it.  Prints the conversion of
+ *  symbols START (counting from 0) up to but not including END.  The
+ *  machine is positioned for symbol START with Machine.skip, and only
+ *  the bytes of FILE holding the slice are read, so the time taken
+ *  depends on the length of the slice and not on where it starts.
+ *  @author Thomas Nguyen
+ */
+final class Slice {
+
+    /** Not instantiable. */
+    private Slice() {
+    }
+
+    /** Run with ARGS, as described above. */
+    static void run(String... args) {
+        if (args.length < 5 || args.length > 6
+            || (args.length == 6 && !args[5].equals("grouped"))) {
+            throw error("Usage: --slice CONFIG SETTINGS FILE START END "
+                        + "[grouped]");
+        }
+        Machine m = Main.readConfig(args[0]);
+        Main.setUp(m, args[1]);
+        long start, end;
+        try {
+            start = Long.parseLong(args[3]);
+            end = Long.parseLong(args[4]);
+        } catch (NumberFormatException excp) {
+            throw error("bad slice bounds");
+        }
+        try (FileChannel file = FileChannel.open(Paths.get(args[2]))) {
+            System.out.println(slice(m, file, start, end,
+                                     args.length == 6));
+        } catch (IOException excp) {
+            throw error("could not read %s: %s", args[2],
+                        excp.getMessage());
+        }
+    }
+
+    /** Return the conversion by M, set up for the start of the message in
+     *  FILE, of symbols START .. END-1 of that message, which is grouped
+     *  in fives iff GROUPED.  M is left positioned after symbol END-1. */
+    static String slice(Machine m, FileChannel file, long start, long end,
+                        boolean grouped) throws IOException {
+        Alphabet alpha = m.alphabet();
+        for (int k = 0; k < alpha.size(); k++) {
+            if (alpha.toCodePoint(k) > ASCII_MAX) {
+                throw error("slicing needs an ASCII alphabet");
+            }
+        }
+        if (start < 0 || end < start) {
+            throw error("bad slice bounds");
+        }
+        if (start == end) {
+            return "";
+        }
+        long from = offset(start, grouped),
+            to = offset(end - 1, grouped) + 1;
+        if (to > file.size()) {
+            throw error("slice extends past the end of the file");
+        }
+        if (to - from > Integer.MAX_VALUE) {
+            throw error("slice too long");
+        }
+        ByteBuffer bytes = ByteBuffer.allocate((int) (to - from));
+        while (bytes.hasRemaining()) {
+            if (file.read(bytes, from + bytes.position()) < 0) {
+                throw error("slice extends past the end of the file");
+            }
+        }
+        m.skip(start);
+        StringBuilder result = new StringBuilder((int) (end - start));
+        for (long k = start; k < end; k++) {
+            int c = alpha.indexOf(bytes.get((int) (offset(k, grouped)
+                                                   - from)));
+            if (c < 0) {
+                throw error("file does not hold a %s message",
+                            grouped ? "grouped" : "bare");
+            }
+            result.append(alpha.toChar(m.convert(c)));
+        }
+        return result.toString();
+    }
+
+    /** Return the offset in a file of symbol K of a message, grouped in
+     *  fives iff GROUPED. */
+    static long offset(long k, boolean grouped) {
+        return grouped ? k + k / GROUP_SIZE : k;
+    }
+
+    /** Largest ASCII code point. */
+    private static final int ASCII_MAX = 0x7f;
+    /** Number of symbols in a group. */
+    private static final int GROUP_SIZE = 5;
+}
@@ -0,0 +1,66 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Slice class.
+ *  @author Thomas Nguyen
+ */
+public class SliceTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkSlices() throws IOException {
+        Random random = new Random(35);
+        char[] plain = new char[100000];
+        for (int k = 0; k < plain.length; k++) {
+            plain[k] = UPPER.toChar(random.nextInt(26));
+        }
+        String code = navalMachine().convert(new String(plain));
+        StringBuilder grouped = new StringBuilder();
+        for (int k = 0; k < code.length(); k++) {
+            if (k > 0 && k % 5 == 0) {
+                grouped.append(' ');
+            }
+            grouped.append(code.charAt(k));
+        }
+        Path bare = Files.createTempFile("bare", ".txt"),
+            groups = Files.createTempFile("grouped", ".txt");
+        Files.writeString(bare, code, StandardCharsets.US_ASCII);
+        Files.writeString(groups, grouped + "\n", StandardCharsets.US_ASCII);
+        try (FileChannel bareFile = FileChannel.open(bare);
+             FileChannel groupedFile = FileChannel.open(groups)) {
+            for (int k = 0; k < 50; k++) {
+                int start = random.nextInt(plain.length),
+                    end = start + random.nextInt(plain.length - start + 1);
+                String expected = new String(plain, start, end - start);
+                assertEquals(expected,
+                             Slice.slice(navalMachine(), bareFile, start,
+                                         end, false));
+                assertEquals(expected,
+                             Slice.slice(navalMachine(), groupedFile, start,
+                                         end, true));
+            }
+        } finally {
+            Files.delete(bare);
+            Files.delete(groups);
+        }
+    }
+
+}
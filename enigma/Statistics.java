@@ -0,0 +1,501 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static enigma.EnigmaException.*;
+
+/** Symbol statistics of the messages Main converts, gathered as it
+ *  converts them.  Usage:
+ *
+ *      java enigma.Main --stats [-j THREADS] CONFIG [INPUT [OUTPUT]]
+ *
+ *  INPUT is converted exactly as by Main, to the same OUTPUT.  Then, for
+ *  each section of the input (a settings line and the messages after
+ *  it) and for the whole input, the standard error gets a report on the
+ *  messages as read and as converted: the number of symbols, the index
+ *  of coincidence (the chance that two symbols drawn from the text
+ *  match, with its ratio to that of a flat distribution: about 1 for
+ *  ciphertext or random text, 1.7 for English), and the count of each
+ *  symbol; and, for the whole input, the commonest bigrams (adjacent
+ *  symbols within a message).  Bigrams are only counted for alphabets of
+ *  up to MAX_BIGRAM_ALPHABET symbols.
+ *
+ *  The converting thread only copies symbol indices into chunks.  The
+ *  counting is done by THREADS (default one per processor) other
+ *  threads, each adding into its own arrays of counts: for the whole
+ *  input, merged once the input is done, and for the section it is
+ *  counting, added to the section's counts when it moves on to another
+ *  section.  A fixed number of chunks circulate between the converter
+ *  and the counters, so nothing is allocated per message and the
+ *  counters can fall only a few chunks behind.
+ *  @author Thomas Nguyen
+ */
+final class Statistics {
+
+    /** Statistics of messages over ALPHA, counted by THREADS threads. */
+    Statistics(Alphabet alpha, int threads) {
+        if (threads <= 0) {
+            throw error("bad thread count");
+        }
+        _alphabet = alpha;
+        _bigrams = alpha.size() <= MAX_BIGRAM_ALPHABET;
+        _pool = Executors.newFixedThreadPool(threads, r -> {
+                Thread t = new Thread(r, "enigma-stats");
+                t.setDaemon(true);
+                return t;
+            });
+        _free = new ArrayBlockingQueue<>(CHUNKS_PER_THREAD * threads);
+        for (int k = 0; k < CHUNKS_PER_THREAD * threads; k += 1) {
+            _free.add(new Chunk());
+        }
+    }
+
+    /** Run with ARGS, as described above. */
+    static void run(String... args) {
+        int threads = Runtime.getRuntime().availableProcessors(), first = 0;
+        if (args.length > 0 && args[0].equals("-j")) {
+            try {
+                threads = Integer.parseInt(args[1]);
+            } catch (NumberFormatException
+                     | ArrayIndexOutOfBoundsException excp) {
+                threads = 0;
+            }
+            first = 2;
+        }
+        if (args.length < first + 1 || args.length > first + 3) {
+            throw error("Usage: --stats [-j THREADS] CONFIG "
+                        + "[INPUT [OUTPUT]]");
+        }
+        Machine m = Main.readConfig(args[first]);
+        Scanner input;
+        PrintStream output = System.out;
+        try {
+            input = args.length > first + 1
+                ? new Scanner(new File(args[first + 1]))
+                : new Scanner(System.in);
+            if (args.length > first + 2) {
+                output = new PrintStream(new File(args[first + 2]));
+            }
+        } catch (IOException excp) {
+            throw error("could not open %s", excp.getMessage());
+        }
+        Statistics stats = new Statistics(m.alphabet(), threads);
+        try (input) {
+            stats.process(m, input, output);
+        }
+        output.flush();
+        stats.finish();
+        stats.report(System.err);
+    }
+
+    /** Apply M to the messages in INPUT, sending the results to OUTPUT,
+     *  as Main.process does, and count them. */
+    void process(Machine m, Scanner input, PrintStream output) {
+        boolean initial = true;
+        while (input.hasNextLine()) {
+            String line = input.nextLine();
+            if (line.isEmpty()) {
+                line = " ";
+            }
+            if (Main.settingsLine(line, initial)) {
+                Main.setUp(m, line);
+                section(line);
+            } else {
+                Main.printMessageLine(convert(m, line.replace(" ", "")),
+                                      output);
+            }
+            initial = false;
+        }
+    }
+
+    /** Start a new section, whose settings line is SETTINGS. */
+    void section(String settings) {
+        submit();
+        Histogram[] section = { new Histogram(false), new Histogram(false) };
+        _settings.add(settings);
+        _sections.add(section);
+        _chunk.section = section;
+        _chunk.lastInput = _chunk.lastOutput = -1;
+    }
+
+    /** Return the conversion of MSG by M, as Machine.convert(String)
+     *  returns it, and count it in the current section. */
+    String convert(Machine m, String msg) {
+        if (_sections.isEmpty()) {
+            throw error("message before any settings line");
+        }
+        StringBuilder result = new StringBuilder(msg.length());
+        for (int x = 0; x < msg.length(); ) {
+            int cp = msg.codePointAt(x);
+            x += Character.charCount(cp);
+            int in = Math.max(0, _alphabet.indexOf(cp)), out = m.convert(in);
+            result.appendCodePoint(_alphabet.toCodePoint(out));
+            add(in, out);
+        }
+        add(-1, -1);
+        return result.toString();
+    }
+
+    /** Add the symbols IN and OUT, or an end of message if they are -1,
+     *  to the current chunk, passing it on to be counted if full. */
+    private void add(int in, int out) {
+        Chunk chunk = _chunk;
+        if (chunk.size == CHUNK_SYMBOLS) {
+            submit();
+            chunk = _chunk;
+        }
+        chunk.input[chunk.size] = in;
+        chunk.output[chunk.size] = out;
+        chunk.size += 1;
+    }
+
+    /** Pass the current chunk, if not empty, to be counted, and start a
+     *  new one that continues it. */
+    private void submit() {
+        Chunk full = _chunk;
+        if (full.size == 0) {
+            return;
+        }
+        try {
+            _chunk = _free.take();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        }
+        _chunk.section = full.section;
+        _chunk.lastInput = full.input[full.size - 1];
+        _chunk.lastOutput = full.output[full.size - 1];
+        _chunk.size = 0;
+        _pool.execute(() -> {
+                _tally.get().count(full);
+                _free.add(full);
+            });
+    }
+
+    /** Count everything passed to convert, wait for the counting to
+     *  finish, and merge the counts of all the counting threads. */
+    void finish() {
+        if (_total != null) {
+            return;
+        }
+        submit();
+        _pool.shutdown();
+        try {
+            while (!_pool.awaitTermination(1, TimeUnit.SECONDS)) {
+                continue;
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        }
+        Histogram[] total = { new Histogram(_bigrams),
+                              new Histogram(_bigrams) };
+        synchronized (_tallies) {
+            for (Tally tally : _tallies) {
+                tally.flush();
+                total[0].add(tally.total[0]);
+                total[1].add(tally.total[1]);
+            }
+        }
+        _total = total;
+    }
+
+    /** Return the number of sections counted. */
+    int sections() {
+        return _sections.size();
+    }
+
+    /** Return the statistics of the messages of section SECTION (all
+     *  sections if ALL) as read.  Only valid after finish. */
+    Histogram input(int section) {
+        return result(section)[0];
+    }
+
+    /** Return the statistics of the messages of section SECTION (all
+     *  sections if ALL) as converted.  Only valid after finish. */
+    Histogram output(int section) {
+        return result(section)[1];
+    }
+
+    /** Return the input and output statistics of SECTION, or of all
+     *  sections if ALL. */
+    private Histogram[] result(int section) {
+        if (_total == null) {
+            throw error("statistics not finished");
+        }
+        return section == ALL ? _total : _sections.get(section);
+    }
+
+    /** Print my statistics, as described above, on OUT.  Only valid
+     *  after finish. */
+    void report(PrintStream out) {
+        for (int s = 0; s < _settings.size(); s += 1) {
+            out.printf("section %d: %s%n", s + 1, _settings.get(s));
+            report(s, out);
+        }
+        out.printf("total: %d sections%n", _settings.size());
+        report(ALL, out);
+    }
+
+    /** Print the statistics of SECTION on OUT. */
+    private void report(int section, PrintStream out) {
+        report("input", input(section), out);
+        report("output", output(section), out);
+    }
+
+    /** Print the statistics H of the messages LABEL on OUT. */
+    private void report(String label, Histogram h, PrintStream out) {
+        int n = _alphabet.size();
+        out.printf("  %s: %d symbols, IC %.4f (%.2f flat)%n", label,
+                   h.symbols(), h.coincidence(), h.coincidence() * n);
+        StringBuilder line = new StringBuilder("   ");
+        for (int c = 0; c < n; c += 1) {
+            if (h.count(c) > 0) {
+                line.append(' ').appendCodePoint(_alphabet.toCodePoint(c))
+                    .append(':').append(h.count(c));
+            }
+        }
+        out.println(line);
+        if (h.bigrams()) {
+            line.setLength(0);
+            line.append("   ");
+            for (int pair : h.commonestBigrams(REPORTED_BIGRAMS)) {
+                line.append(' ')
+                    .appendCodePoint(_alphabet.toCodePoint(pair / n))
+                    .appendCodePoint(_alphabet.toCodePoint(pair % n))
+                    .append(':').append(h.bigram(pair / n, pair % n));
+            }
+            out.println(line);
+        }
+    }
+
+    /** Counts of the symbols, and perhaps the bigrams, of some text over
+     *  my alphabet. */
+    final class Histogram {
+
+        /** An empty histogram, which counts bigrams iff BIGRAMS. */
+        Histogram(boolean bigrams) {
+            _counts = new long[_alphabet.size()];
+            _bigramCounts = bigrams
+                ? new long[_alphabet.size() * _alphabet.size()] : null;
+        }
+
+        /** Count the LEN symbols of SYMBOLS, in which -1 marks the end of
+         *  a message, and count the bigrams among them into BIGRAMS,
+         *  unless it does not count bigrams, continuing a message that
+         *  ended with symbol LAST, or -1 if none. */
+        void count(int[] symbols, int len, int last, Histogram bigrams) {
+            long[] counts = _counts, pairs = bigrams._bigramCounts;
+            int n = counts.length;
+            long total = 0;
+            for (int k = 0; k < len; k += 1) {
+                int c = symbols[k];
+                if (c >= 0) {
+                    counts[c] += 1;
+                    total += 1;
+                    if (last >= 0 && pairs != null) {
+                        pairs[last * n + c] += 1;
+                    }
+                }
+                last = c;
+            }
+            _symbols += total;
+        }
+
+        /** Set all my counts to 0. */
+        void clear() {
+            _symbols = 0;
+            Arrays.fill(_counts, 0);
+            if (_bigramCounts != null) {
+                Arrays.fill(_bigramCounts, 0);
+            }
+        }
+
+        /** Return true iff I count bigrams. */
+        boolean bigrams() {
+            return _bigramCounts != null;
+        }
+
+        /** Add the counts of OTHER to mine. */
+        void add(Histogram other) {
+            _symbols += other._symbols;
+            for (int c = 0; c < _counts.length; c += 1) {
+                _counts[c] += other._counts[c];
+            }
+            if (_bigramCounts != null && other._bigramCounts != null) {
+                for (int p = 0; p < _bigramCounts.length; p += 1) {
+                    _bigramCounts[p] += other._bigramCounts[p];
+                }
+            }
+        }
+
+        /** Return the number of symbols counted. */
+        long symbols() {
+            return _symbols;
+        }
+
+        /** Return the number of times symbol C was counted. */
+        long count(int c) {
+            return _counts[c];
+        }
+
+        /** Return the number of times symbol SECOND followed symbol FIRST
+         *  in a message, or -1 if bigrams are not counted. */
+        long bigram(int first, int second) {
+            return _bigramCounts == null ? -1
+                : _bigramCounts[first * _counts.length + second];
+        }
+
+        /** Return the index of coincidence of the symbols counted: the
+         *  probability that two of them, drawn without replacement, are
+         *  the same, or 0 if fewer than two were counted. */
+        double coincidence() {
+            if (_symbols < 2) {
+                return 0;
+            }
+            double sum = 0;
+            for (long f : _counts) {
+                sum += (double) f * (f - 1);
+            }
+            return sum / ((double) _symbols * (_symbols - 1));
+        }
+
+        /** Return up to TOP bigrams counted, as FIRST * alphabet size +
+         *  SECOND, commonest first. */
+        List<Integer> commonestBigrams(int top) {
+            List<Integer> result = new ArrayList<>();
+            if (_bigramCounts == null) {
+                return result;
+            }
+            for (int p = 0; p < _bigramCounts.length; p += 1) {
+                if (_bigramCounts[p] > 0) {
+                    result.add(p);
+                }
+            }
+            result.sort((p, q) -> _bigramCounts[p] != _bigramCounts[q]
+                        ? Long.compare(_bigramCounts[q], _bigramCounts[p])
+                        : Integer.compare(p, q));
+            return result.subList(0, Math.min(top, result.size()));
+        }
+
+        /** Number of symbols counted. */
+        private long _symbols;
+        /** Entry c is the count of symbol c. */
+        private final long[] _counts;
+        /** Entry a * alphabet size + b is the count of the bigram ab, or
+         *  null if bigrams are not counted. */
+        private final long[] _bigramCounts;
+    }
+
+    /** The counts of one counting thread. */
+    private final class Tally {
+
+        /** Count the symbols in CHUNK. */
+        void count(Chunk chunk) {
+            if (chunk.section != _section) {
+                flush();
+                _section = chunk.section;
+            }
+            _current[0].count(chunk.input, chunk.size, chunk.lastInput,
+                              total[0]);
+            _current[1].count(chunk.output, chunk.size, chunk.lastOutput,
+                              total[1]);
+        }
+
+        /** Add my counts for my current section to the section's counts
+         *  and to my totals, and clear them. */
+        void flush() {
+            if (_section == null) {
+                return;
+            }
+            synchronized (_section) {
+                _section[0].add(_current[0]);
+                _section[1].add(_current[1]);
+            }
+            for (int k = 0; k < 2; k += 1) {
+                total[k].add(_current[k]);
+                _current[k].clear();
+            }
+            _section = null;
+        }
+
+        /** Input and output counts of everything I have counted, with
+         *  bigrams, except symbols still in _current. */
+        final Histogram[] total = { new Histogram(_bigrams),
+                                    new Histogram(_bigrams) };
+        /** Counts of the section I am counting, or null. */
+        private Histogram[] _section;
+        /** My counts for _section since I began counting it. */
+        private final Histogram[] _current = { new Histogram(false),
+                                               new Histogram(false) };
+    }
+
+    /** A run of symbols passed from the converter to a counter. */
+    private static final class Chunk {
+        /** Symbols of messages as read, -1 after each message. */
+        final int[] input = new int[CHUNK_SYMBOLS];
+        /** Symbols of messages as converted, -1 after each message. */
+        final int[] output = new int[CHUNK_SYMBOLS];
+        /** Number of entries of input and output in use. */
+        int size;
+        /** Input and output counts of the section of my messages. */
+        Histogram[] section;
+        /** Last entry of input before mine, or -1. */
+        int lastInput = -1;
+        /** Last entry of output before mine, or -1. */
+        int lastOutput = -1;
+    }
+
+    /** Section number meaning all sections. */
+    static final int ALL = -1;
+    /** Largest alphabet whose bigrams are counted: each counter then
+     *  holds 256 * 256 counts, or 512K bytes, per section and
+     *  direction. */
+    static final int MAX_BIGRAM_ALPHABET = 256;
+    /** Number of bigrams reported. */
+    static final int REPORTED_BIGRAMS = 10;
+    /** Number of symbols in a chunk. */
+    private static final int CHUNK_SYMBOLS = 1 << 13;
+    /** Number of chunks circulating per counting thread. */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /** The alphabet of the messages counted. */
+    private final Alphabet _alphabet;
+    /** True iff bigrams are counted. */
+    private final boolean _bigrams;
+    /** The counting threads. */
+    private final ExecutorService _pool;
+    /** Chunks not in use. */
+    private final BlockingQueue<Chunk> _free;
+    /** The chunk being filled by the converter. */
+    private Chunk _chunk = new Chunk();
+    /** The settings lines of the sections so far. */
+    private final List<String> _settings = new ArrayList<>();
+    /** Input and output counts of each section so far. */
+    private final List<Histogram[]> _sections = new ArrayList<>();
+    /** The counts of every counting thread. */
+    private final List<Tally> _tallies =
+        Collections.synchronizedList(new ArrayList<>());
+    /** The counts of the calling counting thread. */
+    private final ThreadLocal<Tally> _tally =
+        ThreadLocal.withInitial(() -> {
+                Tally tally = new Tally();
+                _tallies.add(tally);
+                return tally;
+            });
+    /** Merged input and output counts of all sections, once
+     *  finished. */
+    private Histogram[] _total;
+}
@@ -0,0 +1,171 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+import java.util.Scanner;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Statistics class.
+ *  @author Thomas Nguyen
+ */
+public class StatisticsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return an input of SECTIONS sections, each a settings line and a
+     *  few messages of random letters, using RANDOM. */
+    private String input(int sections, Random random) {
+        StringBuilder result = new StringBuilder();
+        for (int s = 0; s < sections; s += 1) {
+            result.append("* B Beta I II III ");
+            for (int k = 0; k < 4; k += 1) {
+                result.append(UPPER.toChar(random.nextInt(26)));
+            }
+            result.append('\n');
+            for (int m = random.nextInt(4); m > 0; m -= 1) {
+                for (int k = random.nextInt(3000); k > 0; k -= 1) {
+                    result.append(UPPER.toChar(random.nextInt(26)))
+                        .append(random.nextInt(7) == 0 ? " " : "");
+                }
+                result.append('\n');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return the Statistics of INPUT, counted by THREADS threads, and
+     *  check that the output is Main's. */
+    private Statistics count(String input, int threads) {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream(),
+            actual = new ByteArrayOutputStream();
+        Main.process(navalMachine(), new Scanner(input),
+                     new PrintStream(expected));
+        Statistics stats = new Statistics(UPPER, threads);
+        stats.process(navalMachine(), new Scanner(input),
+                      new PrintStream(actual));
+        stats.finish();
+        assertEquals(expected.toString(), actual.toString());
+        return stats;
+    }
+
+    /** Check that H holds the counts of TEXT, whose messages are
+     *  separated by newlines. */
+    private void check(Statistics.Histogram h, String text) {
+        long[] counts = new long[26];
+        long[][] bigrams = new long[26][26];
+        long symbols = 0;
+        for (String msg : text.split("\n")) {
+            for (int k = 0; k < msg.length(); k += 1) {
+                counts[UPPER.toInt(msg.charAt(k))] += 1;
+                symbols += 1;
+                if (k > 0) {
+                    bigrams[UPPER.toInt(msg.charAt(k - 1))]
+                        [UPPER.toInt(msg.charAt(k))] += 1;
+                }
+            }
+        }
+        assertEquals(symbols, h.symbols());
+        double sum = 0;
+        for (int c = 0; c < 26; c += 1) {
+            assertEquals(counts[c], h.count(c));
+            sum += (double) counts[c] * (counts[c] - 1);
+            for (int d = 0; d < 26; d += 1) {
+                assertEquals(h.bigrams() ? bigrams[c][d] : -1,
+                             h.bigram(c, d));
+            }
+        }
+        assertEquals(symbols < 2 ? 0 : sum / symbols / (symbols - 1),
+                     h.coincidence(), 1e-12);
+    }
+
+    /** Return the messages of INPUT, without settings lines or blanks, or
+     *  only those of section SECTION unless it is Statistics.ALL. */
+    private String messages(String input, int section) {
+        StringBuilder result = new StringBuilder();
+        int s = -1;
+        for (String line : input.split("\n")) {
+            if (line.startsWith("*")) {
+                s += 1;
+            } else if (section == Statistics.ALL || section == s) {
+                result.append(line.replace(" ", "")).append('\n');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return the conversion of the messages of INPUT, as messages()
+     *  returns them. */
+    private String converted(String input, int section) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Main.process(navalMachine(), new Scanner(input),
+                     new PrintStream(out));
+        String[] lines = input.split("\n"), results =
+            out.toString().split("\n", -1);
+        StringBuilder result = new StringBuilder();
+        int s = -1, r = 0;
+        for (String line : lines) {
+            if (line.startsWith("*")) {
+                s += 1;
+            } else {
+                if (section == Statistics.ALL || section == s) {
+                    result.append(results[r].replace(" ", ""))
+                        .append('\n');
+                }
+                r += 1;
+            }
+        }
+        return result.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkCounts() {
+        String input = input(12, new Random(50));
+        for (int threads : new int[] { 1, 3 }) {
+            Statistics stats = count(input, threads);
+            assertEquals(12, stats.sections());
+            for (int s = -1; s < 12; s += 1) {
+                check(stats.input(s), messages(input, s));
+                check(stats.output(s), converted(input, s));
+            }
+        }
+    }
+
+    @Test
+    public void checkCoincidence() {
+        StringBuilder input = new StringBuilder("* B Beta I II III AAAA\n");
+        for (int k = 0; k < 20000; k += 1) {
+            input.append("THEQUICKBROWNFOXJUMPSOVERTHELAZYDOG".charAt(k % 35));
+        }
+        Statistics stats = count(input.toString(), 2);
+        assertEquals(20000, stats.output(Statistics.ALL).symbols());
+        assertTrue(stats.input(0).coincidence() * 26 > 1.2);
+        assertEquals(1, stats.output(0).coincidence() * 26, 0.1);
+        assertEquals(1143, stats.input(Statistics.ALL).bigram(19, 7));
+    }
+
+    @Test
+    public void checkReport() {
+        Statistics stats = count("* B Beta I II III AAAA\nHELLO\n", 1);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        stats.report(new PrintStream(out));
+        String report = out.toString();
+        assertTrue(report.startsWith("section 1: * B Beta I II III AAAA"));
+        assertTrue(report.contains("  input: 5 symbols, IC 0.1000"));
+        assertTrue(report.contains(" L:2"));
+        assertTrue(report.contains(" LL:1"));
+    }
+
+}
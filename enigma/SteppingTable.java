@@ -0,0 +1,247 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static enigma.EnigmaException.*;
+
+/** The stepping of an Enigma machine for one rotor order, as a table.
+ *  Only the settings of the rotating rotors matter to stepping, so a
+ *  state is those settings, read as the digits of a number in base
+ *  alphabet size with the leftmost rotating rotor most significant.  For
+ *  every state, the table holds which rotors move on the next key press
+ *  (as a bit mask over the rotating rotors, leftmost in the highest bit)
+ *  and the resulting state, both found by running the machine's own
+ *  stepping rule, double steps and all.  A machine can then step with
+ *  one lookup, and the whole state graph can be analyzed: stepping is a
+ *  function on states, so every state leads, after a lead-in, into a
+ *  cycle, whose length is the period of the machine from that state.
+ *
+ *  Usage of the period report:
+ *
+ *      java enigma.SteppingTable CONFIG
+ *
+ *  which prints, for every order of moving rotors that CONFIG allows, the
+ *  lengths of the cycles of the state graph (with the number of cycles
+ *  of each length, if more than one) and the longest lead-in.
+ *  @author Thomas Nguyen
+ */
+final class SteppingTable {
+
+    /** The table for the rotors now in the slots of M. */
+    SteppingTable(Machine m) {
+        Rotor[] rotors = m.rotors();
+        _size = m.alphabet().size();
+        int count = 0;
+        for (int x = 1; x < rotors.length; x++) {
+            if (rotors[x].rotates()) {
+                count += 1;
+            }
+        }
+        _slots = new int[count];
+        for (int x = 1, j = 0; x < rotors.length; x++) {
+            if (rotors[x].rotates()) {
+                _slots[j++] = x;
+            }
+        }
+        long states = 1;
+        for (int j = 0; j < count; j++) {
+            states *= _size;
+            if (states > MAX_STATES) {
+                throw error("too many stepping states");
+            }
+        }
+        _states = (int) states;
+        _moves = IndexTable.create(_states, (1 << count) - 1);
+        _next = IndexTable.create(_states, _states - 1);
+        Machine probe = m.copy();
+        Rotor[] probes = probe.rotors();
+        for (int s = 0; s < _states; s++) {
+            int t = s;
+            for (int j = count - 1; j >= 0; j--) {
+                probes[_slots[j]].set(t % _size);
+                t /= _size;
+            }
+            int slotMask = probe.moveMask(), mask = 0, next = 0;
+            for (int j = 0; j < count; j++) {
+                int setting = probes[_slots[j]].setting();
+                mask <<= 1;
+                if ((slotMask & (1 << _slots[j])) != 0) {
+                    mask |= 1;
+                    setting = setting + 1 == _size ? 0 : setting + 1;
+                }
+                next = next * _size + setting;
+            }
+            _moves.set(s, mask);
+            _next.set(s, next);
+        }
+    }
+
+    /** Return the state of the rotors of M, which must have the rotor
+     *  order for which I was built. */
+    int state(Machine m) {
+        Rotor[] rotors = m.rotors();
+        int result = 0;
+        for (int slot : _slots) {
+            result = result * _size + rotors[slot].setting();
+        }
+        return result;
+    }
+
+    /** Return the state following STATE. */
+    int next(int state) {
+        return _next.get(state);
+    }
+
+    /** Return the mask of rotors that move on a key press in STATE: bit
+     *  (number of rotating rotors - 1 - j) is set iff the jth rotating
+     *  rotor from the left moves. */
+    int moves(int state) {
+        return _moves.get(state);
+    }
+
+    /** Return the slots of the rotating rotors, left to right. */
+    int[] slots() {
+        return _slots.clone();
+    }
+
+    /** Return the number of states. */
+    int states() {
+        return _states;
+    }
+
+    /** Return the number of key presses after which the machine, starting
+     *  from STATE, first returns to a state it has been in. */
+    int period(int state) {
+        int[] seen = new int[_states];
+        int k = 1;
+        for (; seen[state] == 0; k++) {
+            seen[state] = k;
+            state = next(state);
+        }
+        return k - seen[state];
+    }
+
+    /** Return the lengths of the cycles of my state graph, each mapped to
+     *  the number of cycles of that length. */
+    TreeMap<Integer, Integer> cycles() {
+        TreeMap<Integer, Integer> result = new TreeMap<>();
+        for (int len : cycleLengths()) {
+            if (len > 0) {
+                result.merge(len, 1, Integer::sum);
+            }
+        }
+        result.replaceAll((len, states) -> states / len);
+        return result;
+    }
+
+    /** Return the greatest number of key presses that any state takes to
+     *  reach a cycle. */
+    int longestLeadIn() {
+        int[] cycleLengths = cycleLengths();
+        int[] leadIn = new int[_states];
+        int[] path = new int[_states];
+        Arrays.fill(leadIn, -1);
+        int result = 0;
+        for (int start = 0; start < _states; start++) {
+            int len = 0, s = start;
+            while (leadIn[s] < 0 && cycleLengths[s] == 0) {
+                path[len++] = s;
+                s = next(s);
+            }
+            int d = cycleLengths[s] > 0 ? 0 : leadIn[s];
+            while (len > 0) {
+                d += 1;
+                leadIn[path[--len]] = d;
+            }
+            result = Math.max(result, d);
+        }
+        return result;
+    }
+
+    /** Return an array whose entry s is the length of the cycle of my
+     *  state graph containing state s, or 0 if s is on no cycle. */
+    private int[] cycleLengths() {
+        int[] result = new int[_states];
+        byte[] color = new byte[_states];
+        for (int start = 0; start < _states; start++) {
+            int s = start;
+            while (color[s] == UNSEEN) {
+                color[s] = ON_PATH;
+                s = next(s);
+            }
+            if (color[s] == ON_PATH) {
+                int len = 0, t = s;
+                do {
+                    len += 1;
+                    t = next(t);
+                } while (t != s);
+                do {
+                    result[t] = len;
+                    t = next(t);
+                } while (t != s);
+            }
+            for (s = start; color[s] == ON_PATH; s = next(s)) {
+                color[s] = DONE;
+            }
+        }
+        return result;
+    }
+
+    /** Print the period report described above for the configuration
+     *  file named ARGS[0]. */
+    public static void main(String... args) {
+        try {
+            if (args.length != 1) {
+                throw error("Usage: java enigma.SteppingTable CONFIG");
+            }
+            Machine m = Main.readConfig(args[0]);
+            Map<String, String[]> orders = new LinkedHashMap<>();
+            for (String[] order : KeySpace.allOrders(m)) {
+                StringBuilder moving = new StringBuilder();
+                for (int x = m.numRotors() - m.numPawls(); x < order.length;
+                     x++) {
+                    moving.append(moving.length() > 0 ? " " : "")
+                        .append(order[x]);
+                }
+                orders.putIfAbsent(moving.toString(), order);
+            }
+            for (Map.Entry<String, String[]> e : orders.entrySet()) {
+                m.insertRotors(e.getValue());
+                SteppingTable table = new SteppingTable(m);
+                StringBuilder cycles = new StringBuilder();
+                for (Map.Entry<Integer, Integer> c
+                         : table.cycles().descendingMap().entrySet()) {
+                    cycles.append(' ').append(c.getKey());
+                    if (c.getValue() > 1) {
+                        cycles.append('x').append(c.getValue());
+                    }
+                }
+                System.out.printf("%s: period%s; lead-in at most %d%n",
+                                  e.getKey(), cycles,
+                                  table.longestLeadIn());
+            }
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Colors of states during cycle finding. */
+    private static final byte UNSEEN = 0, ON_PATH = 1, DONE = 2;
+    /** Largest number of states in a table. */
+    static final int MAX_STATES = 1 << 24;
+
+    /** Size of the alphabet. */
+    private final int _size;
+    /** Slots of the rotating rotors, left to right. */
+    private final int[] _slots;
+    /** Number of states. */
+    private final int _states;
+    /** Entry s is moves(s). */
+    private final IndexTable _moves;
+    /** Entry s is next(s). */
+    private final IndexTable _next;
+}
@@ -0,0 +1,112 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.TreeMap;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the SteppingTable class.
+ *  @author Thomas Nguyen
+ */
+public class SteppingTableTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Check that M steps the same way with and without a stepping table
+     *  from SAMPLES random states, using RANDOM. */
+    private void checkTable(Machine m, int samples, Random random) {
+        SteppingTable table = new SteppingTable(m);
+        int size = m.alphabet().size();
+        for (int k = 0; k < samples; k++) {
+            for (int x = 1; x < m.numRotors(); x++) {
+                m.rotors()[x].set(random.nextInt(size));
+            }
+            Machine tabled = m.copy();
+            tabled.useSteppingTable(table);
+            for (int p = 0; p < 2 * size; p++) {
+                int state = table.state(m);
+                m.step();
+                tabled.step();
+                assertEquals(settings(m), settings(tabled));
+                assertEquals(table.next(state), table.state(m));
+            }
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkTableStepping() {
+        Random random = new Random(36);
+        Alphabet alpha = new Alphabet("ABCDEFG");
+        checkTable(navalMachine(), 100, random);
+        checkTable(machine(alpha, "AD", "C", "BF"), 100, random);
+        checkTable(machine(alpha, "", "A", "ABCDEFG"), 100, random);
+        checkTable(machine(alpha, "G", "G", "G", "G"), 100, random);
+    }
+
+    @Test
+    public void checkMoves() {
+        SteppingTable table = new SteppingTable(navalMachine());
+        assertEquals(26 * 26 * 26, table.states());
+        assertEquals(1, table.moves(0));
+        assertEquals(3, table.moves('V' - 'A'));
+        assertEquals(7, table.moves(('E' - 'A') * 26));
+    }
+
+    @Test
+    public void checkPeriods() {
+        Machine m = machine(new Alphabet("ABCDE"), "A", "C", "E");
+        SteppingTable table = new SteppingTable(m);
+        TreeMap<Integer, Integer> cycles = table.cycles();
+        int onCycles = 0;
+        for (int len : cycles.keySet()) {
+            onCycles += len * cycles.get(len);
+        }
+        assertTrue(onCycles <= table.states());
+        int leadIn = table.longestLeadIn();
+        for (int s = 0; s < table.states(); s++) {
+            int period = table.period(s);
+            int t = s;
+            for (int k = 0; k < leadIn; k++) {
+                t = table.next(t);
+            }
+            assertTrue(cycles.containsKey(period));
+            assertEquals(period, table.period(t));
+            int u = t;
+            for (int k = 0; k < period; k++) {
+                u = table.next(u);
+            }
+            assertEquals(t, u);
+        }
+    }
+
+    @Test
+    public void checkNavalPeriod() {
+        SteppingTable table = new SteppingTable(navalMachine());
+        assertEquals(650, (int) table.cycles().lastKey());
+        assertEquals(650, table.period(table.state(navalMachine())));
+    }
+
+    @Test
+    public void checkAutomaticTable() {
+        Machine m = navalMachine(), check = navalMachine();
+        SteppingTable table = new SteppingTable(check);
+        int state = table.state(check);
+        for (int p = 0; p < 200000; p++) {
+            m.step();
+            state = table.next(state);
+        }
+        assertEquals(state, table.state(m));
+    }
+
+}
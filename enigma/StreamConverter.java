@@ -0,0 +1,119 @@
+package enigma;
+
+import java.nio.CharBuffer;
+
+import static enigma.EnigmaException.*;
+
+/** The incremental text conversion shared by EnigmaReader, EnigmaWriter,
+ *  and the adapters in EnigmaChannels.  A StreamConverter passes chars
+ *  through a Machine a buffer at a time, in the manner of a
+ *  CharsetEncoder: convert consumes as much of its source as it can fit
+ *  into its destination, and remembers anything (such as half of a
+ *  surrogate pair, or the position within a group) that it needs for the
+ *  next call.
+ *
+ *  Characters in the machine's alphabet are converted.  Line terminators
+ *  are always copied unchanged.  If grouping, other whitespace is dropped
+ *  and the converted characters of each line are written in groups of
+ *  five separated by single blanks, as by Main.  If passing through, any
+ *  other character is copied unchanged; otherwise, whitespace that is not
+ *  dropped is copied and anything else is an error.
+ *  @author Thomas Nguyen
+ */
+final class StreamConverter {
+
+    /** A converter that passes text through M, grouping its output iff
+     *  GROUP and copying characters not in M's alphabet iff
+     *  PASSTHROUGH. */
+    StreamConverter(Machine m, boolean group, boolean passThrough) {
+        _machine = m;
+        _alphabet = m.alphabet();
+        _group = group;
+        _passThrough = passThrough;
+    }
+
+    /** Convert chars from SRC into DEST, advancing both, until SRC is
+     *  empty or DEST has fewer than MAX_EXPANSION chars free. */
+    void convert(CharBuffer src, CharBuffer dest) {
+        while (src.hasRemaining() && dest.remaining() >= MAX_EXPANSION) {
+            char c = src.get();
+            if (_high != 0) {
+                char high = _high;
+                _high = 0;
+                if (Character.isLowSurrogate(c)) {
+                    emit(Character.toCodePoint(high, c), dest);
+                    continue;
+                }
+                emit(high, dest);
+            }
+            if (Character.isHighSurrogate(c)) {
+                _high = c;
+            } else {
+                emit(c, dest);
+            }
+        }
+    }
+
+    /** Write anything held back by convert to DEST, which must have at
+     *  least MAX_EXPANSION chars free, at the end of the input. */
+    void finish(CharBuffer dest) {
+        if (_high != 0) {
+            char high = _high;
+            _high = 0;
+            emit(high, dest);
+        }
+    }
+
+    /** Write the conversion of the code point CP to DEST. */
+    private void emit(int cp, CharBuffer dest) {
+        int k = _alphabet.indexOf(cp);
+        if (k >= 0) {
+            if (_group && _count > 0 && _count % GROUP_SIZE == 0) {
+                dest.put(' ');
+            }
+            _count += 1;
+            put(_alphabet.toCodePoint(_machine.convert(k)), dest);
+        } else if (cp == '\n' || cp == '\r') {
+            _count = 0;
+            dest.put((char) cp);
+        } else if (_group && Character.isWhitespace(cp)) {
+            return;
+        } else if (_passThrough || Character.isWhitespace(cp)) {
+            put(cp, dest);
+        } else {
+            throw error("character %s is not in the alphabet",
+                        new String(Character.toChars(cp)));
+        }
+    }
+
+    /** Write the code point CP to DEST. */
+    private static void put(int cp, CharBuffer dest) {
+        if (Character.isBmpCodePoint(cp)) {
+            dest.put((char) cp);
+        } else {
+            dest.put(Character.highSurrogate(cp));
+            dest.put(Character.lowSurrogate(cp));
+        }
+    }
+
+    /** The most chars that convert or finish writes for one char of
+     *  input: a held-back high surrogate and then a surrogate pair, each
+     *  preceded by a blank. */
+    static final int MAX_EXPANSION = 5;
+
+    /** Number of characters in a group of output. */
+    private static final int GROUP_SIZE = 5;
+
+    /** The machine that converts characters. */
+    private final Machine _machine;
+    /** The alphabet of _machine. */
+    private final Alphabet _alphabet;
+    /** True iff output is grouped. */
+    private final boolean _group;
+    /** True iff characters not in _alphabet are copied. */
+    private final boolean _passThrough;
+    /** Number of characters converted since the last line terminator. */
+    private int _count;
+    /** A high surrogate awaiting its low surrogate, or 0. */
+    private char _high;
+}
@@ -1,6 +1,16 @@
 package enigma;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Random;
+import java.util.Scanner;
 
 /** Utility definitions for use in unit tests.
  *  @author P. N. Hilfinger
@@ -126,4 +136,157 @@ class TestUtils {
         NAVALZ_MAP.put("Gamma", "EGTPLBOVFSINCUJZDXMRQAYWHK");
     }
 
+    /** Return a machine with the reflector B, the fixed rotor Beta, and
+     *  the moving rotors I, II, and III from NAVALA in its slots, set to
+     *  AAAA with no plugboard. */
+    static Machine navalMachine() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"),
+                                                       UPPER)));
+        rotors.add(new FixedRotor("Beta",
+                                  new Permutation(NAVALA.get("Beta"),
+                                                  UPPER)));
+        rotors.add(new MovingRotor("I", new Permutation(NAVALA.get("I"),
+                                                         UPPER), "Q"));
+        rotors.add(new MovingRotor("II", new Permutation(NAVALA.get("II"),
+                                                          UPPER), "E"));
+        rotors.add(new MovingRotor("III",
+                                   new Permutation(NAVALA.get("III"),
+                                                   UPPER), "V"));
+        Machine m = new Machine(UPPER, 5, 3, rotors);
+        m.insertRotors(new String[] {"B", "Beta", "I", "II", "III"});
+        m.setRotors("AAAA");
+        return m;
+    }
+
+    /** The alphabet of abcdMachine(). */
+    static final Alphabet ABCD = new Alphabet("ABCD");
+
+    /** Return a machine over ABCD with four slots and three pawls, and
+     *  the reflector R and the moving rotors X, Y, and Z, none
+     *  inserted. */
+    static Machine abcdMachine() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("R", new Permutation("(AB) (CD)", ABCD)));
+        rotors.add(new MovingRotor("X", new Permutation("(ABC)", ABCD), "A"));
+        rotors.add(new MovingRotor("Y", new Permutation("(AD)", ABCD), "B"));
+        rotors.add(new MovingRotor("Z", new Permutation("(BCD)", ABCD), "C"));
+        return new Machine(ABCD, 4, 3, rotors);
+    }
+
+    /** Return the settings of the rotors of M. */
+    static String settings(Machine m) {
+        StringBuilder result = new StringBuilder();
+        for (Rotor r : m.rotors()) {
+            result.append(r.setting()).append(' ');
+        }
+        return result.toString();
+    }
+
+    /** Return a machine over ALPHA with a reflector, a fixed rotor, and
+     *  moving rotors with notches NOTCHES, in that order. */
+    static Machine machine(Alphabet alpha, String... notches) {
+        return machine(alpha, new String[notches.length + 2], notches);
+    }
+
+    /** Return a machine over ALPHA with a reflector R, a fixed rotor F,
+     *  and moving rotors M0, M1, ... with notches NOTCHES, inserted in
+     *  that order.  Entry k of CYCLES is the wiring of the kth rotor, or
+     *  null for the identity. */
+    static Machine machine(Alphabet alpha, String[] cycles,
+                           String... notches) {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        String[] names = new String[notches.length + 2];
+        rotors.add(new Reflector("R", wiring(cycles[0], alpha)));
+        rotors.add(new FixedRotor("F", wiring(cycles[1], alpha)));
+        names[0] = "R";
+        names[1] = "F";
+        for (int k = 0; k < notches.length; k++) {
+            rotors.add(new MovingRotor("M" + k, wiring(cycles[k + 2], alpha),
+                                       notches[k]));
+            names[k + 2] = "M" + k;
+        }
+        Machine m = new Machine(alpha, names.length, notches.length, rotors);
+        m.insertRotors(names);
+        return m;
+    }
+
+    /** Return the permutation of ALPHA with cycles CYCLES, or the
+     *  identity if CYCLES is null. */
+    private static Permutation wiring(String cycles, Alphabet alpha) {
+        return new Permutation(cycles == null ? "" : cycles, alpha);
+    }
+
+    /** Return an input file for navalMachine() of LINES lines generated
+     *  from SEED.  Every PERIOD-th line, starting with the first, is a
+     *  settings line; every other one has a plugboard, and every third
+     *  one rings.  The rest are message lines of fewer than WIDTH letters
+     *  and blanks, every 97th of them empty.  If CRLF, every third line
+     *  ends with a carriage return and newline. */
+    static String input(int lines, long seed, int period, int width,
+                        boolean crlf) {
+        Random random = new Random(seed);
+        StringBuilder result = new StringBuilder();
+        for (int k = 0; k < lines; k++) {
+            if (k % period == 0) {
+                result.append("* B Beta I II III ");
+                for (int x = 0; x < 4; x++) {
+                    result.append(UPPER.toChar(random.nextInt(26)));
+                }
+                result.append(k / period % 3 == 1 ? " BCDE" : "")
+                    .append(k / period % 2 == 0 ? " (AQ) (EP)" : "");
+            } else if (k % 97 != 0) {
+                for (int x = random.nextInt(width); x > 0; x--) {
+                    result.append(x % 7 == 0 ? ' '
+                                  : UPPER.toChar(random.nextInt(26)));
+                }
+            }
+            result.append(crlf && k % 3 == 0 ? "\r\n" : "\n");
+        }
+        return result.toString();
+    }
+
+    /** Return the output of Main for INPUT, using a fresh
+     *  navalMachine(). */
+    static String expected(String input) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true,
+                                          Charset.defaultCharset());
+        Main.process(navalMachine(), new Scanner(input), out);
+        return new String(bytes.toByteArray(), Charset.defaultCharset());
+    }
+
+    /** The configuration of testing/correct/default.conf: the rotors of
+     *  NAVALA with their notches. */
+    static final String NAVAL_CONFIG =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ\n 5 3\n"
+        + " I MQ      (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+        + " II ME     (FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)\n"
+        + " III MV    (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)\n"
+        + " IV MJ     (AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)\n"
+        + " V MZ      (AVOLDRWFIUQ)(BZKSMNHYC) (EGTJPX)\n"
+        + " VI MZM    (AJQDVLEOZWIYTS) (CGMNHFUX) (BPRK)\n"
+        + " VII MZM   (ANOUPFRIMBZTLWKSVEGCJYDHXQ)\n"
+        + " VIII MZM  (AFLSETWUNDHOZVICQ) (BKJ) (GXY) (MPR)\n"
+        + " Beta N    (ALBEVFCYODJWUGNMQTZSKPR) (HIX)\n"
+        + " Gamma N   (AFNIRLBSQWVXGUZDKMTPCOYJHE)\n"
+        + " B R       (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)\n"
+        + "           (RX) (SZ) (TV)\n"
+        + " C R       (AR) (BD) (CO) (EJ) (FN) (GT) (HK) (IV) (LM) (PW)\n"
+        + "           (QZ) (SX) (UY)\n";
+
+    /** Return FILE, after writing NAVAL_CONFIG to it, or a new temporary
+     *  file if FILE is null, so that tests need not depend on the working
+     *  directory to find testing/correct/default.conf. */
+    static Path navalConfig(Path file) {
+        try {
+            Path result = file != null ? file
+                : Files.createTempFile("naval", ".conf");
+            Files.writeString(result, NAVAL_CONFIG, Charset.defaultCharset());
+            return result;
+        } catch (IOException excp) {
+            throw new UncheckedIOException(excp);
+        }
+    }
+
 }
@@ -10,7 +10,18 @@ public class UnitTest {
     /** Run the JUnit tests in this package. Add xxxTest.class entries to
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
-        textui.runClasses(PermutationTest.class, MovingRotorTest.class);
+        textui.runClasses(PermutationTest.class, MovingRotorTest.class,
+                          CycleCatalogTest.class, KeySpaceTest.class,
+                          BinaryModeTest.class, AlphabetTest.class,
+                          EnigmaStreamsTest.class, EnigmaServerTest.class,
+                          SessionStoreTest.class, CheckpointTest.class,
+                          MachineTest.class, SliceTest.class,
+                          SteppingTableTest.class, BatchTest.class,
+                          PipelineTest.class, MetricsTest.class,
+                          EnigmaFlowTest.class, KeystreamTest.class,
+                          SearchTest.class, KeyEquivalenceTest.class,
+                          DepthFinderTest.class, ConfigRegistryTest.class,
+                          PassThroughModeTest.class, StatisticsTest.class);
     }
 
 }